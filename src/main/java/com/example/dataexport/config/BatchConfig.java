@@ -1,20 +1,68 @@
 package com.example.dataexport.config;
 
+import com.example.dataexport.metrics.JobMetricsSummaryListener;
+import com.example.dataexport.metrics.PartitionMetricsListener;
 import com.example.dataexport.model.UserData;
+import com.example.dataexport.delta.ChangedUserIds;
+import com.example.dataexport.delta.WatermarkStore;
+import com.example.dataexport.partition.PartitionRange;
+import com.example.dataexport.partition.PartitionRangeRegistry;
+import com.example.dataexport.partition.PartitioningMode;
+import com.example.dataexport.partition.RestartableStepExecutionSplitter;
+import com.example.dataexport.partition.WorkStealingPartitionHandler;
+import com.example.dataexport.reader.DeltaUserDataReader;
+import com.example.dataexport.reader.KeysetUserDataReader;
+import com.example.dataexport.reader.MergeMode;
+import com.example.dataexport.reader.ReaderMode;
+import com.example.dataexport.reader.ResumableUserDataReader;
+import com.example.dataexport.reader.SortMergeUserDataReader;
+import com.example.dataexport.reader.StreamingUserDataReader;
+import com.example.dataexport.reader.UserDataMerger;
 import com.example.dataexport.reader.UserDataReader;
+import com.example.dataexport.tasklet.DeltaScanTasklet;
+import com.example.dataexport.tasklet.MappedOutputTrimTasklet;
+import com.example.dataexport.tasklet.OutputManifestTasklet;
+import com.example.dataexport.tasklet.SaveWatermarksTasklet;
+import com.example.dataexport.tasklet.SegmentAssemblyTasklet;
+import com.example.dataexport.util.ConcurrencyGovernor;
+import com.example.dataexport.util.VirtualThreads;
+import com.example.dataexport.writer.MappedOutputFile;
+import com.example.dataexport.writer.MappedUserDataItemWriter;
+import com.example.dataexport.writer.OutputCodec;
+import com.example.dataexport.writer.OutputCompletionListener;
+import com.example.dataexport.writer.OutputCompression;
+import com.example.dataexport.writer.OutputFormat;
+import com.example.dataexport.writer.OutputManifest;
+import com.example.dataexport.writer.OutputSegments;
+import com.example.dataexport.writer.ParquetUserDataItemWriter;
+import com.example.dataexport.writer.RollingUserDataItemWriter;
+import com.example.dataexport.writer.UserDataCsvEncoder;
+import com.example.dataexport.writer.UserDataCsvItemWriter;
 import com.example.dataexport.writer.UserDataLineAggregator;
+import com.example.dataexport.writer.UserDataWriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemWriteListener;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.job.builder.SimpleJobBuilder;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.partition.PartitionHandler;
 import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
+import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.step.tasklet.Tasklet;
-import org.springframework.batch.item.ItemReader;
-import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.batch.integration.partition.MessageChannelPartitionHandler;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamWriter;
 import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
 import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,16 +73,22 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.core.task.TaskExecutor;
+import org.springframework.integration.core.MessagingTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.PollableChannel;
 
 import javax.sql.DataSource;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
 
 @Configuration
 public class BatchConfig {
 
+    private static final Logger log = LoggerFactory.getLogger(BatchConfig.class);
+
     @Autowired
     private JobBuilderFactory jobBuilderFactory;
 
@@ -45,43 +99,233 @@ public class BatchConfig {
     @Qualifier("appDataSource")
     private DataSource appDataSource;
 
+    @Autowired
+    private JobRepository jobRepository;
+
+    @Autowired
+    private JobExplorer jobExplorer;
+
     @Autowired
     private UserPartitioner partitioner;
+
+    @Autowired
+    private PartitionRangeRegistry partitionRangeRegistry;
+
+    @Autowired
+    @Qualifier("childFetchExecutor")
+    private ExecutorService childFetchExecutor;
     
     @Autowired
     private FileSystemResource outputResource;
 
+    @Autowired
+    private OutputSegments outputSegments;
+
+    @Autowired
+    private OutputCodec outputCodec;
+
+    @Autowired
+    private MappedOutputFile mappedOutputFile;
+
+    @Autowired
+    private ThreadFactory writerThreadFactory;
+
+    @Autowired
+    private OutputManifest outputManifest;
+
+    @Autowired
+    private ChangedUserIds changedUserIds;
+
+    @Autowired
+    private ConcurrencyGovernor childFetchGovernor;
+
+    @Autowired
+    private WatermarkStore watermarkStore;
+
+    @Autowired
+    private DeltaScanTasklet deltaScanTasklet;
+
+    @Autowired
+    private PollableChannel partitionRequests;
+
     @Value("${app.thread-pool.size:4}")
     private int threadPoolSize;
 
     @Value("${app.chunk-size:1000}")
     private int chunkSize;
 
+    @Value("${app.partitioning.mode:static}")
+    private PartitioningMode partitioningMode;
+
+    @Value("${app.partitioning.partitions-per-thread:32}")
+    private int partitionsPerThread;
+
+    @Value("${app.partitioning.min-split-size:10000}")
+    private int minSplitSize;
+
+    @Value("${app.partitioning.remote.partitions:128}")
+    private int remotePartitions;
+
+    @Value("${app.partitioning.remote.poll-interval-millis:1000}")
+    private long remotePollIntervalMillis;
+
+    @Value("${app.partitioning.remote.timeout-millis:14400000}")
+    private long remoteTimeoutMillis;
+
+    @Value("${app.reader.mode:in-memory}")
+    private ReaderMode readerMode;
+
+    @Value("${app.reader.window-size:10000}")
+    private int readerWindowSize;
+
+    @Value("${app.reader.fetch-size:1000}")
+    private int readerFetchSize;
+
+    @Value("${app.reader.page-size:5000}")
+    private int readerPageSize;
+
+    @Value("${app.lookup.temp-table-threshold:100000}")
+    private int lookupTempTableThreshold;
+
+    @Value("${app.merge.mode:last}")
+    private MergeMode mergeMode;
+
+    @Value("${app.governor.enabled:false}")
+    private boolean governorEnabled;
+
+    @Value("${app.virtual-threads.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${app.output.format:csv}")
+    private OutputFormat outputFormat;
+
+    @Value("${app.output.parquet.compression:snappy}")
+    private CompressionCodecName parquetCompression;
+
+    @Value("${app.output.parquet.chunks-per-row-group:128}")
+    private int parquetChunksPerRowGroup;
+
+    @Value("${app.output.parquet.decimal-precision:18}")
+    private int parquetDecimalPrecision;
+
+    @Value("${app.output.parquet.decimal-scale:2}")
+    private int parquetDecimalScale;
+
+    @Value("${app.output.assemble:true}")
+    private boolean assembleOutput;
+
+    @Value("${app.output.keep-segments:false}")
+    private boolean keepSegments;
+
+    @Value("${app.output.fast-encoder:true}")
+    private boolean fastEncoder;
+
+    @Value("${app.output.async.enabled:false}")
+    private boolean asyncOutput;
+
+    @Value("${app.output.async.buffers:4}")
+    private int asyncBuffers;
+
+    @Value("${app.output.async.buffer-size:262144}")
+    private int asyncBufferSize;
+
+    @Value("${app.output.roll.max-rows:0}")
+    private long rollMaxRows;
+
+    @Value("${app.output.roll.max-bytes:0}")
+    private long rollMaxBytes;
+
+    @Value("${app.output.manifest.enabled:false}")
+    private boolean manifestEnabled;
+
+    @Value("${app.output.manifest.reconcile:true}")
+    private boolean reconcileManifest;
+
+    @Value("${app.output.manifest.fail-on-mismatch:true}")
+    private boolean failOnMismatch;
+
+    @Value("${app.delta.enabled:false}")
+    private boolean deltaEnabled;
+
+    @Value("${app.restart.enabled:false}")
+    private boolean restartEnabled;
+
+    @Value("${app.output.mmap.enabled:false}")
+    private boolean mmapOutput;
+
+    @Value("${app.metrics.summary.enabled:true}")
+    private boolean metricsSummary;
+
     @Bean
     public TaskExecutor taskExecutor() {
         SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("spring_batch");
+        if (virtualThreads) {
+            // Partitions block on JDBC without holding a platform thread each
+            taskExecutor.setThreadFactory(VirtualThreads.factory("spring_batch"));
+        }
         taskExecutor.setConcurrencyLimit(threadPoolSize);
         return taskExecutor;
     }
 
     @Bean
     public Job exportUserDataJob() throws Exception {
-        return jobBuilderFactory.get("exportUserDataJob")
+        if (restartEnabled && (outputFormat != OutputFormat.CSV || outputCodec.getCompression() != OutputCompression.NONE
+                || asyncOutput || isRolling() || manifestEnabled || mmapOutput || deltaEnabled)) {
+            throw new IllegalStateException("app.restart.enabled requires uncompressed CSV segments without"
+                    + " asynchronous output, rolling, a manifest, mapped output or delta mode");
+        }
+        if (partitioningMode == PartitioningMode.REMOTE && (mmapOutput || isManifestWritten() || deltaEnabled)) {
+            // The mapped file, the manifest and the changed ids live in the memory of the manager
+            throw new IllegalStateException("app.partitioning.mode=remote requires segment output without"
+                    + " mapped output, rolling, a manifest or delta mode");
+        }
+        SimpleJobBuilder job = jobBuilderFactory.get("exportUserDataJob")
                 .incrementer(new RunIdIncrementer())
-                .start(headerWriterStep())      // First write the header
-                .next(masterStep())             // Then run the partitioned processing
-                .build();
+                .start(prepareOutputStep());    // First clear old output
+        if (deltaEnabled) {
+            job.next(scanChangesStep());        // Then pick the users changed since the last run
+        }
+        job.next(masterStep());                 // Then run the partitioned processing into segments
+        if (mmapOutput) {
+            if (outputFormat != OutputFormat.CSV || outputCodec.getCompression() != OutputCompression.NONE
+                    || isRolling() || manifestEnabled) {
+                throw new IllegalStateException(
+                        "app.output.mmap.enabled requires uncompressed, unrolled CSV output without a manifest");
+            }
+            job.next(trimOutputStep());         // Then cut off the unused end of the last mapped region
+        } else {
+            if (outputFormat != OutputFormat.CSV && (isRolling() || manifestEnabled)) {
+                throw new IllegalStateException("app.output.roll and app.output.manifest require CSV output");
+            }
+            if (assembleOutput && !isRolling() && outputFormat == OutputFormat.CSV) {
+                job.next(assembleOutputStep()); // Then concatenate header and segments
+            }
+            if (isManifestWritten()) {
+                job.next(writeManifestStep());  // Then list and reconcile the files
+            }
+        }
+        if (deltaEnabled) {
+            job.next(saveWatermarksStep());     // Finally record where the next delta run starts
+        }
+        if (metricsSummary) {
+            JobMetricsSummaryListener summaryListener = new JobMetricsSummaryListener(jobExplorer, "slaveStep");
+            if (governorEnabled) {
+                summaryListener.setGovernor(childFetchGovernor);
+            }
+            job.listener(summaryListener);
+        }
+        return job.build();
     }
     
     @Bean
-    public Step headerWriterStep() {
-        return stepBuilderFactory.get("headerWriterStep")
-                .tasklet(headerWriterTasklet())
+    public Step prepareOutputStep() {
+        return stepBuilderFactory.get("prepareOutputStep")
+                .tasklet(prepareOutputTasklet())
                 .build();
     }
     
     @Bean
-    public Tasklet headerWriterTasklet() {
+    public Tasklet prepareOutputTasklet() {
         return new Tasklet() {
             @Override
             public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
@@ -97,30 +341,107 @@ public class BatchConfig {
                     parentDir.mkdirs();
                 }
                 
-                // Print debug information
-                System.out.println("Writing header to: " + file.getAbsolutePath());
-                
-                // Write the header to the file
-                try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-                    writer.write("ret_unique_id,username,email,order_id,order_date,amount,address_id,city,street");
-                    writer.newLine();
+                if (mmapOutput) {
+                    // Partitions write straight into the output file, after the header
+                    String headerLine = lineAggregator().getHeader() + System.lineSeparator();
+                    mappedOutputFile.open(headerLine.getBytes(StandardCharsets.UTF_8));
+                    log.info("Writing mapped regions to: {}", file.getAbsolutePath());
+                    return RepeatStatus.FINISHED;
                 }
                 
+                // Start from an empty segment directory
+                outputSegments.clear();
+                outputManifest.clear();
+                
+                log.info("Writing segments to: {}", outputSegments.getDirectory().getAbsolutePath());
+                
                 return RepeatStatus.FINISHED;
             }
         };
     }
 
+    @Bean
+    public Step assembleOutputStep() throws IOException {
+        SegmentAssemblyTasklet tasklet = new SegmentAssemblyTasklet(outputResource.getFile(), outputSegments,
+                lineAggregator().getHeader(), keepSegments, outputCodec);
+        if (manifestEnabled) {
+            tasklet.setManifest(outputManifest);
+        }
+        return stepBuilderFactory.get("assembleOutputStep")
+                .tasklet(tasklet)
+                .build();
+    }
+
+    @Bean
+    public Step trimOutputStep() {
+        return stepBuilderFactory.get("trimOutputStep")
+                .tasklet(new MappedOutputTrimTasklet(mappedOutputFile))
+                .build();
+    }
+
+    @Bean
+    public Step writeManifestStep() {
+        // A delta run writes only the changed users of each range, so there is nothing to reconcile against
+        return stepBuilderFactory.get("writeManifestStep")
+                .tasklet(new OutputManifestTasklet(outputManifest,
+                        reconcileManifest && !deltaEnabled ? new JdbcTemplate(appDataSource) : null, failOnMismatch))
+                .build();
+    }
+
+    @Bean
+    public Step scanChangesStep() {
+        return stepBuilderFactory.get("scanChangesStep")
+                .tasklet(deltaScanTasklet)
+                .build();
+    }
+
+    @Bean
+    public Step saveWatermarksStep() {
+        return stepBuilderFactory.get("saveWatermarksStep")
+                .tasklet(new SaveWatermarksTasklet(watermarkStore))
+                .build();
+    }
+
+    /** Rolled files are the output, each complete with its header, so they are never assembled. */
+    private boolean isRolling() {
+        return rollMaxRows > 0 || rollMaxBytes > 0;
+    }
+
+    /** Rolled output always comes with a manifest, since its files are otherwise hard to consume. */
+    private boolean isManifestWritten() {
+        return manifestEnabled || isRolling();
+    }
+
     @Bean
     public Step masterStep() throws Exception {
         return stepBuilderFactory.get("masterStep")
                 .partitioner("slaveStep", partitioner)
+                // Restarts skip completed partitions and resume the others from their saved context
+                .splitter(new RestartableStepExecutionSplitter(jobRepository, jobExplorer, "slaveStep", partitioner))
                 .partitionHandler(partitionHandler())
                 .build();
     }
 
     @Bean
-    public TaskExecutorPartitionHandler partitionHandler() throws Exception {
+    public PartitionHandler partitionHandler() throws Exception {
+        if (partitioningMode == PartitioningMode.REMOTE) {
+            // Workers take the partitions from the queue and the manager polls the job repository for their outcome
+            MessageChannelPartitionHandler handler = new MessageChannelPartitionHandler();
+            handler.setStepName("slaveStep");
+            handler.setGridSize(remotePartitions);
+            handler.setMessagingOperations(new MessagingTemplate(partitionRequests));
+            handler.setJobExplorer(jobExplorer);
+            handler.setPollInterval(remotePollIntervalMillis);
+            handler.setTimeout(remoteTimeoutMillis);
+            return handler;
+        }
+        if (partitioningMode == PartitioningMode.WORK_STEALING) {
+            // Over-decompose so workers pull many small partitions from a shared queue
+            WorkStealingPartitionHandler handler = new WorkStealingPartitionHandler(slaveStep(), taskExecutor(),
+                    jobRepository, partitionRangeRegistry, threadPoolSize, minSplitSize);
+            handler.setGridSize(threadPoolSize * partitionsPerThread);
+            return handler;
+        }
         TaskExecutorPartitionHandler handler = new TaskExecutorPartitionHandler();
         handler.setGridSize(threadPoolSize);
         handler.setTaskExecutor(taskExecutor());
@@ -130,29 +451,150 @@ public class BatchConfig {
 
     @Bean
     public Step slaveStep() throws Exception {
+        PartitionMetricsListener metricsListener = partitionMetricsListener();
         return stepBuilderFactory.get("slaveStep")
                 .<UserData, UserData>chunk(chunkSize)
-                .reader(reader(null, null))
-                .writer(writer())
+                .reader(reader(null, null, null, null))
+                .writer(writer(null))
+                .listener((ItemWriteListener<UserData>) metricsListener)
+                .listener((StepExecutionListener) metricsListener)
+                .listener((ChunkListener) metricsListener)
+                .listener(outputCompletionListener())
                 .build();
     }
 
+    @Bean
+    public PartitionMetricsListener partitionMetricsListener() {
+        return new PartitionMetricsListener();
+    }
+
+    /** Completes the partition writers' output before their step is saved as completed. */
+    @Bean
+    public OutputCompletionListener outputCompletionListener() {
+        return new OutputCompletionListener();
+    }
+
+    /** Virtual fetch threads are unbounded, so their lookups always wait for the governor's permits. */
+    private boolean isLookupGoverned() {
+        return governorEnabled || virtualThreads;
+    }
+
+    @Bean
+    public UserDataMerger userDataMerger() {
+        UserDataMerger merger = new UserDataMerger(appDataSource, childFetchExecutor, lookupTempTableThreshold, mergeMode);
+        if (isLookupGoverned()) {
+            merger.setGovernor(childFetchGovernor);
+        }
+        return merger;
+    }
+
     @Bean
     @StepScope
-    public ItemReader<UserData> reader(
+    public ItemStreamReader<UserData> reader(
+            @Value("#{stepExecution.stepName}") String stepName,
             @Value("#{stepExecutionContext['minValue']}") Integer minValue,
-            @Value("#{stepExecutionContext['maxValue']}") Integer maxValue) {
-        return new UserDataReader(appDataSource, minValue, maxValue);
+            @Value("#{stepExecutionContext['maxValue']}") Integer maxValue,
+            @Value("#{stepExecutionContext['" + ResumableUserDataReader.RESUME_ID_KEY + "']}") Integer resumeId) {
+        ItemStreamReader<UserData> reader = partitionReader(stepName,
+                restartEnabled && resumeId != null ? resumeId : minValue, maxValue);
+        // The checkpoint is only used along with the writer's restart offset
+        return restartEnabled ? new ResumableUserDataReader(reader) : reader;
+    }
+
+    private ItemStreamReader<UserData> partitionReader(String stepName, int minValue, int maxValue) {
+        // Only set when the partition runs under the work-stealing handler
+        PartitionRange partitionRange = partitionRangeRegistry.get(stepName);
+
+        if (changedUserIds.isSelected()) {
+            // A delta run reads the changed users by id whatever the reader mode
+            DeltaUserDataReader deltaReader = new DeltaUserDataReader(appDataSource, userDataMerger(), changedUserIds,
+                    childFetchExecutor, minValue, maxValue, readerPageSize);
+            deltaReader.setPartitionRange(partitionRange);
+            if (isLookupGoverned()) {
+                deltaReader.setGovernor(childFetchGovernor);
+            }
+            return deltaReader;
+        }
+        switch (readerMode) {
+            case STREAMING:
+                StreamingUserDataReader streamingReader = new StreamingUserDataReader(appDataSource, userDataMerger(),
+                        minValue, maxValue, readerWindowSize, readerFetchSize);
+                streamingReader.setPartitionRange(partitionRange);
+                return streamingReader;
+            case KEYSET:
+                KeysetUserDataReader keysetReader = new KeysetUserDataReader(appDataSource, userDataMerger(),
+                        minValue, maxValue, readerPageSize);
+                keysetReader.setPartitionRange(partitionRange);
+                return keysetReader;
+            case SORT_MERGE:
+                SortMergeUserDataReader sortMergeReader = new SortMergeUserDataReader(appDataSource, minValue, maxValue,
+                        readerFetchSize, mergeMode);
+                sortMergeReader.setPartitionRange(partitionRange);
+                return sortMergeReader;
+            default:
+                // Loads the whole range up front, so its range is never split
+                return new UserDataReader(appDataSource, userDataMerger(), minValue, maxValue);
+        }
+    }
+
+    @Bean
+    public UserDataLineAggregator lineAggregator() {
+        return new UserDataLineAggregator(mergeMode == MergeMode.AGGREGATE);
     }
 
     @Bean
     @StepScope
-    public FlatFileItemWriter<UserData> writer() {
-        return new FlatFileItemWriterBuilder<UserData>()
+    public ItemStreamWriter<UserData> writer(@Value("#{stepExecutionContext['minValue']}") Integer minValue) {
+        if (mmapOutput) {
+            // All partitions share one file, each writing into regions it reserved
+            return new MappedUserDataItemWriter(mappedOutputFile, new UserDataCsvEncoder(mergeMode == MergeMode.AGGREGATE));
+        }
+        // Each partition writes its own segment, so writers never share a file
+        File segment = outputSegments.segmentFor(minValue);
+        // Segments are the output without assembly, so then each one is a complete CSV file
+        boolean writeHeader = !assembleOutput;
+        boolean aggregated = mergeMode == MergeMode.AGGREGATE;
+
+        if (outputFormat == OutputFormat.PARQUET) {
+            // Parquet files cannot be concatenated, so each partition's file is part of the output
+            return new ParquetUserDataItemWriter(segment,
+                    new UserDataWriteSupport(aggregated, parquetDecimalPrecision, parquetDecimalScale),
+                    parquetCompression, chunkSize, parquetChunksPerRowGroup);
+        }
+        if (isRolling()) {
+            RollingUserDataItemWriter rollingWriter = new RollingUserDataItemWriter(outputSegments,
+                    new UserDataCsvEncoder(aggregated), outputCodec, rollMaxRows, rollMaxBytes, outputManifest);
+            if (asyncOutput) {
+                rollingWriter.setAsyncOutput(asyncBuffers, asyncBufferSize, writerThreadFactory);
+            }
+            rollingWriter.setCompletionListener(outputCompletionListener());
+            return rollingWriter;
+        }
+
+        // Compression, asynchronous output, checksums and restart offsets are only implemented on the byte-level writer
+        if (fastEncoder || outputCodec.getCompression() != OutputCompression.NONE || asyncOutput || manifestEnabled
+                || restartEnabled) {
+            UserDataCsvItemWriter csvWriter = new UserDataCsvItemWriter(segment, new UserDataCsvEncoder(aggregated),
+                    writeHeader, outputCodec);
+            if (asyncOutput) {
+                csvWriter.setAsyncOutput(asyncBuffers, asyncBufferSize, writerThreadFactory);
+            }
+            if (manifestEnabled) {
+                csvWriter.setManifest(outputManifest);
+            }
+            csvWriter.setSaveState(restartEnabled);
+            csvWriter.setCompletionListener(outputCompletionListener());
+            return csvWriter;
+        }
+        FlatFileItemWriterBuilder<UserData> builder = new FlatFileItemWriterBuilder<UserData>()
                 .name("userDataWriter")
-                .resource(outputResource)
-                .lineAggregator(new UserDataLineAggregator())
-                .append(true)    // This will append without writing header
-                .build();
+                .resource(new FileSystemResource(segment))
+                .lineAggregator(lineAggregator())
+                .shouldDeleteIfExists(true);
+        if (writeHeader) {
+            String header = lineAggregator().getHeader();
+            builder.headerCallback(writer -> writer.write(header));
+        }
+        return builder.build();
     }
 } 
\ No newline at end of file
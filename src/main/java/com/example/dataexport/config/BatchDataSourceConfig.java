@@ -4,6 +4,7 @@ import org.springframework.batch.core.configuration.annotation.BatchConfigurer;
 import org.springframework.batch.core.configuration.annotation.DefaultBatchConfigurer;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.support.DatabaseType;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -12,9 +13,12 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.jdbc.datasource.init.DataSourceInitializer;
 import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.jdbc.support.MetaDataAccessException;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
@@ -49,17 +53,52 @@ public class BatchDataSourceConfig {
         return batchDataSourceProperties().initializeDataSourceBuilder().build();
     }
     
+    /**
+     * Creates the Spring Batch tables for the batch database's platform unless they already
+     * exist, so a file-based or server database keeps its job history across runs.
+     */
     @Bean
-    public DataSourceInitializer batchDataSourceInitializer(@Qualifier("batchDataSource") DataSource batchDataSource) {
+    public DataSourceInitializer batchDataSourceInitializer(@Qualifier("batchDataSource") DataSource batchDataSource)
+            throws MetaDataAccessException {
+        DatabaseType databaseType = DatabaseType.fromMetaData(batchDataSource);
         ResourceDatabasePopulator databasePopulator = new ResourceDatabasePopulator();
-        databasePopulator.addScript(new ClassPathResource("org/springframework/batch/core/schema-h2.sql"));
+        databasePopulator.addScript(new ClassPathResource(
+                "org/springframework/batch/core/schema-" + schemaPlatform(databaseType) + ".sql"));
         databasePopulator.setIgnoreFailedDrops(true);
         
         DataSourceInitializer initializer = new DataSourceInitializer();
         initializer.setDataSource(batchDataSource);
         initializer.setDatabasePopulator(databasePopulator);
+        initializer.setEnabled(!hasBatchTables(batchDataSource));
         return initializer;
     }
+
+    /** Names the schema scripts shipped with Spring Batch use, which differ from some enum names. */
+    private static String schemaPlatform(DatabaseType databaseType) {
+        switch (databaseType) {
+            case POSTGRES:
+                return "postgresql";
+            case HSQL:
+                return "hsqldb";
+            case ORACLE:
+                return "oracle10g";
+            case DB2VSE:
+            case DB2ZOS:
+            case DB2AS400:
+                return "db2";
+            default:
+                return databaseType.name().toLowerCase();
+        }
+    }
+
+    private static boolean hasBatchTables(DataSource dataSource) {
+        try {
+            new JdbcTemplate(dataSource).queryForObject("SELECT COUNT(*) FROM BATCH_JOB_INSTANCE", Long.class);
+            return true;
+        } catch (DataAccessException e) {
+            return false;
+        }
+    }
     
     @Bean
     public BatchConfigurer batchConfigurer(@Qualifier("batchDataSource") DataSource batchDataSource) {
@@ -74,7 +113,6 @@ public class BatchDataSourceConfig {
                 JobRepositoryFactoryBean factory = new JobRepositoryFactoryBean();
                 factory.setDataSource(batchDataSource);
                 factory.setTransactionManager(getTransactionManager());
-                factory.setDatabaseType("H2");
                 factory.afterPropertiesSet();
                 return factory.getObject();
             }
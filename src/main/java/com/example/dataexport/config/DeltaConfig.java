@@ -0,0 +1,74 @@
+package com.example.dataexport.config;
+
+import com.example.dataexport.delta.ChangedUserIds;
+import com.example.dataexport.delta.WatermarkStore;
+import com.example.dataexport.delta.WatermarkType;
+import com.example.dataexport.tasklet.DeltaScanTasklet;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Incremental export: with {@code app.delta.enabled} each run exports only the users changed since
+ * the last completed run, as tracked by a high-water mark per source table.
+ */
+@Configuration
+public class DeltaConfig {
+
+    @Autowired
+    @Qualifier("appDataSource")
+    private DataSource appDataSource;
+
+    @Autowired
+    private ChangedUserIds changedUserIds;
+
+    @Value("${app.delta.watermark-file:delta/watermarks.properties}")
+    private String watermarkFile;
+
+    @Value("${app.delta.watermark-type:timestamp}")
+    private WatermarkType watermarkType;
+
+    @Value("${app.delta.users-column:}")
+    private String usersColumn;
+
+    @Value("${app.delta.orders-column:}")
+    private String ordersColumn;
+
+    @Value("${app.delta.addresses-column:}")
+    private String addressesColumn;
+
+    @Value("${app.delta.safety-lag:60s}")
+    private Duration safetyLag;
+
+    @Value("${app.delta.safety-lag-ids:1000}")
+    private long safetyLagIds;
+
+    @Bean
+    public WatermarkStore watermarkStore() {
+        return new WatermarkStore(new File(watermarkFile.trim()));
+    }
+
+    @Bean
+    public DeltaScanTasklet deltaScanTasklet() {
+        Map<String, String> columnsByTable = new LinkedHashMap<>();
+        columnsByTable.put("users", column("users", usersColumn));
+        columnsByTable.put("orders", column("orders", ordersColumn));
+        columnsByTable.put("addresses", column("addresses", addressesColumn));
+        long lag = watermarkType == WatermarkType.TIMESTAMP ? safetyLag.toMillis() : safetyLagIds;
+        return new DeltaScanTasklet(new JdbcTemplate(appDataSource), watermarkStore(), watermarkType,
+                columnsByTable, lag, changedUserIds);
+    }
+
+    private String column(String table, String configured) {
+        return configured.trim().isEmpty() ? watermarkType.defaultColumn(table) : configured.trim();
+    }
+}
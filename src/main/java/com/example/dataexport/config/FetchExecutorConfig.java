@@ -0,0 +1,148 @@
+package com.example.dataexport.config;
+
+import com.example.dataexport.util.ConcurrencyGovernor;
+import com.example.dataexport.util.VirtualThreads;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.sql.DataSource;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * One application-wide executor for the child-table lookups of every partition, so the number of
+ * concurrent orders/addresses queries is fixed by {@code app.fetch-executor.threads} rather than
+ * growing with the partition count. Size it below the application connection pool, leaving a
+ * connection per partition for its users query.
+ */
+@Configuration
+public class FetchExecutorConfig {
+
+    @Value("${app.fetch-executor.threads:8}")
+    private int threads;
+
+    @Value("${app.fetch-executor.queue-capacity:1024}")
+    private int queueCapacity;
+
+    @Value("${app.virtual-threads.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${app.governor.enabled:false}")
+    private boolean governorEnabled;
+
+    @Value("${app.governor.min-limit:1}")
+    private int governorMinLimit;
+
+    @Value("${app.governor.max-limit:0}")
+    private int governorMaxLimit;
+
+    @Value("${app.governor.initial-limit:4}")
+    private int governorInitialLimit;
+
+    @Value("${app.governor.latency-tolerance:2.0}")
+    private double governorLatencyTolerance;
+
+    @Value("${app.governor.decrease-factor:0.75}")
+    private double governorDecreaseFactor;
+
+    @Value("${app.governor.min-window-millis:250}")
+    private long governorMinWindowMillis;
+
+    /**
+     * Lookup batches queue up to {@code queue-capacity}; beyond that the submitting partition
+     * thread blocks until there is room, which throttles readers instead of failing them or
+     * running the query on the caller and exceeding the thread limit.
+     * <p>
+     * Pool size, active and queued task counts and task run and queue-wait timers are published to
+     * the Micrometer global registry as {@code executor.*} meters tagged {@code name=childFetch}.
+     * <p>
+     * With virtual threads every lookup batch gets a thread of its own, and the number of queries
+     * running at once is capped by {@link #childFetchGovernor} instead of the thread count.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService childFetchExecutor() {
+        if (virtualThreads) {
+            return ExecutorServiceMetrics.monitor(Metrics.globalRegistry,
+                    VirtualThreads.newThreadPerTaskExecutor(VirtualThreads.factory("child_fetch")), "childFetch");
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("child_fetch"),
+                blockWhenFull());
+        executor.allowCoreThreadTimeOut(true);
+        return ExecutorServiceMetrics.monitor(Metrics.globalRegistry, executor, "childFetch");
+    }
+
+    private static RejectedExecutionHandler blockWhenFull() {
+        return (task, executor) -> {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Child fetch executor has been shut down");
+            }
+            try {
+                executor.getQueue().put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for child fetch queue space", e);
+            }
+        };
+    }
+
+    /**
+     * Adaptive limit on concurrent child-table lookups, below the fetch thread count (its default
+     * maximum). Threads waiting for a connection of the application pool count as congestion.
+     * Without {@code app.governor.enabled} but with virtual threads, the limit is fixed at
+     * {@code app.fetch-executor.threads}, so lookups still never outnumber those connections.
+     * <p>
+     * The limit, queries in flight and the window and baseline latencies are published as
+     * {@code governor.*} gauges tagged {@code name=childFetch}.
+     */
+    @Bean
+    public ConcurrencyGovernor childFetchGovernor(@Qualifier("appDataSource") DataSource appDataSource) {
+        ConcurrencyGovernor governor;
+        if (governorEnabled) {
+            int maxLimit = governorMaxLimit > 0 ? governorMaxLimit : threads;
+            governor = new ConcurrencyGovernor(governorMinLimit, maxLimit, governorInitialLimit,
+                    governorLatencyTolerance, governorDecreaseFactor, governorMinWindowMillis,
+                    connectionWaiters(appDataSource));
+        } else {
+            governor = new ConcurrencyGovernor(threads, threads, threads, governorLatencyTolerance,
+                    governorDecreaseFactor, governorMinWindowMillis, () -> 0);
+        }
+        if (!governorEnabled && !virtualThreads) {
+            return governor;
+        }
+        Gauge.builder("governor.limit", governor, ConcurrencyGovernor::getLimit)
+                .tag("name", "childFetch").register(Metrics.globalRegistry);
+        Gauge.builder("governor.in.flight", governor, ConcurrencyGovernor::getInFlight)
+                .tag("name", "childFetch").register(Metrics.globalRegistry);
+        Gauge.builder("governor.latency", governor, ConcurrencyGovernor::getLatencyMillis)
+                .tag("name", "childFetch").baseUnit("milliseconds").register(Metrics.globalRegistry);
+        Gauge.builder("governor.latency.baseline", governor, ConcurrencyGovernor::getBaselineMillis)
+                .tag("name", "childFetch").baseUnit("milliseconds").register(Metrics.globalRegistry);
+        return governor;
+    }
+
+    private static IntSupplier connectionWaiters(DataSource dataSource) {
+        if (!(dataSource instanceof HikariDataSource)) {
+            return () -> 0;
+        }
+        HikariDataSource hikari = (HikariDataSource) dataSource;
+        return () -> {
+            // Null until the pool has been started by the first connection request
+            HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+            return pool != null ? pool.getThreadsAwaitingConnection() : 0;
+        };
+    }
+}
@@ -1,20 +1,69 @@
 package com.example.dataexport.config;
 
+import com.example.dataexport.writer.MappedOutputFile;
+import com.example.dataexport.writer.OutputCodec;
+import com.example.dataexport.writer.OutputCompression;
+import com.example.dataexport.writer.OutputFormat;
+import com.example.dataexport.writer.OutputManifest;
+import com.example.dataexport.writer.OutputSegments;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import javax.annotation.PostConstruct;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class OutputConfig {
 
+    private static final Logger log = LoggerFactory.getLogger(OutputConfig.class);
+
     @Value("${app.output.file}")
     private String outputFilePath;
+
+    @Value("${app.output.segment-dir:}")
+    private String segmentDirPath;
+
+    @Value("${app.output.format:csv}")
+    private OutputFormat format;
+
+    @Value("${app.output.compression:none}")
+    private OutputCompression compression;
+
+    @Value("${app.output.gzip.threads:0}")
+    private int gzipThreads;
+
+    @Value("${app.output.gzip.block-size:1048576}")
+    private int gzipBlockSize;
+
+    @Value("${app.output.gzip.level:6}")
+    private int gzipLevel;
+
+    @Value("${app.output.gzip.max-in-flight:4}")
+    private int gzipMaxInFlight;
     
+    @Value("${app.output.manifest.file:}")
+    private String manifestPath;
+
+    @Value("${app.output.roll.max-rows:0}")
+    private long rollMaxRows;
+
+    @Value("${app.output.roll.max-bytes:0}")
+    private long rollMaxBytes;
+
+    @Value("${app.output.mmap.region-size:8388608}")
+    private int mmapRegionSize;
+
     private String cleanedPath;
     
     @PostConstruct
@@ -22,7 +71,7 @@ public class OutputConfig {
         // Clean the path string by trimming any whitespace
         this.cleanedPath = outputFilePath.trim();
         
-        System.out.println("Output file path: [" + this.cleanedPath + "]");
+        log.info("Output file path: [{}]", this.cleanedPath);
     }
     
     @Bean
@@ -31,8 +80,77 @@ public class OutputConfig {
         File outputFile = new File(cleanedPath);
         
         // Log the absolute path for debugging
-        System.out.println("Absolute output file path: " + outputFile.getAbsolutePath());
+        log.info("Absolute output file path: {}", outputFile.getAbsolutePath());
         
         return new FileSystemResource(outputFile);
     }
-} 
\ No newline at end of file
+
+    @Bean
+    public OutputSegments outputSegments() {
+        // Defaults to a directory next to the output file
+        String path = segmentDirPath.trim().isEmpty() ? cleanedPath + ".parts" : segmentDirPath.trim();
+        File directory = new File(path);
+
+        log.info("Output segment directory: {}", directory.getAbsolutePath());
+
+        // Parquet files compress their own pages
+        String suffix = format == OutputFormat.PARQUET ? ".parquet" : compression.getSuffix();
+        return new OutputSegments(directory, suffix);
+    }
+
+    /**
+     * Manifest of the output files. Defaults to {@code manifest.csv} among rolled files, which
+     * are the output, and to {@code <output file>.manifest.csv} otherwise; the partition list is
+     * written next to it as {@code *.partitions.csv}.
+     */
+    @Bean
+    public OutputManifest outputManifest() {
+        File file;
+        if (!manifestPath.trim().isEmpty()) {
+            file = new File(manifestPath.trim());
+        } else if (rollMaxRows > 0 || rollMaxBytes > 0) {
+            file = new File(outputSegments().getDirectory(), "manifest.csv");
+        } else {
+            file = new File(cleanedPath + ".manifest.csv");
+        }
+        String name = file.getName();
+        String baseName = name.endsWith(".csv") ? name.substring(0, name.length() - 4) : name;
+        return new OutputManifest(file, new File(file.getParentFile(), baseName + ".partitions.csv"));
+    }
+
+    /**
+     * Compresses gzip blocks for every partition's writer; defaults to one thread per core. The
+     * queue needs no bound of its own, as each stream has at most {@code max-in-flight} blocks
+     * pending.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService compressionExecutor() {
+        int threads = gzipThreads > 0 ? gzipThreads : Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), new CustomizableThreadFactory("gzip"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Bean
+    public OutputCodec outputCodec() {
+        return new OutputCodec(compression, compressionExecutor(), gzipBlockSize, gzipLevel, gzipMaxInFlight);
+    }
+
+    /**
+     * Output file written in place through memory-mapped regions when
+     * {@code app.output.mmap.enabled} is set; nothing is opened unless the job uses it.
+     */
+    @Bean(destroyMethod = "close")
+    public MappedOutputFile mappedOutputFile() {
+        return new MappedOutputFile(new File(cleanedPath), mmapRegionSize);
+    }
+
+    /** Threads that drain the asynchronous writers' buffers, one per open writer. */
+    @Bean
+    public ThreadFactory writerThreadFactory() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("writer_io");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,161 @@
+package com.example.dataexport.config;
+
+import com.example.dataexport.partition.PartitioningMode;
+import com.example.dataexport.partition.RemotePartitionWorker;
+import com.example.dataexport.partition.RemoteRole;
+import com.example.dataexport.partition.RemoteTransport;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.step.StepLocator;
+import org.springframework.batch.integration.partition.BeanFactoryStepLocator;
+import org.springframework.batch.integration.partition.StepExecutionRequestHandler;
+import org.springframework.batch.support.DatabaseType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.jdbc.store.JdbcChannelMessageStore;
+import org.springframework.integration.jdbc.store.channel.ChannelMessageStoreQueryProvider;
+import org.springframework.integration.jdbc.store.channel.DerbyChannelMessageStoreQueryProvider;
+import org.springframework.integration.jdbc.store.channel.H2ChannelMessageStoreQueryProvider;
+import org.springframework.integration.jdbc.store.channel.HsqlChannelMessageStoreQueryProvider;
+import org.springframework.integration.jdbc.store.channel.MySqlChannelMessageStoreQueryProvider;
+import org.springframework.integration.jdbc.store.channel.OracleChannelMessageStoreQueryProvider;
+import org.springframework.integration.jdbc.store.channel.PostgresChannelMessageStoreQueryProvider;
+import org.springframework.integration.jdbc.store.channel.SqlServerChannelMessageStoreQueryProvider;
+import org.springframework.integration.store.MessageGroupQueue;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.messaging.PollableChannel;
+
+import javax.sql.DataSource;
+
+/**
+ * Remote partitioning: with {@code app.partitioning.mode=remote} the manager sends a
+ * {@code StepExecutionRequest} per partition to the {@link #partitionRequests} queue, and worker
+ * processes run {@code slaveStep} for them. Managers and workers must share the batch database,
+ * which holds both the queue and the job repository the manager polls for results, and the
+ * segment directory, which the workers write and the manager assembles.
+ */
+@Configuration
+public class RemotePartitioningConfig {
+
+    /** Message group of the partition requests in the channel message table. */
+    private static final String REQUEST_GROUP = "exportUserDataJob.partitionRequests";
+
+    @Autowired
+    @Qualifier("batchDataSource")
+    private DataSource batchDataSource;
+
+    @Autowired
+    private JobExplorer jobExplorer;
+
+    @Value("${app.partitioning.mode:static}")
+    private PartitioningMode partitioningMode;
+
+    @Value("${app.partitioning.remote.role:manager}")
+    private RemoteRole role;
+
+    @Value("${app.partitioning.remote.transport:jdbc}")
+    private RemoteTransport transport;
+
+    @Value("${app.partitioning.remote.poll-interval-millis:1000}")
+    private long pollIntervalMillis;
+
+    @Value("${app.thread-pool.size:4}")
+    private int threadPoolSize;
+
+    /**
+     * The queue the manager sends partition requests to. With the {@code jdbc} transport it is
+     * backed by the {@code INT_CHANNEL_MESSAGE} table of the batch database, created when missing;
+     * a request is deleted by the worker that takes it, so each is delivered once.
+     */
+    @Bean
+    public PollableChannel partitionRequests() throws MetaDataAccessException {
+        if (partitioningMode != PartitioningMode.REMOTE || transport == RemoteTransport.IN_PROCESS) {
+            if (partitioningMode == PartitioningMode.REMOTE && role != RemoteRole.BOTH) {
+                throw new IllegalStateException(
+                        "app.partitioning.remote.transport=in-process requires app.partitioning.remote.role=both");
+            }
+            return new QueueChannel();
+        }
+        DatabaseType databaseType = DatabaseType.fromMetaData(batchDataSource);
+        if (!hasChannelMessageTable(batchDataSource)) {
+            ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource(
+                    "org/springframework/integration/jdbc/schema-" + schemaPlatform(databaseType) + ".sql"));
+            populator.execute(batchDataSource);
+        }
+        JdbcChannelMessageStore store = new JdbcChannelMessageStore(batchDataSource);
+        store.setChannelMessageStoreQueryProvider(queryProvider(databaseType));
+        // Only ever deserialize partition requests read back from the shared table
+        store.addAllowedPatterns("org.springframework.batch.integration.partition.StepExecutionRequest",
+                "org.springframework.messaging.*", "java.util.*", "java.lang.*");
+        store.afterPropertiesSet();
+        return new QueueChannel(new MessageGroupQueue(store, REQUEST_GROUP));
+    }
+
+    private static boolean hasChannelMessageTable(DataSource dataSource) {
+        try {
+            new JdbcTemplate(dataSource).queryForObject("SELECT COUNT(*) FROM INT_CHANNEL_MESSAGE", Long.class);
+            return true;
+        } catch (DataAccessException e) {
+            return false;
+        }
+    }
+
+    private static String schemaPlatform(DatabaseType databaseType) {
+        switch (databaseType) {
+            case POSTGRES:
+                return "postgresql";
+            case HSQL:
+                return "hsqldb";
+            default:
+                return databaseType.name().toLowerCase();
+        }
+    }
+
+    private static ChannelMessageStoreQueryProvider queryProvider(DatabaseType databaseType) {
+        switch (databaseType) {
+            case MYSQL:
+                return new MySqlChannelMessageStoreQueryProvider();
+            case H2:
+                return new H2ChannelMessageStoreQueryProvider();
+            case POSTGRES:
+                return new PostgresChannelMessageStoreQueryProvider();
+            case ORACLE:
+                return new OracleChannelMessageStoreQueryProvider();
+            case SQLSERVER:
+                return new SqlServerChannelMessageStoreQueryProvider();
+            case DERBY:
+                return new DerbyChannelMessageStoreQueryProvider();
+            case HSQL:
+                return new HsqlChannelMessageStoreQueryProvider();
+            default:
+                throw new IllegalStateException("No partition request queue for a " + databaseType + " batch database");
+        }
+    }
+
+    @Bean
+    public StepLocator stepLocator() {
+        return new BeanFactoryStepLocator();
+    }
+
+    /**
+     * Started only where {@code app.partitioning.remote.role} is {@code worker} or {@code both},
+     * with one worker per {@code app.thread-pool.size} thread of the partition task executor.
+     */
+    @Bean
+    public RemotePartitionWorker remotePartitionWorker(TaskExecutor taskExecutor) throws MetaDataAccessException {
+        StepExecutionRequestHandler requestHandler = new StepExecutionRequestHandler();
+        requestHandler.setJobExplorer(jobExplorer);
+        requestHandler.setStepLocator(stepLocator());
+        boolean enabled = partitioningMode == PartitioningMode.REMOTE && role != RemoteRole.MANAGER;
+        return new RemotePartitionWorker(partitionRequests(), requestHandler, jobExplorer, taskExecutor,
+                threadPoolSize, pollIntervalMillis, enabled);
+    }
+}
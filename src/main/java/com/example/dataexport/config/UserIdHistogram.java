@@ -0,0 +1,107 @@
+package com.example.dataexport.config;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Approximates the distribution of {@code ret_unique_id} in {@code users} as a list of ordered,
+ * non-overlapping buckets with a row count each, so partitions can be cut by work rather than
+ * by id width.
+ */
+public class UserIdHistogram {
+
+    /** How the bucket boundaries are obtained from the database. */
+    public enum Source {
+        /** Exact equal-count buckets from {@code NTILE} over the id index (MySQL 8+). */
+        NTILE,
+        /** Quantiles of a Bernoulli sample of the ids; counts are estimates. */
+        SAMPLE
+    }
+
+    /** A closed id range and the work estimated to lie within it. */
+    public static final class Bucket {
+        private final int minId;
+        private final int maxId;
+        private long weight;
+
+        Bucket(int minId, int maxId, long weight) {
+            this.minId = minId;
+            this.maxId = maxId;
+            this.weight = weight;
+        }
+
+        public int getMinId() {
+            return minId;
+        }
+
+        public int getMaxId() {
+            return maxId;
+        }
+
+        public long getWeight() {
+            return weight;
+        }
+    }
+
+    private static final String NTILE_SQL =
+            "SELECT MIN(ret_unique_id), MAX(ret_unique_id), COUNT(*) FROM ("
+                    + "SELECT ret_unique_id, NTILE(?) OVER (ORDER BY ret_unique_id) AS bucket FROM users"
+                    + ") t GROUP BY bucket ORDER BY bucket";
+
+    private static final String SAMPLE_SQL =
+            "SELECT ret_unique_id FROM users WHERE RAND() < ? ORDER BY ret_unique_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public UserIdHistogram(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Builds up to {@code bucketCount} buckets weighted by user rows.
+     */
+    public List<Bucket> build(Source source, int bucketCount, double sampleRate) {
+        if (source == Source.NTILE) {
+            return jdbcTemplate.query(NTILE_SQL,
+                    (rs, rowNum) -> new Bucket(rs.getInt(1), rs.getInt(2), rs.getLong(3)), bucketCount);
+        }
+        return fromSample(jdbcTemplate.queryForList(SAMPLE_SQL, Integer.class, sampleRate), bucketCount, sampleRate);
+    }
+
+    /**
+     * Cuts a sorted id sample into equal-count buckets and scales the counts back up to the
+     * table. Bucket boundaries are sampled ids, so the gaps between buckets belong to no bucket;
+     * callers cut partitions at bucket boundaries and cover the gaps themselves.
+     */
+    private static List<Bucket> fromSample(List<Integer> sample, int bucketCount, double sampleRate) {
+        List<Bucket> buckets = new ArrayList<>();
+        int size = sample.size();
+        int count = Math.min(bucketCount, size);
+        for (int i = 0; i < count; i++) {
+            int from = (int) ((long) size * i / count);
+            int to = (int) ((long) size * (i + 1) / count) - 1;
+            long estimatedRows = Math.max(1, Math.round((to - from + 1) / sampleRate));
+            buckets.add(new Bucket(sample.get(from), sample.get(to), estimatedRows));
+        }
+        return buckets;
+    }
+
+    /**
+     * Adds the number of {@code orders} and {@code addresses} rows in each bucket's range to its
+     * weight, for exports where child rows dominate the work. Each count is an index range scan.
+     */
+    public void addChildRowWeights(List<Bucket> buckets) {
+        for (Bucket bucket : buckets) {
+            bucket.weight += countInRange("orders", bucket) + countInRange("addresses", bucket);
+        }
+    }
+
+    private long countInRange(String table, Bucket bucket) {
+        Long count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM " + table + " WHERE ret_unique_id BETWEEN ? AND ?",
+                Long.class, bucket.getMinId(), bucket.getMaxId());
+        return count != null ? count : 0;
+    }
+}
@@ -1,30 +1,60 @@
 package com.example.dataexport.config;
 
+import com.example.dataexport.delta.ChangedUserIds;
 import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
 import javax.sql.DataSource;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 @Component
 public class UserPartitioner implements Partitioner {
 
+    /** How the id space is cut into partitions. */
+    public enum Strategy {
+        /** Equal-width id ranges between MIN and MAX. */
+        RANGE,
+        /** Ranges with roughly equal row counts, cut from a histogram of the id distribution. */
+        HISTOGRAM
+    }
+
     private final JdbcTemplate jdbcTemplate;
-    private final int gridSize;
+    private final Strategy strategy;
+    private final UserIdHistogram.Source histogramSource;
+    private final int bucketsPerPartition;
+    private final double sampleRate;
+    private final boolean weightChildRows;
+    private final ChangedUserIds changedUserIds;
 
     @Autowired
-    public UserPartitioner(@Qualifier("appDataSource") DataSource appDataSource) {
+    public UserPartitioner(@Qualifier("appDataSource") DataSource appDataSource, ChangedUserIds changedUserIds,
+                           @Value("${app.partitioner.strategy:range}") Strategy strategy,
+                           @Value("${app.partitioner.histogram.source:ntile}") UserIdHistogram.Source histogramSource,
+                           @Value("${app.partitioner.histogram.buckets-per-partition:16}") int bucketsPerPartition,
+                           @Value("${app.partitioner.histogram.sample-rate:0.01}") double sampleRate,
+                           @Value("${app.partitioner.histogram.weight-child-rows:false}") boolean weightChildRows) {
         this.jdbcTemplate = new JdbcTemplate(appDataSource);
-        this.gridSize = 4; // Default number of partitions
+        this.strategy = strategy;
+        this.histogramSource = histogramSource;
+        this.bucketsPerPartition = bucketsPerPartition;
+        this.sampleRate = sampleRate;
+        this.weightChildRows = weightChildRows;
+        this.changedUserIds = changedUserIds;
     }
 
     @Override
     public Map<String, ExecutionContext> partition(int gridSize) {
+        if (changedUserIds.isSelected()) {
+            return partitionChangedIds(gridSize, changedUserIds.get());
+        }
+
         // Get min and max ret_unique_id values
         Integer minId = jdbcTemplate.queryForObject(
                 "SELECT MIN(ret_unique_id) FROM users", Integer.class);
@@ -36,23 +66,27 @@ public class UserPartitioner implements Partitioner {
             return createSinglePartition();
         }
 
-        // Calculate size of each partition
-        int targetSize = Math.max(1, (maxId - minId + 1) / gridSize);
-        
+        if (strategy == Strategy.HISTOGRAM) {
+            return partitionByHistogram(gridSize, minId, maxId);
+        }
+
+        // Calculate size of each partition; in long, as ranges near Integer.MAX_VALUE would overflow
+        long targetSize = Math.max(1, ((long) maxId - minId + 1) / gridSize);
+
         Map<String, ExecutionContext> result = new HashMap<>();
         int partitionCount = 0;
-        int currentStart = minId;
+        long currentStart = minId;
 
         // Create partitions
         while (currentStart <= maxId) {
-            int currentEnd = Math.min(maxId, currentStart + targetSize - 1);
-            
+            long currentEnd = Math.min(maxId, currentStart + targetSize - 1);
+
             ExecutionContext context = new ExecutionContext();
-            context.putInt("minValue", currentStart);
-            context.putInt("maxValue", currentEnd);
-            
+            context.putInt("minValue", (int) currentStart);
+            context.putInt("maxValue", (int) currentEnd);
+
             result.put("partition" + partitionCount, context);
-            
+
             currentStart = currentEnd + 1;
             partitionCount++;
         }
@@ -60,6 +94,91 @@ public class UserPartitioner implements Partitioner {
         return result;
     }
 
+    /**
+     * Cuts the id space at histogram bucket boundaries so that each partition carries about
+     * {@code 1/gridSize} of the total weight (user rows, plus child rows if enabled). Boundaries
+     * are placed where the running weight crosses each multiple of the target, so rounding error
+     * does not pile up in the last partition. The first and last partitions are stretched to the
+     * table's MIN and MAX so ids between sampled buckets are never left out.
+     */
+    private Map<String, ExecutionContext> partitionByHistogram(int gridSize, int minId, int maxId) {
+        UserIdHistogram histogram = new UserIdHistogram(jdbcTemplate);
+        List<UserIdHistogram.Bucket> buckets = histogram.build(histogramSource, gridSize * bucketsPerPartition, sampleRate);
+        if (buckets.isEmpty()) {
+            return singleRangePartition(minId, maxId);
+        }
+        if (weightChildRows) {
+            histogram.addChildRowWeights(buckets);
+        }
+
+        long totalWeight = 0;
+        for (UserIdHistogram.Bucket bucket : buckets) {
+            totalWeight += bucket.getWeight();
+        }
+
+        Map<String, ExecutionContext> result = new HashMap<>();
+        int partitionCount = 0;
+        int currentStart = minId;
+        long runningWeight = 0;
+        long partitionWeight = 0;
+
+        for (int i = 0; i < buckets.size(); i++) {
+            UserIdHistogram.Bucket bucket = buckets.get(i);
+            runningWeight += bucket.getWeight();
+            partitionWeight += bucket.getWeight();
+            boolean last = i == buckets.size() - 1;
+            long boundary = totalWeight * (partitionCount + 1) / gridSize;
+
+            if (last || (runningWeight >= boundary && bucket.getMaxId() < maxId)) {
+                int currentEnd = last ? maxId : bucket.getMaxId();
+
+                ExecutionContext context = new ExecutionContext();
+                context.putInt("minValue", currentStart);
+                context.putInt("maxValue", currentEnd);
+                context.putLong("weight", partitionWeight);
+                result.put("partition" + partitionCount, context);
+
+                currentStart = currentEnd + 1;
+                partitionWeight = 0;
+                partitionCount++;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Cuts the ids picked by a delta scan into ranges holding about the same number of them, each
+     * bounded by its first and last id.
+     */
+    private Map<String, ExecutionContext> partitionChangedIds(int gridSize, int[] ids) {
+        if (ids.length == 0) {
+            return createSinglePartition();
+        }
+        Map<String, ExecutionContext> result = new HashMap<>();
+        int partitions = Math.min(gridSize, ids.length);
+        for (int i = 0; i < partitions; i++) {
+            int from = (int) ((long) ids.length * i / partitions);
+            int to = (int) ((long) ids.length * (i + 1) / partitions) - 1;
+
+            ExecutionContext context = new ExecutionContext();
+            context.putInt("minValue", ids[from]);
+            context.putInt("maxValue", ids[to]);
+            context.putLong("weight", to - from + 1);
+            result.put("partition" + i, context);
+        }
+        return result;
+    }
+
+    private Map<String, ExecutionContext> singleRangePartition(int minId, int maxId) {
+        Map<String, ExecutionContext> result = new HashMap<>();
+        ExecutionContext context = new ExecutionContext();
+        context.putInt("minValue", minId);
+        context.putInt("maxValue", maxId);
+        result.put("partition0", context);
+        return result;
+    }
+
     private Map<String, ExecutionContext> createSinglePartition() {
         Map<String, ExecutionContext> result = new HashMap<>();
         ExecutionContext context = new ExecutionContext();
@@ -68,4 +187,4 @@ public class UserPartitioner implements Partitioner {
         result.put("partition0", context);
         return result;
     }
-} 
\ No newline at end of file
+}
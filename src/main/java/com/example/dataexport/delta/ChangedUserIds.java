@@ -0,0 +1,45 @@
+package com.example.dataexport.delta;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+
+/**
+ * Hands the sorted {@code ret_unique_id}s found by the delta scan to the partitioner and the
+ * step-scoped readers. Unset in full exports, including the first run of the delta mode.
+ */
+@Component
+public class ChangedUserIds {
+
+    private volatile int[] ids;
+
+    public void select(int[] sortedIds) {
+        this.ids = sortedIds;
+    }
+
+    public void clear() {
+        this.ids = null;
+    }
+
+    /** Whether the current run exports only the selected users. */
+    public boolean isSelected() {
+        return ids != null;
+    }
+
+    public int[] get() {
+        return ids;
+    }
+
+    /** Returns the selected ids between {@code minValue} and {@code maxValue}, both inclusive. */
+    public int[] between(int minValue, int maxValue) {
+        int[] selected = ids;
+        int from = lowerBound(selected, minValue);
+        int to = maxValue == Integer.MAX_VALUE ? selected.length : lowerBound(selected, maxValue + 1);
+        return Arrays.copyOfRange(selected, from, Math.max(from, to));
+    }
+
+    private static int lowerBound(int[] sorted, int value) {
+        int index = Arrays.binarySearch(sorted, value);
+        return index >= 0 ? index : -index - 1;
+    }
+}
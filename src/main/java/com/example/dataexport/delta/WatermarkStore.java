@@ -0,0 +1,70 @@
+package com.example.dataexport.delta;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Keeps the high-water mark of each source table in a properties file between runs.
+ * <p>
+ * The scan stages the marks it exported up to with {@link #stage}; they only replace the
+ * committed ones in {@link #commit()}, once the whole job has succeeded, so the changes seen by
+ * a failed run are picked up again by the next one.
+ */
+public class WatermarkStore {
+
+    private final File file;
+    private final Properties committed = new Properties();
+    private final Properties staged = new Properties();
+
+    public WatermarkStore(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized void load() throws IOException {
+        committed.clear();
+        staged.clear();
+        if (file.exists()) {
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                committed.load(in);
+            }
+        }
+    }
+
+    /** Returns the committed watermark of {@code table}, or {@code null} if it was never exported. */
+    public synchronized String get(String table) {
+        return committed.getProperty(table);
+    }
+
+    public synchronized void stage(String table, String watermark) {
+        staged.setProperty(table, watermark);
+    }
+
+    /** Writes the staged watermarks over the committed ones, atomically replacing the file. */
+    public synchronized void commit() throws IOException {
+        Properties merged = new Properties();
+        merged.putAll(committed);
+        merged.putAll(staged);
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp.toPath())) {
+            merged.store(out, "High-water marks of the last completed export");
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        committed.clear();
+        committed.putAll(merged);
+        staged.clear();
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.dataexport.delta;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+
+/**
+ * Kind of column a table's high-water mark is kept on, which decides how its maximum is read,
+ * persisted and bound again on the next run.
+ */
+public enum WatermarkType {
+
+    /** A last-modified timestamp such as {@code updated_at}; catches inserts and updates. */
+    TIMESTAMP {
+        @Override
+        public String defaultColumn(String table) {
+            return "updated_at";
+        }
+
+        @Override
+        Object max(JdbcTemplate jdbcTemplate, String sql) {
+            return jdbcTemplate.queryForObject(sql, Timestamp.class);
+        }
+
+        @Override
+        public Object parse(String value) {
+            return Timestamp.valueOf(value);
+        }
+
+        /**
+         * Stops {@code lag} milliseconds before the present on the database's clock, which is the
+         * one that stamps the column. Time moves on, so the rows left out go to a later run.
+         */
+        @Override
+        public Object upperBound(JdbcTemplate jdbcTemplate, Object currentMax, long lag) {
+            Timestamp now = jdbcTemplate.queryForObject("SELECT LOCALTIMESTAMP", Timestamp.class);
+            Timestamp cutoff = new Timestamp(now.getTime() - lag);
+            return cutoff.before((Timestamp) currentMax) ? cutoff : currentMax;
+        }
+
+        @Override
+        public Object lowerBound(Object last, long lag) {
+            return last;
+        }
+    },
+
+    /** A monotonically increasing key such as {@code order_id}; catches inserts only. */
+    ID {
+        @Override
+        public String defaultColumn(String table) {
+            switch (table) {
+                case "orders":
+                    return "order_id";
+                case "addresses":
+                    return "address_id";
+                default:
+                    return "ret_unique_id";
+            }
+        }
+
+        @Override
+        Object max(JdbcTemplate jdbcTemplate, String sql) {
+            return jdbcTemplate.queryForObject(sql, Long.class);
+        }
+
+        @Override
+        public Object parse(String value) {
+            return Long.valueOf(value);
+        }
+
+        @Override
+        public Object upperBound(JdbcTemplate jdbcTemplate, Object currentMax, long lag) {
+            return currentMax;
+        }
+
+        /**
+         * Re-scans the {@code lag} keys below the last watermark. Keys only grow when rows are
+         * inserted, so stopping below the maximum instead would hold the newest rows back until
+         * enough later inserts arrive.
+         */
+        @Override
+        public Object lowerBound(Object last, long lag) {
+            return (Long) last - lag;
+        }
+    };
+
+    /** Column the watermark of {@code table} is kept on unless one is configured. */
+    public abstract String defaultColumn(String table);
+
+    abstract Object max(JdbcTemplate jdbcTemplate, String sql);
+
+    /** Returns the current maximum of {@code column}, or {@code null} when the table is empty. */
+    public Object currentMax(JdbcTemplate jdbcTemplate, String table, String column) {
+        return max(jdbcTemplate, "SELECT MAX(" + column + ") FROM " + table);
+    }
+
+    /** Parses a watermark persisted with {@link String#valueOf(Object)}. */
+    public abstract Object parse(String value);
+
+    /**
+     * Returns the inclusive upper bound of this run's scan, which becomes the next watermark.
+     * <p>
+     * A write transaction stamps its rows, or takes its keys, before it commits, so one still open
+     * when a scan runs commits values at or below the maximum the scan read, and a window ending
+     * right at that maximum would leave them below the next watermark for good. Each type makes
+     * room for them with this bound or with {@link #lowerBound}; {@code lag} is in milliseconds for
+     * timestamps and in keys for ids.
+     */
+    public abstract Object upperBound(JdbcTemplate jdbcTemplate, Object currentMax, long lag);
+
+    /** Returns the exclusive lower bound of this run's scan, given the last watermark. */
+    public abstract Object lowerBound(Object last, long lag);
+
+    /** Compares two watermarks of this type. */
+    @SuppressWarnings("unchecked")
+    public int compare(Object a, Object b) {
+        return ((Comparable<Object>) a).compareTo(b);
+    }
+}
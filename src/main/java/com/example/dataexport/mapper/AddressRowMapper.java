@@ -1,18 +1,27 @@
 package com.example.dataexport.mapper;
 
 import com.example.dataexport.model.Address;
-import org.springframework.jdbc.core.RowMapper;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
-public class AddressRowMapper implements RowMapper<Address> {
+public class AddressRowMapper extends OrdinalRowMapper<Address> {
+
+    private static final String[] COLUMNS = {"address_id", "ret_unique_id", "city", "street"};
+
+    /** The columns this mapper reads, for the {@code SELECT} clause. */
+    public static final String SELECT_LIST = selectList(COLUMNS);
+
+    public AddressRowMapper() {
+        super(COLUMNS);
+    }
+
     @Override
-    public Address mapRow(ResultSet rs, int rowNum) throws SQLException {
+    protected Address mapRow(ResultSet rs, int[] ordinals) throws SQLException {
         Address address = new Address();
-        address.setAddressId(rs.getInt("address_id"));
-        address.setRetUniqueId(rs.getInt("ret_unique_id"));
-        address.setCity(rs.getString("city"));
-        address.setStreet(rs.getString("street"));
+        address.setAddressId(rs.getInt(ordinals[0]));
+        address.setRetUniqueId(rs.getInt(ordinals[1]));
+        address.setCity(rs.getString(ordinals[2]));
+        address.setStreet(rs.getString(ordinals[3]));
         return address;
     }
 } 
\ No newline at end of file
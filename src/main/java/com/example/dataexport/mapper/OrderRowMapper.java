@@ -1,23 +1,31 @@
 package com.example.dataexport.mapper;
 
 import com.example.dataexport.model.Order;
-import org.springframework.jdbc.core.RowMapper;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.time.LocalDate;
 
-public class OrderRowMapper implements RowMapper<Order> {
+public class OrderRowMapper extends OrdinalRowMapper<Order> {
+
+    private static final String[] COLUMNS = {"order_id", "ret_unique_id", "order_date", "amount"};
+
+    /** The columns this mapper reads, for the {@code SELECT} clause. */
+    public static final String SELECT_LIST = selectList(COLUMNS);
+
+    public OrderRowMapper() {
+        super(COLUMNS);
+    }
+
     @Override
-    public Order mapRow(ResultSet rs, int rowNum) throws SQLException {
+    protected Order mapRow(ResultSet rs, int[] ordinals) throws SQLException {
         Order order = new Order();
-        order.setOrderId(rs.getInt("order_id"));
-        order.setRetUniqueId(rs.getInt("ret_unique_id"));
+        order.setOrderId(rs.getInt(ordinals[0]));
+        order.setRetUniqueId(rs.getInt(ordinals[1]));
         
         // Handle date conversion safely
-        java.sql.Date date = rs.getDate("order_date");
+        java.sql.Date date = rs.getDate(ordinals[2]);
         order.setOrderDate(date != null ? date.toLocalDate() : null);
         
-        order.setAmount(rs.getBigDecimal("amount"));
+        order.setAmount(rs.getBigDecimal(ordinals[3]));
         return order;
     }
 } 
\ No newline at end of file
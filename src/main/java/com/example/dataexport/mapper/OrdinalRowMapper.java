@@ -0,0 +1,47 @@
+package com.example.dataexport.mapper;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Base for row mappers that read a fixed list of columns by index. Column names are resolved to
+ * ordinals once, on the first row of each result set, instead of by name on every row.
+ * <p>
+ * Keeps the ordinals of the result set it last saw, so an instance must not be shared by
+ * concurrent queries; create one per query or cursor.
+ */
+public abstract class OrdinalRowMapper<T> implements RowMapper<T> {
+
+    private final String[] columns;
+    private final int[] ordinals;
+    private ResultSet resolvedFor;
+
+    protected OrdinalRowMapper(String[] columns) {
+        this.columns = columns;
+        this.ordinals = new int[columns.length];
+    }
+
+    /** Comma-separated column list for the {@code SELECT} clause of queries using this mapper. */
+    public static String selectList(String[] columns) {
+        return String.join(", ", columns);
+    }
+
+    @Override
+    public final T mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if (rs != resolvedFor) {
+            for (int i = 0; i < columns.length; i++) {
+                ordinals[i] = rs.findColumn(columns[i]);
+            }
+            resolvedFor = rs;
+        }
+        return mapRow(rs, ordinals);
+    }
+
+    /**
+     * Maps the current row; {@code ordinals[i]} is the result set index of the i-th column
+     * passed to the constructor.
+     */
+    protected abstract T mapRow(ResultSet rs, int[] ordinals) throws SQLException;
+}
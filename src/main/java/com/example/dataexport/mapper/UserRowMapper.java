@@ -1,17 +1,26 @@
 package com.example.dataexport.mapper;
 
 import com.example.dataexport.model.User;
-import org.springframework.jdbc.core.RowMapper;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
-public class UserRowMapper implements RowMapper<User> {
+public class UserRowMapper extends OrdinalRowMapper<User> {
+
+    private static final String[] COLUMNS = {"ret_unique_id", "username", "email"};
+
+    /** The columns this mapper reads, for the {@code SELECT} clause. */
+    public static final String SELECT_LIST = selectList(COLUMNS);
+
+    public UserRowMapper() {
+        super(COLUMNS);
+    }
+
     @Override
-    public User mapRow(ResultSet rs, int rowNum) throws SQLException {
+    protected User mapRow(ResultSet rs, int[] ordinals) throws SQLException {
         User user = new User();
-        user.setRetUniqueId(rs.getInt("ret_unique_id"));
-        user.setUsername(rs.getString("username"));
-        user.setEmail(rs.getString("email"));
+        user.setRetUniqueId(rs.getInt(ordinals[0]));
+        user.setUsername(rs.getString(ordinals[1]));
+        user.setEmail(rs.getString(ordinals[2]));
         return user;
     }
 } 
\ No newline at end of file
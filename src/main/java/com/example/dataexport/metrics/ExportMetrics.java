@@ -0,0 +1,136 @@
+package com.example.dataexport.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The pipeline's Micrometer meters, registered in the global registry like Spring Batch's own
+ * {@code spring.batch.*} meters, so they reach whatever registries the application adds to it
+ * (Prometheus through the actuator).
+ * <p>
+ * Timers publish a percentile histogram for server-side aggregation as well as p50, p95 and p99.
+ * Their statistics never expire within a run, so percentiles and maxima cover the whole job
+ * rather than the last few minutes.
+ */
+public final class ExportMetrics {
+
+    public static final String QUERY = "export.query";
+    public static final String MERGE = "export.merge";
+    public static final String ENCODE = "export.encode";
+    public static final String OUTPUT_WRITE = "export.output.write";
+    public static final String OUTPUT_BYTES = "export.output.bytes";
+    public static final String CHUNK_COMMIT = "export.chunk.commit";
+    public static final String PARTITION_ROWS_READ = "export.partition.rows.read";
+    public static final String PARTITION_ROWS_WRITTEN = "export.partition.rows.written";
+
+    private static final String CHUNK_WRITE = "spring.batch.chunk.write";
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+    private static final Duration STATISTICS_EXPIRY = Duration.ofDays(7);
+
+    private static final Timer MERGE_TIMER = timer(MERGE,
+            "Merging a window of users with their orders and addresses, after the lookups completed");
+    private static final Timer ENCODE_TIMER = timer(ENCODE, "Encoding a chunk of rows to CSV bytes");
+    private static final Timer OUTPUT_WRITE_TIMER = timer(OUTPUT_WRITE,
+            "Handing a chunk's encoded bytes to the output stream, compressor or mapped region");
+    private static final Counter OUTPUT_BYTES_COUNTER = Counter.builder(OUTPUT_BYTES)
+            .description("Encoded row bytes written, before compression")
+            .baseUnit("bytes")
+            .register(Metrics.globalRegistry);
+    private static final Timer CHUNK_COMMIT_TIMER = timer(CHUNK_COMMIT,
+            "From the end of a chunk's write to its commit, saving the step state on the way");
+
+    private ExportMetrics() {
+    }
+
+    /** Latency of a query on {@code table}, from execution until all its rows are mapped. */
+    public static Timer queryTimer(String table) {
+        return timer(QUERY, "Source query latency", "table", table);
+    }
+
+    public static void recordMerge(long nanos) {
+        MERGE_TIMER.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Records one chunk of a CSV writer: {@code totalNanos} spent in the writer, of which
+     * {@code outputNanos} went to writing out {@code bytes} encoded bytes; the rest was encoding.
+     */
+    public static void recordChunkOutput(long totalNanos, long outputNanos, long bytes) {
+        ENCODE_TIMER.record(totalNanos - outputNanos, TimeUnit.NANOSECONDS);
+        OUTPUT_WRITE_TIMER.record(outputNanos, TimeUnit.NANOSECONDS);
+        OUTPUT_BYTES_COUNTER.increment(bytes);
+    }
+
+    public static void recordChunkCommit(long nanos) {
+        CHUNK_COMMIT_TIMER.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer timer(String name, String description, String... tags) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .publishPercentiles(PERCENTILES)
+                .distributionStatisticExpiry(STATISTICS_EXPIRY)
+                .distributionStatisticBufferLength(1)
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Where this process spent its time: one line per query table and pipeline stage, with
+     * Spring Batch's chunk write timer summed over all partitions.
+     */
+    public static String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Timer timer : Metrics.globalRegistry.find(QUERY).timers()) {
+            appendTimer(sb, "query " + timer.getId().getTag("table"), timer);
+        }
+        appendTimer(sb, "merge", MERGE_TIMER);
+        appendTimer(sb, "encode", ENCODE_TIMER);
+        appendTimer(sb, "output write", OUTPUT_WRITE_TIMER);
+        appendChunkWrites(sb, Metrics.globalRegistry.find(CHUNK_WRITE).timers());
+        appendTimer(sb, "chunk commit", CHUNK_COMMIT_TIMER);
+        sb.append(String.format(Locale.ROOT, "  %-18s %,d bytes (%.1f MB)%n", "output bytes",
+                (long) OUTPUT_BYTES_COUNTER.count(), OUTPUT_BYTES_COUNTER.count() / (1024 * 1024)));
+        return sb.toString();
+    }
+
+    private static void appendTimer(StringBuilder sb, String label, Timer timer) {
+        if (timer.count() == 0) {
+            return;
+        }
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        sb.append(String.format(Locale.ROOT, "  %-18s %,9d x   total %9.1f s   mean %8.2f ms", label,
+                snapshot.count(), snapshot.total(TimeUnit.SECONDS), snapshot.mean(TimeUnit.MILLISECONDS)));
+        for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+            sb.append(String.format(Locale.ROOT, "   p%.0f %8.2f ms", percentile.percentile() * 100,
+                    percentile.value(TimeUnit.MILLISECONDS)));
+        }
+        sb.append(String.format(Locale.ROOT, "   max %8.2f ms%n", snapshot.max(TimeUnit.MILLISECONDS)));
+    }
+
+    /** Spring Batch times chunk writes per step, so the partitions are added up here. */
+    private static void appendChunkWrites(StringBuilder sb, Collection<Timer> timers) {
+        long count = 0;
+        double totalSeconds = 0;
+        double maxMillis = 0;
+        for (Timer timer : timers) {
+            count += timer.count();
+            totalSeconds += timer.totalTime(TimeUnit.SECONDS);
+            maxMillis = Math.max(maxMillis, timer.max(TimeUnit.MILLISECONDS));
+        }
+        if (count == 0) {
+            return;
+        }
+        sb.append(String.format(Locale.ROOT, "  %-18s %,9d x   total %9.1f s   mean %8.2f ms   max %8.2f ms%n",
+                "chunk write", count, totalSeconds, totalSeconds * 1000 / count, maxMillis));
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.dataexport.metrics;
+
+import com.example.dataexport.util.ConcurrencyGovernor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.listener.JobExecutionListenerSupport;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Logs where a run spent its time when the job ends: rows and duration of its partitions, the
+ * slowest of them, the {@link ExportMetrics#summary() timers} of this process and, when one is
+ * set, where the child fetch governor's limit ended up.
+ * <p>
+ * Partitions are read back from the job repository, which holds their final counts whether they
+ * ran on threads of this process or on remote workers. The timers only cover work done in this
+ * process; remote workers log their own when they shut down.
+ */
+public class JobMetricsSummaryListener extends JobExecutionListenerSupport {
+
+    private static final Logger log = LoggerFactory.getLogger(JobMetricsSummaryListener.class);
+
+    private static final int SLOWEST_PARTITIONS = 5;
+
+    private final JobExplorer jobExplorer;
+    private final String partitionStepName;
+    private ConcurrencyGovernor governor;
+
+    public JobMetricsSummaryListener(JobExplorer jobExplorer, String partitionStepName) {
+        this.jobExplorer = jobExplorer;
+        this.partitionStepName = partitionStepName;
+    }
+
+    public void setGovernor(ConcurrencyGovernor governor) {
+        this.governor = governor;
+    }
+
+    @Override
+    public void afterJob(JobExecution jobExecution) {
+        JobExecution stored = jobExplorer.getJobExecution(jobExecution.getId());
+        List<StepExecution> partitions = new ArrayList<>();
+        for (StepExecution stepExecution : (stored != null ? stored : jobExecution).getStepExecutions()) {
+            if (stepExecution.getStepName().startsWith(partitionStepName + ":")) {
+                partitions.add(stepExecution);
+            }
+        }
+        partitions.sort((a, b) -> Long.compare(durationMillis(b), durationMillis(a)));
+
+        long read = 0;
+        long written = 0;
+        long partitionMillis = 0;
+        for (StepExecution partition : partitions) {
+            read += partition.getReadCount();
+            written += partition.getWriteCount();
+            partitionMillis += durationMillis(partition);
+        }
+
+        StringBuilder sb = new StringBuilder("Export metrics:").append(System.lineSeparator());
+        sb.append(String.format(Locale.ROOT, "  %-18s %,d run, %,d rows read, %,d rows written, %.1f s in total%n",
+                "partitions", partitions.size(), read, written, partitionMillis / 1000.0));
+        for (StepExecution partition : partitions.subList(0, Math.min(SLOWEST_PARTITIONS, partitions.size()))) {
+            sb.append(String.format(Locale.ROOT, "  %-18s %s %.1f s, %,d rows read, %,d rows written%n",
+                    "slowest", partition.getStepName(), durationMillis(partition) / 1000.0,
+                    partition.getReadCount(), partition.getWriteCount()));
+        }
+        sb.append(ExportMetrics.summary());
+        if (governor != null) {
+            sb.append(String.format(Locale.ROOT, "  %-18s %s%n", "fetch governor", governor));
+        }
+        log.info(sb.toString().trim());
+    }
+
+    private static long durationMillis(StepExecution stepExecution) {
+        Date start = stepExecution.getStartTime();
+        Date end = stepExecution.getEndTime();
+        return start != null && end != null ? end.getTime() - start.getTime() : 0;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.dataexport.metrics;
+
+import com.example.dataexport.model.UserData;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts the rows read and written by each partition, as {@link ExportMetrics#PARTITION_ROWS_READ}
+ * and {@link ExportMetrics#PARTITION_ROWS_WRITTEN} tagged with the partition's step name, and
+ * times chunk commits. One instance serves every partition of the step; each partition's state is
+ * kept by step execution, and the counters advance with every committed chunk so they can be
+ * watched while the job runs.
+ */
+public class PartitionMetricsListener implements StepExecutionListener, ChunkListener, ItemWriteListener<UserData> {
+
+    private final Map<Long, PartitionMeters> partitions = new ConcurrentHashMap<>();
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        partitions.put(stepExecution.getId(), new PartitionMeters(stepExecution.getStepName()));
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        PartitionMeters meters = partitions.remove(stepExecution.getId());
+        if (meters != null) {
+            meters.count(stepExecution);
+        }
+        return null;
+    }
+
+    @Override
+    public void beforeWrite(List<? extends UserData> items) {
+    }
+
+    @Override
+    public void afterWrite(List<? extends UserData> items) {
+        // The chunk runs on the partition's thread, which has the step registered
+        StepContext context = StepSynchronizationManager.getContext();
+        PartitionMeters meters = context != null ? partitions.get(context.getStepExecution().getId()) : null;
+        if (meters != null) {
+            meters.writeEnd = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void onWriteError(Exception exception, List<? extends UserData> items) {
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+    }
+
+    /** Called once the chunk's transaction has committed. */
+    @Override
+    public void afterChunk(ChunkContext context) {
+        StepExecution stepExecution = context.getStepContext().getStepExecution();
+        PartitionMeters meters = partitions.get(stepExecution.getId());
+        if (meters == null) {
+            return;
+        }
+        if (meters.writeEnd != 0) {
+            ExportMetrics.recordChunkCommit(System.nanoTime() - meters.writeEnd);
+            meters.writeEnd = 0;
+        }
+        meters.count(stepExecution);
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        PartitionMeters meters = partitions.get(context.getStepContext().getStepExecution().getId());
+        if (meters != null) {
+            meters.writeEnd = 0;
+        }
+    }
+
+    /** Only touched by the thread running the partition. */
+    private static final class PartitionMeters {
+        final Counter read;
+        final Counter written;
+        long readCounted;
+        long writtenCounted;
+        long writeEnd;
+
+        PartitionMeters(String partition) {
+            read = Counter.builder(ExportMetrics.PARTITION_ROWS_READ)
+                    .description("Rows read by a partition")
+                    .tag("partition", partition)
+                    .baseUnit("rows")
+                    .register(Metrics.globalRegistry);
+            written = Counter.builder(ExportMetrics.PARTITION_ROWS_WRITTEN)
+                    .description("Rows written by a partition")
+                    .tag("partition", partition)
+                    .baseUnit("rows")
+                    .register(Metrics.globalRegistry);
+        }
+
+        void count(StepExecution stepExecution) {
+            long readCount = stepExecution.getReadCount();
+            long writeCount = stepExecution.getWriteCount();
+            read.increment(readCount - readCounted);
+            written.increment(writeCount - writtenCounted);
+            readCounted = readCount;
+            writtenCounted = writeCount;
+        }
+    }
+}
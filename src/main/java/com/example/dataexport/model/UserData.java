@@ -25,6 +25,10 @@ public class UserData {
     private String city;
     private String street;
     
+    // Aggregates, only set in aggregate merge mode
+    private Integer orderCount;
+    private Integer addressCount;
+    
     // Factory method to create from components
     public static UserData from(User user, Order order, Address address) {
         UserData userData = new UserData();
@@ -50,4 +54,31 @@ public class UserData {
         
         return userData;
     }
+    
+    // Factory method for a per-user aggregate row; children are folded in with addOrder/addAddress
+    public static UserData aggregateOf(User user) {
+        UserData userData = from(user, null, null);
+        userData.setOrderCount(0);
+        userData.setAmount(BigDecimal.ZERO);
+        userData.setAddressCount(0);
+        return userData;
+    }
+    
+    // Counts the order, adds its amount to the total and keeps the latest order date
+    public void addOrder(Order order) {
+        orderCount++;
+        if (order.getAmount() != null) {
+            amount = amount.add(order.getAmount());
+        }
+        if (order.getOrderDate() != null && (orderDate == null || order.getOrderDate().isAfter(orderDate))) {
+            orderDate = order.getOrderDate();
+        }
+    }
+    
+    // Counts the address and keeps the last one seen as the user's address
+    public void addAddress(Address address) {
+        addressCount++;
+        city = address.getCity();
+        street = address.getStreet();
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,113 @@
+package com.example.dataexport.partition;
+
+import com.example.dataexport.model.User;
+
+import java.util.List;
+
+/**
+ * The live id range of a running partition, shared between its reader and the
+ * {@link WorkStealingPartitionHandler}. The reader claims ids as it reads them; the handler may
+ * concurrently lower the upper bound to hand the unclaimed tail of the range to an idle worker.
+ * Both sides synchronize on the range, so an id is either claimed by the reader or split off,
+ * never both.
+ * <p>
+ * Only readers that call {@link #enableSplitting()} and claim every id they emit are ever split.
+ */
+public class PartitionRange {
+
+    private final String name;
+    private final int minValue;
+    private int maxValue;
+    private long lastClaimed;
+    private boolean splittable;
+    private boolean finished;
+
+    public PartitionRange(String name, int minValue, int maxValue) {
+        this(name, minValue, maxValue, (long) minValue - 1);
+    }
+
+    /**
+     * @param lastClaimed highest id already read before this range was created, as on a restart
+     *                    that resumes the reader part way through the range
+     */
+    public PartitionRange(String name, int minValue, int maxValue, long lastClaimed) {
+        this.name = name;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        this.lastClaimed = lastClaimed;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMinValue() {
+        return minValue;
+    }
+
+    public synchronized int getMaxValue() {
+        return maxValue;
+    }
+
+    /** Called by a reader that claims every id it emits, allowing the range to be split. */
+    public synchronized void enableSplitting() {
+        splittable = true;
+    }
+
+    /**
+     * Claims a single id for the reader.
+     *
+     * @return {@code false} if the id lies beyond the (possibly lowered) upper bound and must not be emitted
+     */
+    public synchronized boolean claim(int id) {
+        if (id > maxValue) {
+            return false;
+        }
+        lastClaimed = id;
+        return true;
+    }
+
+    /**
+     * Claims a window of users read in id order, dropping in place any that lie beyond the upper
+     * bound because the range was split while they were being fetched.
+     *
+     * @return {@code false} once the reader has reached the upper bound and should stop reading
+     */
+    public synchronized boolean claim(List<User> users) {
+        int kept = users.size();
+        while (kept > 0 && users.get(kept - 1).getRetUniqueId() > maxValue) {
+            kept--;
+        }
+        boolean trimmed = kept < users.size();
+        users.subList(kept, users.size()).clear();
+        if (kept > 0) {
+            lastClaimed = users.get(kept - 1).getRetUniqueId();
+        }
+        return !trimmed && lastClaimed < maxValue;
+    }
+
+    /** Marks the range as done; a finished range is never split. */
+    public synchronized void finish() {
+        finished = true;
+    }
+
+    /** Width of the id range not yet claimed by the reader, or {@code 0} if it cannot be split. */
+    public synchronized long remaining() {
+        return splittable && !finished ? maxValue - lastClaimed : 0;
+    }
+
+    /**
+     * Gives away the upper half of the unclaimed ids.
+     *
+     * @return the {@code [min, max]} bounds split off, or {@code null} if fewer than {@code minSplitSize} ids remain
+     */
+    public synchronized int[] split(int minSplitSize) {
+        long remaining = remaining();
+        if (remaining < 2L * minSplitSize) {
+            return null;
+        }
+        int oldMax = maxValue;
+        maxValue = (int) (lastClaimed + remaining / 2);
+        return new int[]{maxValue + 1, oldMax};
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.dataexport.partition;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands the live {@link PartitionRange} of a partition, keyed by its step execution name, from the
+ * {@link WorkStealingPartitionHandler} to the step-scoped reader running it.
+ */
+@Component
+public class PartitionRangeRegistry {
+
+    private final Map<String, PartitionRange> ranges = new ConcurrentHashMap<>();
+
+    public void register(String stepName, PartitionRange range) {
+        ranges.put(stepName, range);
+    }
+
+    /** Returns the range for the partition step, or {@code null} when it is not work-stealing. */
+    public PartitionRange get(String stepName) {
+        return ranges.get(stepName);
+    }
+
+    public void remove(String stepName) {
+        ranges.remove(stepName);
+    }
+}
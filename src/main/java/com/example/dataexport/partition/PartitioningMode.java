@@ -0,0 +1,19 @@
+package com.example.dataexport.partition;
+
+/**
+ * Selects how partitions are scheduled onto worker threads, set through {@code app.partitioning.mode}.
+ */
+public enum PartitioningMode {
+
+    /** One partition per thread, all started at once. */
+    STATIC,
+
+    /** Many small partitions pulled from a shared queue, with running ranges split on demand. */
+    WORK_STEALING,
+
+    /**
+     * Partitions sent through a queue to worker processes, which record their outcome in the
+     * shared job repository.
+     */
+    REMOTE
+}
@@ -0,0 +1,173 @@
+package com.example.dataexport.partition;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.integration.partition.StepExecutionRequest;
+import org.springframework.batch.integration.partition.StepExecutionRequestHandler;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.PollableChannel;
+
+/**
+ * Runs partitions sent by a remote partitioning manager: a fixed number of workers take
+ * {@link StepExecutionRequest}s from the request queue and execute the requested step. The step
+ * records its progress and outcome in the shared job repository, where the manager polls for it,
+ * so nothing is sent back.
+ * <p>
+ * A request is only run while its step execution is still waiting to start and its job is still
+ * running. Requests left in the queue by a manager that timed out or died, whose job was since
+ * marked failed, are dropped, so they never race the partitions of a restarted run for the same
+ * segment.
+ * <p>
+ * A request leaves the queue when it is received, outside any transaction. If the worker dies
+ * before the step execution starts, or the handler throws first, the request is lost and its step
+ * execution stays STARTING, so only the manager's timeout fails the job.
+ */
+public class RemotePartitionWorker implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(RemotePartitionWorker.class);
+
+    private final PollableChannel requests;
+    private final StepExecutionRequestHandler requestHandler;
+    private final JobExplorer jobExplorer;
+    private final TaskExecutor taskExecutor;
+    private final int workers;
+    private final long pollMillis;
+    private final boolean enabled;
+
+    private volatile boolean running;
+    private int busy;
+    private long lastActivity;
+    private int failed;
+
+    /**
+     * @param pollMillis how long a worker waits for a request before checking whether it should stop
+     * @param enabled    whether this process works on partitions at all
+     */
+    public RemotePartitionWorker(PollableChannel requests, StepExecutionRequestHandler requestHandler,
+                                 JobExplorer jobExplorer, TaskExecutor taskExecutor, int workers, long pollMillis,
+                                 boolean enabled) {
+        this.requests = requests;
+        this.requestHandler = requestHandler;
+        this.jobExplorer = jobExplorer;
+        this.taskExecutor = taskExecutor;
+        this.workers = workers;
+        this.pollMillis = pollMillis;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return enabled;
+    }
+
+    @Override
+    public void start() {
+        synchronized (this) {
+            running = true;
+            lastActivity = System.currentTimeMillis();
+        }
+        for (int i = 0; i < workers; i++) {
+            taskExecutor.execute(this::runWorker);
+        }
+        log.info("Remote partition worker started with {} threads", workers);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void runWorker() {
+        while (running) {
+            Message<?> message;
+            try {
+                message = requests.receive(pollMillis);
+            } catch (RuntimeException e) {
+                if (!running) {
+                    // The data source closes along with the context that stopped us
+                    break;
+                }
+                // The queue lives in the batch database, which may be briefly unreachable
+                log.warn("Cannot poll partition requests", e);
+                pause();
+                continue;
+            }
+            if (message == null) {
+                continue;
+            }
+            synchronized (this) {
+                busy++;
+            }
+            boolean succeeded = false;
+            try {
+                succeeded = handle((StepExecutionRequest) message.getPayload());
+            } catch (RuntimeException e) {
+                log.error("Partition request {} failed", message.getPayload(), e);
+            } finally {
+                synchronized (this) {
+                    busy--;
+                    if (!succeeded) {
+                        failed++;
+                    }
+                    lastActivity = System.currentTimeMillis();
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /** Returns whether the request was skipped or its partition completed. */
+    private boolean handle(StepExecutionRequest request) {
+        StepExecution pending = jobExplorer.getStepExecution(request.getJobExecutionId(), request.getStepExecutionId());
+        if (pending != null && pending.getStatus() != BatchStatus.STARTING) {
+            log.info("Skipping partition {}: already {}", pending.getStepName(), pending.getStatus());
+            return true;
+        }
+        if (pending != null && !pending.getJobExecution().isRunning()) {
+            log.info("Skipping partition {}: job execution {} {}", pending.getStepName(),
+                    pending.getJobExecutionId(), pending.getJobExecution().getStatus());
+            return true;
+        }
+        StepExecution result = requestHandler.handle(request);
+        log.info("Partition {} {} ({} rows)", result.getStepName(), result.getStatus(), result.getWriteCount());
+        return result.getStatus() == BatchStatus.COMPLETED;
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(pollMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    /**
+     * Blocks until no partition has been running for {@code idleMillis}, or until the
+     * worker is stopped; with {@code idleMillis <= 0} only stopping ends the wait. Returns whether
+     * every partition run so far completed.
+     */
+    public synchronized boolean awaitIdle(long idleMillis) throws InterruptedException {
+        while (running) {
+            long idleFor = System.currentTimeMillis() - lastActivity;
+            if (idleMillis > 0 && busy == 0 && idleFor >= idleMillis) {
+                break;
+            }
+            wait(idleMillis > 0 && busy == 0 ? idleMillis - idleFor : pollMillis);
+        }
+        return failed == 0;
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.dataexport.partition;
+
+/**
+ * What a process does with {@code app.partitioning.mode=remote}, set through
+ * {@code app.partitioning.remote.role}.
+ */
+public enum RemoteRole {
+
+    /** Runs the job and sends its partitions to the queue. */
+    MANAGER,
+
+    /** Runs partitions taken from the queue until it is stopped or stays idle. */
+    WORKER,
+
+    /** Runs the job and works on its partitions in the same process. */
+    BOTH
+}
@@ -0,0 +1,14 @@
+package com.example.dataexport.partition;
+
+/**
+ * Carries partition requests from the manager to the workers, set through
+ * {@code app.partitioning.remote.transport}.
+ */
+public enum RemoteTransport {
+
+    /** A message queue table in the batch database, shared by every process using that database. */
+    JDBC,
+
+    /** An in-memory queue, for a manager that is its own worker. */
+    IN_PROCESS
+}
@@ -0,0 +1,120 @@
+package com.example.dataexport.partition;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionException;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.partition.StepExecutionSplitter;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.partition.support.SimpleStepExecutionSplitter;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Splits the partitioned step like {@link SimpleStepExecutionSplitter} on a first run, but on a
+ * restart takes the partitions from the earlier executions of the job instance instead of asking
+ * the partitioner again.
+ * <p>
+ * Every partition step that ran before, including those split off by work stealing that the
+ * partitioner knows nothing about, is considered under its latest execution: completed ones are
+ * skipped, and the others run again with their saved execution context, so they keep their
+ * (possibly narrowed) id range and resume from their last checkpoint. A split whose victim
+ * recorded it but which has no execution, because the run died in between, is created from that
+ * record. The partitioner is not consulted, so sampled histograms or changed data cannot move the
+ * boundaries on a restart.
+ */
+public class RestartableStepExecutionSplitter implements StepExecutionSplitter {
+
+    private static final Logger log = LoggerFactory.getLogger(RestartableStepExecutionSplitter.class);
+
+    /** Separates the step name from the partition name, as in {@link SimpleStepExecutionSplitter}. */
+    private static final String STEP_NAME_SEPARATOR = ":";
+
+    private final JobRepository jobRepository;
+    private final JobExplorer jobExplorer;
+    private final String stepName;
+    private final SimpleStepExecutionSplitter firstRunSplitter;
+
+    public RestartableStepExecutionSplitter(JobRepository jobRepository, JobExplorer jobExplorer, String stepName,
+                                            Partitioner partitioner) {
+        this.jobRepository = jobRepository;
+        this.jobExplorer = jobExplorer;
+        this.stepName = stepName;
+        this.firstRunSplitter = new SimpleStepExecutionSplitter(jobRepository, false, stepName, partitioner);
+    }
+
+    @Override
+    public String getStepName() {
+        return stepName;
+    }
+
+    @Override
+    public Set<StepExecution> split(StepExecution stepExecution, int gridSize) throws JobExecutionException {
+        JobExecution jobExecution = stepExecution.getJobExecution();
+        Map<String, StepExecution> previous = latestPartitionExecutions(jobExecution);
+        if (previous.isEmpty()) {
+            return firstRunSplitter.split(stepExecution, gridSize);
+        }
+
+        Set<StepExecution> partitions = new HashSet<>();
+        int completed = 0;
+        for (StepExecution last : previous.values()) {
+            if (last.getStatus() == BatchStatus.COMPLETED) {
+                completed++;
+                continue;
+            }
+            StepExecution partition = jobExecution.createStepExecution(last.getStepName());
+            partition.setExecutionContext(new ExecutionContext(last.getExecutionContext()));
+            partitions.add(partition);
+        }
+        for (StepExecution last : previous.values()) {
+            for (Map.Entry<String, Object> entry : last.getExecutionContext().entrySet()) {
+                String key = entry.getKey();
+                if (!key.startsWith(WorkStealingPartitionHandler.SPLIT_KEY_PREFIX)) {
+                    continue;
+                }
+                String splitName = key.substring(WorkStealingPartitionHandler.SPLIT_KEY_PREFIX.length());
+                if (previous.containsKey(splitName)) {
+                    continue;
+                }
+                String[] bounds = ((String) entry.getValue()).split(",");
+                StepExecution partition = jobExecution.createStepExecution(splitName);
+                partition.getExecutionContext().putInt("minValue", Integer.parseInt(bounds[0]));
+                partition.getExecutionContext().putInt("maxValue", Integer.parseInt(bounds[1]));
+                partitions.add(partition);
+            }
+        }
+        jobRepository.addAll(partitions);
+        log.info("Restart: skipping {} completed partitions, resuming {}", completed, partitions.size());
+        return partitions;
+    }
+
+    /** The latest execution of every partition step in earlier executions of the job instance. */
+    private Map<String, StepExecution> latestPartitionExecutions(JobExecution current) {
+        String prefix = stepName + STEP_NAME_SEPARATOR;
+        Map<String, StepExecution> latest = new HashMap<>();
+        for (JobExecution execution : jobExplorer.getJobExecutions(current.getJobInstance())) {
+            if (execution.getId().equals(current.getId())) {
+                continue;
+            }
+            for (StepExecution step : execution.getStepExecutions()) {
+                if (!step.getStepName().startsWith(prefix)) {
+                    continue;
+                }
+                StepExecution known = latest.get(step.getStepName());
+                if (known == null || step.getId() > known.getId()) {
+                    latest.put(step.getStepName(), step);
+                }
+            }
+        }
+        return latest;
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.dataexport.partition;
+
+import com.example.dataexport.reader.ResumableUserDataReader;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.partition.support.AbstractPartitionHandler;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.task.TaskExecutor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs many small partitions on a fixed number of workers that pull work from a shared queue.
+ * <p>
+ * The partitioner over-decomposes the key space ({@code gridSize} is several partitions per
+ * worker), and partitions are queued largest first so the long ones start early. When the queue
+ * runs dry, an idle worker steals the upper half of the unclaimed ids of the running partition
+ * with the most work left and runs it as a new partition step, so one slow range no longer
+ * holds up the whole job.
+ * <p>
+ * A split is persisted before it runs: the victim's narrowed upper bound, together with a record
+ * of the split under {@link #SPLIT_KEY_PREFIX}, is saved to the victim's execution context first,
+ * and only then is the split's step execution added. Both happen under the victim's
+ * {@link PartitionRange} lock, so its reader cannot claim ids while the bound is being saved. A
+ * crash between the two leaves the record, from which {@link RestartableStepExecutionSplitter}
+ * recreates the split; ids are never covered twice or lost on a restart.
+ */
+public class WorkStealingPartitionHandler extends AbstractPartitionHandler {
+
+    /**
+     * Prefix of the victim's execution context keys recording its splits: the key ends in the
+     * split's step name and the value is {@code "min,max"}.
+     */
+    public static final String SPLIT_KEY_PREFIX = "split.";
+
+    private static final long STEAL_RETRY_MILLIS = 200;
+
+    private final Step step;
+    private final TaskExecutor taskExecutor;
+    private final JobRepository jobRepository;
+    private final PartitionRangeRegistry rangeRegistry;
+    private final int workers;
+    private final int minSplitSize;
+
+    private final Deque<StepExecution> queue = new ArrayDeque<>();
+    private final Map<String, StepExecution> executionsByName = new HashMap<>();
+    private final Map<String, PartitionRange> running = new LinkedHashMap<>();
+    private final Set<StepExecution> executed = ConcurrentHashMap.newKeySet();
+    private int splitCount;
+
+    /**
+     * @param minSplitSize smallest id range width worth handing to another worker
+     */
+    public WorkStealingPartitionHandler(Step step, TaskExecutor taskExecutor, JobRepository jobRepository,
+                                        PartitionRangeRegistry rangeRegistry, int workers, int minSplitSize) {
+        this.step = step;
+        this.taskExecutor = taskExecutor;
+        this.jobRepository = jobRepository;
+        this.rangeRegistry = rangeRegistry;
+        this.workers = workers;
+        this.minSplitSize = minSplitSize;
+    }
+
+    @Override
+    protected Set<StepExecution> doHandle(StepExecution masterStepExecution,
+                                          Set<StepExecution> partitionStepExecutions) throws Exception {
+        List<StepExecution> ordered = new ArrayList<>(partitionStepExecutions);
+        ordered.sort(Comparator.comparingLong(WorkStealingPartitionHandler::estimatedWork).reversed());
+
+        synchronized (this) {
+            queue.clear();
+            executionsByName.clear();
+            running.clear();
+            executed.clear();
+            splitCount = 0;
+            for (StepExecution partition : ordered) {
+                rangeRegistry.register(partition.getStepName(), initialRange(partition));
+                executionsByName.put(partition.getStepName(), partition);
+                queue.add(partition);
+            }
+        }
+
+        List<FutureTask<Void>> tasks = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            FutureTask<Void> task = new FutureTask<>(() -> {
+                runWorker(masterStepExecution);
+                return null;
+            });
+            tasks.add(task);
+            taskExecutor.execute(task);
+        }
+        for (FutureTask<Void> task : tasks) {
+            task.get();
+        }
+        return executed;
+    }
+
+    private void runWorker(StepExecution masterStepExecution) throws Exception {
+        StepExecution partition;
+        while ((partition = nextPartition(masterStepExecution)) != null) {
+            PartitionRange range = rangeRegistry.get(partition.getStepName());
+            try {
+                step.execute(partition);
+            } finally {
+                range.finish();
+                synchronized (this) {
+                    running.remove(partition.getStepName());
+                    notifyAll();
+                }
+                rangeRegistry.remove(partition.getStepName());
+                executed.add(partition);
+            }
+        }
+    }
+
+    /**
+     * Takes the next queued partition or, if the queue is empty, splits the running partition
+     * with the widest unclaimed range. While other partitions are still running but none can be
+     * split yet, the worker waits and retries. Returns {@code null} when there is nothing left to do.
+     */
+    private synchronized StepExecution nextPartition(StepExecution masterStepExecution) throws InterruptedException {
+        while (true) {
+            if (masterStepExecution.isTerminateOnly() || masterStepExecution.getStatus() == BatchStatus.STOPPING) {
+                return null;
+            }
+            StepExecution next = queue.poll();
+            if (next == null) {
+                next = stealFromLargestRunning(masterStepExecution);
+            }
+            if (next != null) {
+                running.put(next.getStepName(), rangeRegistry.get(next.getStepName()));
+                return next;
+            }
+            if (running.isEmpty()) {
+                return null;
+            }
+            wait(STEAL_RETRY_MILLIS);
+        }
+    }
+
+    private StepExecution stealFromLargestRunning(StepExecution masterStepExecution) {
+        PartitionRange victim = null;
+        for (PartitionRange range : running.values()) {
+            if (victim == null || range.remaining() > victim.remaining()) {
+                victim = range;
+            }
+        }
+        if (victim == null) {
+            return null;
+        }
+        StepExecution victimExecution = executionsByName.get(victim.getName());
+        StepExecution split;
+        int[] bounds;
+        synchronized (victim) {
+            bounds = victim.split(minSplitSize);
+            if (bounds == null) {
+                return null;
+            }
+            // Unique within the job instance, so a restart never confuses splits of different runs
+            String stepName = victim.getName() + "-s" + masterStepExecution.getJobExecutionId() + "." + (++splitCount);
+            ExecutionContext victimContext = victimExecution.getExecutionContext();
+            victimContext.putInt("maxValue", bounds[0] - 1);
+            victimContext.putString(SPLIT_KEY_PREFIX + stepName, bounds[0] + "," + bounds[1]);
+            jobRepository.updateExecutionContext(victimExecution);
+
+            split = masterStepExecution.getJobExecution().createStepExecution(stepName);
+            split.getExecutionContext().putInt("minValue", bounds[0]);
+            split.getExecutionContext().putInt("maxValue", bounds[1]);
+            jobRepository.add(split);
+        }
+        String stepName = split.getStepName();
+        executionsByName.put(stepName, split);
+
+        rangeRegistry.register(stepName, new PartitionRange(stepName, bounds[0], bounds[1]));
+        return split;
+    }
+
+    /**
+     * The range of a partition about to run. A restarted reader resumes at its checkpoint, reading
+     * that user again, so the ids below it count as claimed: they are already in the partition's
+     * output and must not be split off to another worker.
+     */
+    private static PartitionRange initialRange(StepExecution partition) {
+        ExecutionContext context = partition.getExecutionContext();
+        int minValue = context.getInt("minValue");
+        long lastClaimed = context.containsKey(ResumableUserDataReader.RESUME_ID_KEY)
+                ? context.getInt(ResumableUserDataReader.RESUME_ID_KEY) - 1L
+                : minValue - 1L;
+        return new PartitionRange(partition.getStepName(), minValue, context.getInt("maxValue"),
+                Math.max(lastClaimed, minValue - 1L));
+    }
+
+    /** Row weight recorded by the partitioner, falling back to the width of the id range. */
+    private static long estimatedWork(StepExecution partition) {
+        ExecutionContext context = partition.getExecutionContext();
+        if (context.containsKey("weight")) {
+            return context.getLong("weight");
+        }
+        return (long) context.getInt("maxValue") - context.getInt("minValue");
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.dataexport.reader;
+
+import com.example.dataexport.model.User;
+import com.example.dataexport.model.UserData;
+import com.example.dataexport.partition.PartitionRange;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Base class for readers that pull a partition's users in bounded windows and merge each
+ * window with its orders and addresses before moving on, so only one window is ever held in
+ * memory. Subclasses decide how the next window of users is fetched.
+ */
+public abstract class AbstractWindowedUserDataReader implements ItemStreamReader<UserData> {
+
+    protected final DataSource dataSource;
+    protected final int minValue;
+    protected final int maxValue;
+    private final UserDataMerger merger;
+
+    private PartitionRange partitionRange;
+    private Iterator<UserData> window = Collections.emptyIterator();
+    private boolean reachedUpperBound;
+
+    protected AbstractWindowedUserDataReader(DataSource dataSource, UserDataMerger merger, int minValue, int maxValue) {
+        this.dataSource = dataSource;
+        this.merger = merger;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+    }
+
+    /**
+     * Returns the next users of the partition in {@code ret_unique_id} order, or an empty list
+     * once the partition is exhausted.
+     */
+    protected abstract List<User> nextWindow() throws Exception;
+
+    /**
+     * Lets a work-stealing partition handler split off the unread tail of this partition while it
+     * runs; every window is claimed against the live range before it is merged.
+     */
+    public void setPartitionRange(PartitionRange partitionRange) {
+        this.partitionRange = partitionRange;
+    }
+
+    /** Current upper bound of the partition, which may shrink while a work-stealing range is split. */
+    protected int upperBound() {
+        return partitionRange != null ? partitionRange.getMaxValue() : maxValue;
+    }
+
+    protected void doOpen(ExecutionContext executionContext) {
+    }
+
+    protected void doClose() {
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        reachedUpperBound = false;
+        doOpen(executionContext);
+        if (partitionRange != null) {
+            partitionRange.enableSplitting();
+        }
+    }
+
+    @Override
+    public UserData read() throws Exception {
+        while (!window.hasNext()) {
+            if (reachedUpperBound) {
+                return null;
+            }
+            List<User> users = nextWindow();
+            if (partitionRange != null && !partitionRange.claim(users)) {
+                reachedUpperBound = true;
+            }
+            if (users.isEmpty()) {
+                return null;
+            }
+            window = merger.merge(users);
+        }
+        return window.next();
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        window = Collections.emptyIterator();
+        doClose();
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.dataexport.reader;
+
+import com.example.dataexport.metrics.ExportMetrics;
+import com.example.dataexport.util.ConcurrencyGovernor;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.RowMapperResultSetExtractor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Looks up the rows of a child table for a set of {@code ret_unique_id}s using bound parameters.
+ * <p>
+ * Ids are split into batches whose placeholder counts come from a small fixed set of statement
+ * shapes ({@link #SHAPES}); a partially filled batch is padded by repeating its last id, which the
+ * {@code IN} predicate ignores. Only a handful of distinct SQL texts are ever issued, so they are
+ * parsed once and then served from the driver's prepared statement cache
+ * ({@code cachePrepStmts=true&useServerPrepStmts=true} on MySQL), and no statement can outgrow
+ * {@code max_allowed_packet}. Batches run in parallel on the supplied executor.
+ * <p>
+ * Only the listed columns are selected, and every query maps its rows with a fresh mapper from
+ * {@code rowMapperFactory}, since the mappers cache column ordinals per result set. With an
+ * {@code orderBy} clause each query returns its rows in that order; as all rows of one id come
+ * from the same query, a user's children are then in a fixed order however the ids are batched.
+ * <p>
+ * Id sets of at least {@code tempTableThreshold} ids are instead bulk inserted into a session
+ * temporary table on a single connection and joined against the child table in one query.
+ * <p>
+ * With a {@link ConcurrencyGovernor} set, every query first waits for a permit, so the number of
+ * lookups hitting the database follows the governor's adaptive limit rather than the pool size.
+ * <p>
+ * Every query is timed as {@link ExportMetrics#QUERY} tagged with the table, excluding the wait
+ * for a permit or an executor thread.
+ */
+public class BatchedIdLookup<T> {
+
+    /** Placeholder counts of the cached statement shapes, largest first. */
+    static final int[] SHAPES = {1024, 256, 16, 1};
+
+    private static final String TEMP_TABLE_PREFIX = "tmp_export_ids_";
+    private static final AtomicLong TEMP_TABLE_SEQUENCE = new AtomicLong();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String table;
+    private final String selectList;
+    private final String orderBy;
+    private final Supplier<? extends RowMapper<T>> rowMapperFactory;
+    private final int tempTableThreshold;
+    private final String[] sqlByShape = new String[SHAPES.length];
+    private final Timer queryTimer;
+    private ConcurrencyGovernor governor;
+
+    /**
+     * @param orderBy            columns to order each query's rows by, or {@code null} for any order
+     * @param tempTableThreshold id count from which the temp-table join is used; {@code 0} disables it
+     */
+    public BatchedIdLookup(JdbcTemplate jdbcTemplate, String table, String selectList, String orderBy,
+                           Supplier<? extends RowMapper<T>> rowMapperFactory, int tempTableThreshold) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.table = table;
+        this.selectList = selectList;
+        this.orderBy = orderBy == null ? "" : " ORDER BY " + orderBy;
+        this.rowMapperFactory = rowMapperFactory;
+        this.tempTableThreshold = tempTableThreshold;
+        this.queryTimer = ExportMetrics.queryTimer(table);
+        for (int i = 0; i < SHAPES.length; i++) {
+            sqlByShape[i] = "SELECT " + selectList + " FROM " + table + " WHERE ret_unique_id IN (" + placeholders(SHAPES[i]) + ")"
+                    + this.orderBy;
+        }
+    }
+
+    public void setGovernor(ConcurrencyGovernor governor) {
+        this.governor = governor;
+    }
+
+    /**
+     * Starts the lookup of all rows whose {@code ret_unique_id} is in {@code ids}. The returned
+     * future completes once every batch has been read; callers should not block on it from a
+     * thread of {@code executor}.
+     */
+    public CompletableFuture<List<T>> findByIds(int[] ids, Executor executor) {
+        if (ids.length == 0) {
+            return CompletableFuture.completedFuture(Collections.<T>emptyList());
+        }
+        if (tempTableThreshold > 0 && ids.length >= tempTableThreshold) {
+            return CompletableFuture.supplyAsync(() -> governed(() -> findByTempTableJoin(ids)), executor);
+        }
+
+        List<CompletableFuture<List<T>>> batches = new ArrayList<>();
+        int offset = 0;
+        while (offset < ids.length) {
+            int remaining = ids.length - offset;
+            int shape = shapeIndexFor(remaining);
+            int from = offset;
+            int count = Math.min(remaining, SHAPES[shape]);
+            batches.add(CompletableFuture.supplyAsync(() -> governed(() -> findBatch(ids, from, count, shape)), executor));
+            offset += count;
+        }
+
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            if (batches.size() == 1) {
+                return batches.get(0).join();
+            }
+            List<T> rows = new ArrayList<>();
+            batches.forEach(batch -> rows.addAll(batch.join()));
+            return rows;
+        });
+    }
+
+    /**
+     * Picks the largest shape that the remaining ids fill completely; a tail shorter than the
+     * smallest multi-id shape is padded into it rather than sent as many single-id statements.
+     */
+    private static int shapeIndexFor(int remaining) {
+        for (int i = 0; i < SHAPES.length - 1; i++) {
+            if (remaining >= SHAPES[i]) {
+                return i;
+            }
+        }
+        return remaining == 1 ? SHAPES.length - 1 : SHAPES.length - 2;
+    }
+
+    private List<T> governed(Supplier<List<T>> query) {
+        Supplier<List<T>> timedQuery = () -> queryTimer.record(query);
+        if (governor == null) {
+            return timedQuery.get();
+        }
+        try {
+            return governor.call(timedQuery);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CompletionException(e);
+        }
+    }
+
+    private List<T> findBatch(int[] ids, int from, int count, int shape) {
+        int size = SHAPES[shape];
+        return jdbcTemplate.query(sqlByShape[shape], ps -> {
+            for (int i = 0; i < size; i++) {
+                // Pad the unused placeholders with the batch's last id
+                ps.setInt(i + 1, ids[from + Math.min(i, count - 1)]);
+            }
+        }, rowMapperFactory.get());
+    }
+
+    private List<T> findByTempTableJoin(int[] ids) {
+        // Unique per lookup so concurrent lookups never collide, even where temp tables are not session-scoped
+        String tempTable = TEMP_TABLE_PREFIX + TEMP_TABLE_SEQUENCE.incrementAndGet();
+        return jdbcTemplate.execute((ConnectionCallback<List<T>>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TEMPORARY TABLE " + tempTable + " (ret_unique_id INT PRIMARY KEY)");
+            }
+            try {
+                insertIds(connection, tempTable, ids);
+                // A semi-join leaves the unqualified select list unambiguous on every database
+                String sql = "SELECT " + selectList + " FROM " + table
+                        + " WHERE ret_unique_id IN (SELECT ret_unique_id FROM " + tempTable + ")" + orderBy;
+                try (Statement statement = connection.createStatement();
+                     ResultSet rs = statement.executeQuery(sql)) {
+                    return new RowMapperResultSetExtractor<>(rowMapperFactory.get()).extractData(rs);
+                }
+            } finally {
+                // Temporary tables live as long as the session, and pooled sessions live long
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("DROP TABLE " + tempTable);
+                }
+            }
+        });
+    }
+
+    private static void insertIds(Connection connection, String tempTable, int[] ids) throws SQLException {
+        // Sent as multi-row inserts when the URL has rewriteBatchedStatements=true
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO " + tempTable + " (ret_unique_id) VALUES (?)")) {
+            int pending = 0;
+            for (int id : ids) {
+                ps.setInt(1, id);
+                ps.addBatch();
+                if (++pending == SHAPES[0]) {
+                    ps.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                ps.executeBatch();
+            }
+        }
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sb = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('?');
+        }
+        return sb.toString();
+    }
+}
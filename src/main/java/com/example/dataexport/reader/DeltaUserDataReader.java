@@ -0,0 +1,80 @@
+package com.example.dataexport.reader;
+
+import com.example.dataexport.delta.ChangedUserIds;
+import com.example.dataexport.mapper.UserRowMapper;
+import com.example.dataexport.model.User;
+import com.example.dataexport.util.ConcurrencyGovernor;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Reads only the users picked by the delta scan within the partition's range, in pages of
+ * {@code pageSize} ids looked up by primary key, so a delta run touches the changed users and
+ * their children and nothing else. Ids whose user has since been deleted are skipped.
+ */
+public class DeltaUserDataReader extends AbstractWindowedUserDataReader {
+
+    private final ChangedUserIds changedUserIds;
+    private final Executor executor;
+    private final int pageSize;
+    private final BatchedIdLookup<User> userLookup;
+
+    private int[] ids;
+    private int position;
+
+    public DeltaUserDataReader(DataSource dataSource, UserDataMerger merger, ChangedUserIds changedUserIds,
+                               Executor executor, int minValue, int maxValue, int pageSize) {
+        super(dataSource, merger, minValue, maxValue);
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+        }
+        this.changedUserIds = changedUserIds;
+        this.executor = executor;
+        this.pageSize = pageSize;
+        this.userLookup = new BatchedIdLookup<>(new JdbcTemplate(dataSource), "users", UserRowMapper.SELECT_LIST,
+                null, UserRowMapper::new, 0);
+    }
+
+    public void setGovernor(ConcurrencyGovernor governor) {
+        userLookup.setGovernor(governor);
+    }
+
+    @Override
+    protected void doOpen(ExecutionContext executionContext) {
+        ids = changedUserIds.between(minValue, maxValue);
+        position = 0;
+    }
+
+    @Override
+    protected List<User> nextWindow() {
+        int upperBound = upperBound();
+        while (position < ids.length && ids[position] <= upperBound) {
+            int end = position;
+            while (end < ids.length && end - position < pageSize && ids[end] <= upperBound) {
+                end++;
+            }
+            int[] page = Arrays.copyOfRange(ids, position, end);
+            position = end;
+
+            List<User> users = userLookup.findByIds(page, executor).join();
+            if (!users.isEmpty()) {
+                // Batches complete in any order
+                users.sort(Comparator.comparingInt(User::getRetUniqueId));
+                return users;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    @Override
+    protected void doClose() {
+        ids = null;
+    }
+}
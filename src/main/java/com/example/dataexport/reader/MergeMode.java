@@ -0,0 +1,17 @@
+package com.example.dataexport.reader;
+
+/**
+ * How a user's orders and addresses are turned into output rows.
+ */
+public enum MergeMode {
+    /** One row per user with a single order and address; extra children are dropped. */
+    LAST,
+    /**
+     * One row per (user, order) with blank address columns, then one row per (user, address)
+     * with blank order columns, so a user yields {@code orders + addresses} rows (at least one)
+     * and no child is lost, repeated or paired with a child it is unrelated to.
+     */
+    FAN_OUT,
+    /** One row per user with order count, latest order date, order total and address count. */
+    AGGREGATE
+}
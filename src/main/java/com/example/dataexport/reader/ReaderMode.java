@@ -0,0 +1,19 @@
+package com.example.dataexport.reader;
+
+/**
+ * Selects how a partition's rows are read and merged, set through {@code app.reader.mode}.
+ */
+public enum ReaderMode {
+
+    /** Loads and merges the whole partition before the first item is returned ({@link UserDataReader}). */
+    IN_MEMORY,
+
+    /** Streams users through a cursor and merges one bounded window at a time ({@link StreamingUserDataReader}). */
+    STREAMING,
+
+    /** Walks the partition in keyset pages with per-page child fetches ({@link KeysetUserDataReader}). */
+    KEYSET,
+
+    /** Zips ordered cursors on all three tables in one pass, without lookup tables ({@link SortMergeUserDataReader}). */
+    SORT_MERGE
+}
@@ -0,0 +1,60 @@
+package com.example.dataexport.reader;
+
+import com.example.dataexport.model.UserData;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+
+/**
+ * Checkpoints the {@code ret_unique_id} of the last user read, so an interrupted partition can
+ * restart at that user instead of at the start of its range.
+ * <p>
+ * The checkpoint is the last user rather than the one after it because, in
+ * {@link MergeMode#FAN_OUT} mode, a chunk may end in the middle of a user's rows. On restart the
+ * delegate is opened at the checkpointed id, so that user is read again in full; the writer
+ * truncates its output to where the user's rows began, so nothing is lost or written twice.
+ */
+public class ResumableUserDataReader implements ItemStreamReader<UserData> {
+
+    /** Step execution context key of the checkpoint. */
+    public static final String RESUME_ID_KEY = "reader.resumeId";
+
+    private final ItemStreamReader<UserData> delegate;
+    private Integer resumeId;
+
+    /**
+     * @param delegate reader of the partition's range, starting at the checkpoint on a restart
+     */
+    public ResumableUserDataReader(ItemStreamReader<UserData> delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        // Kept until a new user is read, so a restart that fails again resumes at the same place
+        resumeId = executionContext.containsKey(RESUME_ID_KEY) ? executionContext.getInt(RESUME_ID_KEY) : null;
+        delegate.open(executionContext);
+    }
+
+    @Override
+    public UserData read() throws Exception {
+        UserData item = delegate.read();
+        if (item != null) {
+            resumeId = item.getRetUniqueId();
+        }
+        return item;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        delegate.update(executionContext);
+        if (resumeId != null) {
+            executionContext.putInt(RESUME_ID_KEY, resumeId);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        delegate.close();
+    }
+}
@@ -0,0 +1,216 @@
+package com.example.dataexport.reader;
+
+import com.example.dataexport.mapper.AddressRowMapper;
+import com.example.dataexport.mapper.OrderRowMapper;
+import com.example.dataexport.mapper.UserRowMapper;
+import com.example.dataexport.metrics.ExportMetrics;
+import com.example.dataexport.model.Address;
+import com.example.dataexport.model.Order;
+import com.example.dataexport.model.User;
+import com.example.dataexport.model.UserData;
+import com.example.dataexport.partition.PartitionRange;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.database.JdbcCursorItemReader;
+import org.springframework.batch.item.database.builder.JdbcCursorItemReaderBuilder;
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+
+/**
+ * Merges a partition in a single pass over three forward-only cursors on {@code users},
+ * {@code orders} and {@code addresses}, each ordered by {@code ret_unique_id} over the same range.
+ * No lookup tables are built, so memory use is constant per partition, but each partition holds
+ * three connections open for its whole duration.
+ * <p>
+ * Like the hash merge, a user with several orders or addresses is emitted with the last one
+ * seen in {@link MergeMode#LAST} mode; the secondary sort on the child key makes that choice
+ * deterministic. In {@link MergeMode#FAN_OUT} and {@link MergeMode#AGGREGATE} modes the child
+ * cursors are advanced row by row while the current user's rows are emitted or folded, so even a
+ * user with thousands of children is never buffered. Children whose user is missing from the
+ * range are skipped.
+ * <p>
+ * Rows are streamed as they are merged, so only the opening of each cursor, which executes its
+ * query, is timed as a query on its table.
+ */
+public class SortMergeUserDataReader implements ItemStreamReader<UserData> {
+
+    private final DataSource dataSource;
+    private final int minValue;
+    private final int maxValue;
+    private final int fetchSize;
+    private final MergeMode mergeMode;
+
+    private PartitionRange partitionRange;
+    private JdbcCursorItemReader<User> userCursor;
+    private JdbcCursorItemReader<Order> orderCursor;
+    private JdbcCursorItemReader<Address> addressCursor;
+
+    // Head of each child cursor: the next row not yet consumed
+    private Order nextOrder;
+    private Address nextAddress;
+
+    // User whose fan-out rows are being emitted
+    private User currentUser;
+
+    public SortMergeUserDataReader(DataSource dataSource, int minValue, int maxValue, int fetchSize,
+                                   MergeMode mergeMode) {
+        this.dataSource = dataSource;
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+        this.fetchSize = fetchSize;
+        this.mergeMode = mergeMode;
+    }
+
+    /**
+     * Lets a work-stealing partition handler split off the unread tail of this partition while it
+     * runs; every user is claimed against the live range before it is emitted.
+     */
+    public void setPartitionRange(PartitionRange partitionRange) {
+        this.partitionRange = partitionRange;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        userCursor = openCursor("users",
+                "SELECT " + UserRowMapper.SELECT_LIST + " FROM users WHERE ret_unique_id BETWEEN ? AND ? ORDER BY ret_unique_id",
+                new UserRowMapper());
+        orderCursor = openCursor("orders",
+                "SELECT " + OrderRowMapper.SELECT_LIST + " FROM orders WHERE ret_unique_id BETWEEN ? AND ? ORDER BY ret_unique_id, order_id",
+                new OrderRowMapper());
+        addressCursor = openCursor("addresses",
+                "SELECT " + AddressRowMapper.SELECT_LIST + " FROM addresses WHERE ret_unique_id BETWEEN ? AND ? ORDER BY ret_unique_id, address_id",
+                new AddressRowMapper());
+        try {
+            nextOrder = orderCursor.read();
+            nextAddress = addressCursor.read();
+        } catch (Exception e) {
+            throw new ItemStreamException("Failed to position child cursors", e);
+        }
+        if (partitionRange != null) {
+            partitionRange.enableSplitting();
+        }
+    }
+
+    private <T> JdbcCursorItemReader<T> openCursor(String table, String sql, RowMapper<T> rowMapper) {
+        JdbcCursorItemReader<T> cursor = new JdbcCursorItemReaderBuilder<T>()
+                .name(table + "Cursor")
+                .dataSource(dataSource)
+                .sql(sql)
+                .queryArguments(minValue, maxValue)
+                .rowMapper(rowMapper)
+                .fetchSize(fetchSize)
+                .verifyCursorPosition(false)
+                .saveState(false)
+                .build();
+        ExportMetrics.queryTimer(table).record(() -> cursor.open(new ExecutionContext()));
+        return cursor;
+    }
+
+    @Override
+    public UserData read() throws Exception {
+        if (mergeMode == MergeMode.FAN_OUT && currentUser != null) {
+            // The current user's remaining orders, then its addresses
+            UserData row = nextChildRow(currentUser);
+            if (row != null) {
+                return row;
+            }
+        }
+
+        User user = userCursor.read();
+        if (user == null || (partitionRange != null && !partitionRange.claim(user.getRetUniqueId()))) {
+            currentUser = null;
+            return null;
+        }
+        int retUniqueId = user.getRetUniqueId();
+
+        switch (mergeMode) {
+            case FAN_OUT:
+                // First row of the user, emitted even when it has no children
+                currentUser = user;
+                UserData first = nextChildRow(user);
+                return first != null ? first : UserData.from(user, null, null);
+            case AGGREGATE:
+                UserData row = UserData.aggregateOf(user);
+                for (Order order; (order = takeOrder(retUniqueId)) != null; ) {
+                    row.addOrder(order);
+                }
+                for (Address address; (address = takeAddress(retUniqueId)) != null; ) {
+                    row.addAddress(address);
+                }
+                return row;
+            default:
+                Order order = null;
+                for (Order next; (next = takeOrder(retUniqueId)) != null; ) {
+                    order = next;
+                }
+                Address address = null;
+                for (Address next; (next = takeAddress(retUniqueId)) != null; ) {
+                    address = next;
+                }
+                return UserData.from(user, order, address);
+        }
+    }
+
+    /** The fan-out row of the user's next order or, once those are done, next address; {@code null} after both. */
+    private UserData nextChildRow(User user) throws Exception {
+        Order order = takeOrder(user.getRetUniqueId());
+        if (order != null) {
+            return UserData.from(user, order, null);
+        }
+        Address address = takeAddress(user.getRetUniqueId());
+        return address != null ? UserData.from(user, null, address) : null;
+    }
+
+    /**
+     * Consumes and returns the next order of {@code retUniqueId}, or returns {@code null} once it
+     * has none left; orders of lower ids (users outside the range) are skipped on the way.
+     */
+    private Order takeOrder(int retUniqueId) throws Exception {
+        while (nextOrder != null && nextOrder.getRetUniqueId() < retUniqueId) {
+            nextOrder = orderCursor.read();
+        }
+        if (nextOrder == null || nextOrder.getRetUniqueId() != retUniqueId) {
+            return null;
+        }
+        Order order = nextOrder;
+        nextOrder = orderCursor.read();
+        return order;
+    }
+
+    private Address takeAddress(int retUniqueId) throws Exception {
+        while (nextAddress != null && nextAddress.getRetUniqueId() < retUniqueId) {
+            nextAddress = addressCursor.read();
+        }
+        if (nextAddress == null || nextAddress.getRetUniqueId() != retUniqueId) {
+            return null;
+        }
+        Address address = nextAddress;
+        nextAddress = addressCursor.read();
+        return address;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        currentUser = null;
+        nextOrder = null;
+        nextAddress = null;
+        if (userCursor != null) {
+            userCursor.close();
+            userCursor = null;
+        }
+        if (orderCursor != null) {
+            orderCursor.close();
+            orderCursor = null;
+        }
+        if (addressCursor != null) {
+            addressCursor.close();
+            addressCursor = null;
+        }
+    }
+}
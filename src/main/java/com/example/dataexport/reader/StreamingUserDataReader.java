@@ -0,0 +1,78 @@
+package com.example.dataexport.reader;
+
+import com.example.dataexport.mapper.UserRowMapper;
+import com.example.dataexport.metrics.ExportMetrics;
+import com.example.dataexport.model.User;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.database.JdbcCursorItemReader;
+import org.springframework.batch.item.database.builder.JdbcCursorItemReaderBuilder;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the users of a partition through a forward-only cursor and merges them with their
+ * orders and addresses one window at a time, so at most {@code windowSize} users (and their
+ * child rows) are held in memory regardless of how wide the partition is.
+ * <p>
+ * With MySQL the cursor only streams when the connection URL contains
+ * {@code useCursorFetch=true}; otherwise Connector/J buffers the whole result set client side.
+ * <p>
+ * Opening the cursor and fetching each window are timed as separate {@code users} queries.
+ */
+public class StreamingUserDataReader extends AbstractWindowedUserDataReader {
+
+    private final int windowSize;
+    private final int fetchSize;
+    private final Timer queryTimer = ExportMetrics.queryTimer("users");
+
+    private JdbcCursorItemReader<User> userCursor;
+
+    public StreamingUserDataReader(DataSource dataSource, UserDataMerger merger, int minValue, int maxValue,
+                                   int windowSize, int fetchSize) {
+        super(dataSource, merger, minValue, maxValue);
+        if (windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize must be positive: " + windowSize);
+        }
+        this.windowSize = windowSize;
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    protected void doOpen(ExecutionContext executionContext) {
+        userCursor = new JdbcCursorItemReaderBuilder<User>()
+                .name("userCursor")
+                .dataSource(dataSource)
+                .sql("SELECT " + UserRowMapper.SELECT_LIST + " FROM users WHERE ret_unique_id BETWEEN ? AND ? ORDER BY ret_unique_id")
+                .queryArguments(minValue, maxValue)
+                .rowMapper(new UserRowMapper())
+                .fetchSize(fetchSize)
+                .verifyCursorPosition(false)
+                .saveState(false)
+                .build();
+        queryTimer.record(() -> userCursor.open(new ExecutionContext()));
+    }
+
+    @Override
+    protected List<User> nextWindow() throws Exception {
+        long start = System.nanoTime();
+        List<User> users = new ArrayList<>(windowSize);
+        User user;
+        while (users.size() < windowSize && (user = userCursor.read()) != null) {
+            users.add(user);
+        }
+        queryTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return users;
+    }
+
+    @Override
+    protected void doClose() {
+        if (userCursor != null) {
+            userCursor.close();
+            userCursor = null;
+        }
+    }
+}
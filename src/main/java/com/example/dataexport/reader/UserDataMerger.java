@@ -0,0 +1,208 @@
+package com.example.dataexport.reader;
+
+import com.example.dataexport.mapper.AddressRowMapper;
+import com.example.dataexport.metrics.ExportMetrics;
+import com.example.dataexport.mapper.OrderRowMapper;
+import com.example.dataexport.model.Address;
+import com.example.dataexport.model.Order;
+import com.example.dataexport.model.User;
+import com.example.dataexport.model.UserData;
+import com.example.dataexport.util.ConcurrencyGovernor;
+import com.example.dataexport.util.IntMultiMap;
+import com.example.dataexport.util.IntObjectHashMap;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads the orders and addresses belonging to a list of users and merges them into
+ * {@link UserData} rows. Shared by all reader modes so they produce identical output: children are
+ * looked up in {@code order_id} / {@code address_id} order per user, the order the sort-merge
+ * reader's cursors return them in.
+ * <p>
+ * One instance serves every partition: lookups run on the application-wide child fetch
+ * executor, which bounds how many child-table queries hit the database at once.
+ * <p>
+ * In {@link MergeMode#FAN_OUT} mode the children are grouped per user in an {@link IntMultiMap}
+ * (flat arrays, no per-user lists) and output rows are created lazily as the returned iterator
+ * is consumed. In {@link MergeMode#AGGREGATE} mode children are folded into one row per user
+ * as they are indexed and are not retained.
+ */
+public class UserDataMerger {
+
+    private final Executor executor;
+    private final MergeMode mergeMode;
+    private final BatchedIdLookup<Order> orderLookup;
+    private final BatchedIdLookup<Address> addressLookup;
+
+    /**
+     * @param tempTableThreshold id count from which child rows are fetched through a temp-table
+     *                           join instead of bound {@code IN} batches; {@code 0} disables it
+     */
+    public UserDataMerger(DataSource dataSource, Executor executor, int tempTableThreshold, MergeMode mergeMode) {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        this.executor = executor;
+        this.mergeMode = mergeMode;
+        this.orderLookup = new BatchedIdLookup<>(jdbcTemplate, "orders", OrderRowMapper.SELECT_LIST,
+                "ret_unique_id, order_id", OrderRowMapper::new, tempTableThreshold);
+        this.addressLookup = new BatchedIdLookup<>(jdbcTemplate, "addresses", AddressRowMapper.SELECT_LIST,
+                "ret_unique_id, address_id", AddressRowMapper::new, tempTableThreshold);
+    }
+
+    /** Makes the order and address lookups wait for permits from {@code governor}. */
+    public void setGovernor(ConcurrencyGovernor governor) {
+        orderLookup.setGovernor(governor);
+        addressLookup.setGovernor(governor);
+    }
+
+    public Iterator<UserData> merge(List<User> users) {
+        // If no users found, return empty iterator
+        if (users.isEmpty()) {
+            return Collections.emptyIterator();
+        }
+
+        // Extract all ret_unique_ids to use in subsequent queries
+        int[] retUniqueIds = new int[users.size()];
+        for (int i = 0; i < retUniqueIds.length; i++) {
+            retUniqueIds[i] = users.get(i).getRetUniqueId();
+        }
+
+        // Start the batched lookups for orders and addresses; all batches run concurrently
+        CompletableFuture<List<Order>> ordersFuture = orderLookup.findByIds(retUniqueIds, executor);
+        CompletableFuture<List<Address>> addressesFuture = addressLookup.findByIds(retUniqueIds, executor);
+
+        List<Order> orders = ordersFuture.join();
+        List<Address> addresses = addressesFuture.join();
+
+        // Timed apart from the lookups; fan-out rows are created later, as the iterator is consumed
+        long start = System.nanoTime();
+        Iterator<UserData> rows;
+        switch (mergeMode) {
+            case FAN_OUT:
+                rows = fanOut(users, orders, addresses);
+                break;
+            case AGGREGATE:
+                rows = aggregate(users, orders, addresses);
+                break;
+            default:
+                rows = lastPerUser(users, orders, addresses);
+                break;
+        }
+        ExportMetrics.recordMerge(System.nanoTime() - start);
+        return rows;
+    }
+
+    private static Iterator<UserData> lastPerUser(List<User> users, List<Order> orders, List<Address> addresses) {
+        // Index the results by primitive id (no boxing); a later child replaces an earlier one
+        IntObjectHashMap<Order> orderMap = new IntObjectHashMap<>(orders.size());
+        for (Order order : orders) {
+            orderMap.put(order.getRetUniqueId(), order);
+        }
+
+        IntObjectHashMap<Address> addressMap = new IntObjectHashMap<>(addresses.size());
+        for (Address address : addresses) {
+            addressMap.put(address.getRetUniqueId(), address);
+        }
+
+        // Merge data based on ret_unique_id
+        List<UserData> rows = new ArrayList<>(users.size());
+        for (User user : users) {
+            int retUniqueId = user.getRetUniqueId();
+            rows.add(UserData.from(user, orderMap.get(retUniqueId), addressMap.get(retUniqueId)));
+        }
+        return rows.iterator();
+    }
+
+    private static Iterator<UserData> aggregate(List<User> users, List<Order> orders, List<Address> addresses) {
+        List<UserData> rows = new ArrayList<>(users.size());
+        IntObjectHashMap<UserData> rowsById = new IntObjectHashMap<>(users.size());
+        for (User user : users) {
+            UserData row = UserData.aggregateOf(user);
+            rows.add(row);
+            rowsById.put(user.getRetUniqueId(), row);
+        }
+        for (Order order : orders) {
+            UserData row = rowsById.get(order.getRetUniqueId());
+            if (row != null) {
+                row.addOrder(order);
+            }
+        }
+        for (Address address : addresses) {
+            UserData row = rowsById.get(address.getRetUniqueId());
+            if (row != null) {
+                row.addAddress(address);
+            }
+        }
+        return rows.iterator();
+    }
+
+    private static Iterator<UserData> fanOut(List<User> users, List<Order> orders, List<Address> addresses) {
+        IntMultiMap<Order> ordersById = new IntMultiMap<>(users.size(), orders.size());
+        for (Order order : orders) {
+            ordersById.put(order.getRetUniqueId(), order);
+        }
+        IntMultiMap<Address> addressesById = new IntMultiMap<>(users.size(), addresses.size());
+        for (Address address : addresses) {
+            addressesById.put(address.getRetUniqueId(), address);
+        }
+        return new FanOutIterator(users, ordersById, addressesById);
+    }
+
+    /**
+     * Walks the users and, for each, steps through its orders and then its addresses, so a user
+     * with thousands of children costs one output row at a time rather than a list.
+     */
+    private static final class FanOutIterator implements Iterator<UserData> {
+
+        private final Iterator<User> users;
+        private final IntMultiMap<Order> orders;
+        private final IntMultiMap<Address> addresses;
+
+        private User user;
+        private int orderEntry = IntMultiMap.NONE;
+        private int addressEntry = IntMultiMap.NONE;
+
+        FanOutIterator(List<User> users, IntMultiMap<Order> orders, IntMultiMap<Address> addresses) {
+            this.users = users.iterator();
+            this.orders = orders;
+            this.addresses = addresses;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return orderEntry != IntMultiMap.NONE || addressEntry != IntMultiMap.NONE || users.hasNext();
+        }
+
+        @Override
+        public UserData next() {
+            if (orderEntry == IntMultiMap.NONE && addressEntry == IntMultiMap.NONE) {
+                // Start the next user, which gets one row even without any children
+                if (!users.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                user = users.next();
+                orderEntry = orders.first(user.getRetUniqueId());
+                addressEntry = addresses.first(user.getRetUniqueId());
+                if (orderEntry == IntMultiMap.NONE && addressEntry == IntMultiMap.NONE) {
+                    return UserData.from(user, null, null);
+                }
+            }
+
+            if (orderEntry != IntMultiMap.NONE) {
+                Order order = orders.valueAt(orderEntry);
+                orderEntry = orders.next(orderEntry);
+                return UserData.from(user, order, null);
+            }
+            Address address = addresses.valueAt(addressEntry);
+            addressEntry = addresses.next(addressEntry);
+            return UserData.from(user, null, address);
+        }
+    }
+}
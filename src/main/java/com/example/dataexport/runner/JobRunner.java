@@ -1,68 +1,191 @@
 package com.example.dataexport.runner;
 
+import com.example.dataexport.metrics.ExportMetrics;
+import com.example.dataexport.partition.PartitioningMode;
+import com.example.dataexport.partition.RemotePartitionWorker;
+import com.example.dataexport.partition.RemoteRole;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInstance;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
 import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.ExitCodeGenerator;
 import org.springframework.boot.SpringApplication;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
 import java.util.Date;
 
 @Component
 public class JobRunner implements CommandLineRunner, ExitCodeGenerator {
 
+    private static final Logger log = LoggerFactory.getLogger(JobRunner.class);
+
     private final JobLauncher jobLauncher;
     private final Job exportUserDataJob;
     private final ApplicationContext applicationContext;
+    private final JobExplorer jobExplorer;
+    private final JobRepository jobRepository;
+    private final boolean restartEnabled;
+    private final long abandonAfterMillis;
+    private final RemotePartitionWorker remotePartitionWorker;
+    private final boolean workerOnly;
+    private final long workerIdleShutdownMillis;
     private int exitCode = 0;
 
     @Autowired
-    public JobRunner(JobLauncher jobLauncher, Job exportUserDataJob, ApplicationContext applicationContext) {
+    public JobRunner(JobLauncher jobLauncher, Job exportUserDataJob, ApplicationContext applicationContext,
+                     JobExplorer jobExplorer, JobRepository jobRepository,
+                     @Value("${app.restart.enabled:false}") boolean restartEnabled,
+                     @Value("${app.restart.abandon-after-seconds:3600}") long abandonAfterSeconds,
+                     RemotePartitionWorker remotePartitionWorker,
+                     @Value("${app.partitioning.mode:static}") PartitioningMode partitioningMode,
+                     @Value("${app.partitioning.remote.role:manager}") RemoteRole remoteRole,
+                     @Value("${app.partitioning.remote.worker-idle-shutdown-seconds:0}") long workerIdleShutdownSeconds) {
         this.jobLauncher = jobLauncher;
         this.exportUserDataJob = exportUserDataJob;
         this.applicationContext = applicationContext;
+        this.jobExplorer = jobExplorer;
+        this.jobRepository = jobRepository;
+        this.restartEnabled = restartEnabled;
+        this.abandonAfterMillis = abandonAfterSeconds * 1000;
+        this.remotePartitionWorker = remotePartitionWorker;
+        this.workerOnly = partitioningMode == PartitioningMode.REMOTE && remoteRole == RemoteRole.WORKER;
+        this.workerIdleShutdownMillis = workerIdleShutdownSeconds * 1000;
     }
 
     @Override
     public void run(String... args) throws Exception {
-        System.out.println("Starting export job...");
+        if (workerOnly) {
+            runWorker();
+            return;
+        }
+        log.info("Starting export job...");
         
         try {
-            JobParameters parameters = new JobParametersBuilder()
-                    .addDate("startTime", new Date())
-                    .toJobParameters();
+            JobParameters parameters = restartEnabled ? restartParameters(Arrays.asList(args).contains("--abandon")) : null;
+            if (parameters == null) {
+                parameters = new JobParametersBuilder()
+                        .addDate("startTime", new Date())
+                        .toJobParameters();
+            }
             
             JobExecution jobExecution = jobLauncher.run(exportUserDataJob, parameters);
             
-            System.out.println("Job Status: " + jobExecution.getStatus());
-            System.out.println("Job completed at: " + jobExecution.getEndTime());
+            log.info("Job Status: {}", jobExecution.getStatus());
+            log.info("Job completed at: {}", jobExecution.getEndTime());
             
             // Exit application after job is completed
             if (jobExecution.getExitStatus().getExitCode().equals("COMPLETED")) {
-                System.out.println("Export job completed successfully. Shutting down application...");
+                log.info("Export job completed successfully. Shutting down application...");
                 exitCode = 0;
             } else {
-                System.out.println("Export job failed with status: " + jobExecution.getExitStatus().getExitCode());
+                log.error("Export job failed with status: {}", jobExecution.getExitStatus().getExitCode());
                 exitCode = 1;
             }
         } catch (Exception e) {
-            System.err.println("Error executing job: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Error executing job: {}", e.getMessage(), e);
             exitCode = 1;
         } finally {
             // Schedule the application to exit
-            System.out.println("Scheduling application shutdown...");
+            log.info("Scheduling application shutdown...");
             int exitCode = SpringApplication.exit(applicationContext, this);
             System.exit(exitCode);
         }
     }
 
+    /**
+     * A remote partitioning worker launches no job; it runs the partitions sent by managers until
+     * it has been idle for the configured time, or forever when that is 0.
+     */
+    private void runWorker() {
+        log.info("Waiting for partitions from a remote partitioning manager...");
+        try {
+            exitCode = remotePartitionWorker.awaitIdle(workerIdleShutdownMillis) ? 0 : 1;
+            log.info("Worker idle, {}", exitCode == 0 ? "all partitions completed" : "some partitions failed");
+            log.info("Worker metrics:{}{}", System.lineSeparator(), ExportMetrics.summary().trim());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exitCode = 1;
+        } finally {
+            log.info("Scheduling application shutdown...");
+            int exitCode = SpringApplication.exit(applicationContext, this);
+            System.exit(exitCode);
+        }
+    }
+
+    /**
+     * Returns the parameters of the last run if it did not complete, so launching with them
+     * restarts that job instance; returns {@code null} when a fresh run should start.
+     * <p>
+     * A run that is still marked as running is only taken to be left behind by a killed process,
+     * and marked failed, when neither it nor any of its steps has been updated for the configured
+     * time, or when {@code abandon} says so. Otherwise it may still be live, in another process,
+     * and this launch fails rather than writing the same segments.
+     */
+    private JobParameters restartParameters(boolean abandon) {
+        JobInstance lastInstance = jobExplorer.getLastJobInstance(exportUserDataJob.getName());
+        if (lastInstance == null) {
+            return null;
+        }
+        JobExecution lastExecution = jobExplorer.getLastJobExecution(lastInstance);
+        if (lastExecution == null) {
+            return null;
+        }
+        if (lastExecution.isRunning()) {
+            long idleMillis = System.currentTimeMillis() - lastUpdated(lastExecution).getTime();
+            if (!abandon && idleMillis < abandonAfterMillis) {
+                throw new IllegalStateException("Execution " + lastExecution.getId() + " is still running, last updated "
+                        + idleMillis / 1000 + " s ago; rerun with --abandon if its process is gone");
+            }
+            abandonExecution(lastExecution);
+        }
+        BatchStatus status = lastExecution.getStatus();
+        if (status != BatchStatus.FAILED && status != BatchStatus.STOPPED) {
+            return null;
+        }
+        log.info("Restarting job instance {} after execution {} ended {}", lastInstance.getInstanceId(),
+                lastExecution.getId(), status);
+        return lastExecution.getJobParameters();
+    }
+
+    /** The latest update of the execution or any of its steps, which commit with every chunk. */
+    private static Date lastUpdated(JobExecution execution) {
+        Date lastUpdated = execution.getLastUpdated() != null ? execution.getLastUpdated() : execution.getCreateTime();
+        for (StepExecution stepExecution : execution.getStepExecutions()) {
+            if (stepExecution.getLastUpdated() != null && stepExecution.getLastUpdated().after(lastUpdated)) {
+                lastUpdated = stepExecution.getLastUpdated();
+            }
+        }
+        return lastUpdated;
+    }
+
+    private void abandonExecution(JobExecution execution) {
+        Date now = new Date();
+        for (StepExecution stepExecution : execution.getStepExecutions()) {
+            if (stepExecution.getStatus().isRunning()) {
+                stepExecution.setStatus(BatchStatus.FAILED);
+                stepExecution.setEndTime(now);
+                jobRepository.update(stepExecution);
+            }
+        }
+        execution.setStatus(BatchStatus.FAILED);
+        execution.setEndTime(now);
+        jobRepository.update(execution);
+        log.info("Marked interrupted execution {} as FAILED", execution.getId());
+    }
+
     @Override
     public int getExitCode() {
         return exitCode;
@@ -0,0 +1,115 @@
+package com.example.dataexport.tasklet;
+
+import com.example.dataexport.delta.ChangedUserIds;
+import com.example.dataexport.delta.WatermarkStore;
+import com.example.dataexport.delta.WatermarkType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the users to export in a delta run: those whose own row, or any of whose orders or
+ * addresses, changed since the watermarks of the last completed run.
+ * <p>
+ * Each table's scan covers {@code column > lower AND column <= upper}, bounds read before the
+ * scan, so rows changed while the job runs are left to the next one rather than half exported.
+ * The window leaves {@code safetyLag} of room for write transactions that stamped their rows
+ * before the scan but commit after it, which would otherwise fall below the next watermark and
+ * never be exported (see {@link WatermarkType#upperBound}):
+ * <ul>
+ * <li>timestamps stop {@code safetyLag} milliseconds before the database's present, never below
+ * the last watermark, and the rows after that go to the next run;</li>
+ * <li>ids scan up to the current maximum but start {@code safetyLag} keys below the last
+ * watermark, so the users of those keys are exported again.</li>
+ * </ul>
+ * A write transaction open for longer than the lag can still be missed. The upper bounds are
+ * staged in the {@link WatermarkStore} and committed at the end of the job. Without a committed
+ * watermark for a table that has rows, the run is a full export.
+ */
+public class DeltaScanTasklet implements Tasklet {
+
+    private static final Logger log = LoggerFactory.getLogger(DeltaScanTasklet.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final WatermarkStore watermarks;
+    private final WatermarkType type;
+    private final Map<String, String> columnsByTable;
+    private final long safetyLag;
+    private final ChangedUserIds changedUserIds;
+
+    /**
+     * @param columnsByTable watermark column of each of {@code users}, {@code orders} and
+     *                       {@code addresses}, in scan order
+     * @param safetyLag      how far the scan stays below the present, in the unit of
+     *                       {@link WatermarkType#upperBound}
+     */
+    public DeltaScanTasklet(JdbcTemplate jdbcTemplate, WatermarkStore watermarks, WatermarkType type,
+                            Map<String, String> columnsByTable, long safetyLag, ChangedUserIds changedUserIds) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.watermarks = watermarks;
+        this.type = type;
+        this.columnsByTable = columnsByTable;
+        this.safetyLag = safetyLag;
+        this.changedUserIds = changedUserIds;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        watermarks.load();
+        changedUserIds.clear();
+
+        StringBuilder sql = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        boolean full = false;
+        for (Map.Entry<String, String> table : columnsByTable.entrySet()) {
+            String column = table.getValue();
+            Object current = type.currentMax(jdbcTemplate, table.getKey(), column);
+            if (current == null) {
+                continue;
+            }
+            Object bound = type.upperBound(jdbcTemplate, current, safetyLag);
+            String last = watermarks.get(table.getKey());
+            if (last != null && type.compare(bound, type.parse(last)) < 0) {
+                bound = type.parse(last);
+            }
+            watermarks.stage(table.getKey(), String.valueOf(bound));
+
+            if (last == null) {
+                log.warn("No watermark for {} in {}, exporting all users", table.getKey(), watermarks.getFile());
+                full = true;
+                continue;
+            }
+            if (sql.length() > 0) {
+                sql.append(" UNION ");
+            }
+            sql.append("SELECT ret_unique_id FROM ").append(table.getKey())
+                    .append(" WHERE ").append(column).append(" > ? AND ").append(column).append(" <= ?");
+            args.add(type.lowerBound(type.parse(last), safetyLag));
+            args.add(bound);
+        }
+        if (full) {
+            return RepeatStatus.FINISHED;
+        }
+
+        int[] ids = new int[0];
+        if (sql.length() > 0) {
+            List<Integer> changed = jdbcTemplate.queryForList(sql.append(" ORDER BY ret_unique_id").toString(),
+                    Integer.class, args.toArray());
+            ids = new int[changed.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = changed.get(i);
+            }
+        }
+        changedUserIds.select(ids);
+        log.info("Delta scan found {} changed users", ids.length);
+        return RepeatStatus.FINISHED;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.dataexport.tasklet;
+
+import com.example.dataexport.writer.MappedOutputFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+
+/**
+ * Finishes a {@link MappedOutputFile} once all partitions are done: forces the mapped pages to
+ * disk and trims the file to the bytes actually written.
+ */
+public class MappedOutputTrimTasklet implements Tasklet {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedOutputTrimTasklet.class);
+
+    private final MappedOutputFile output;
+
+    public MappedOutputTrimTasklet(MappedOutputFile output) {
+        this.output = output;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        try {
+            long bytes = output.trim();
+            log.info("Trimmed mapped output to {} bytes: {}", bytes, output.getFile().getAbsolutePath());
+        } finally {
+            output.close();
+        }
+        return RepeatStatus.FINISHED;
+    }
+}
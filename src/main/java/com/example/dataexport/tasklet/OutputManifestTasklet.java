@@ -0,0 +1,85 @@
+package com.example.dataexport.tasklet;
+
+import com.example.dataexport.writer.OutputManifest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Saves the manifest of the files written by the partitions once they have all finished.
+ * <p>
+ * With a {@link JdbcTemplate}, each completed partition step is first reconciled against the
+ * source: the distinct users it wrote are compared with the {@code users} rows in its final id
+ * range, which still holds after work stealing has split the range. The results go into the
+ * manifest's partition list; any mismatch fails the step if {@code failOnMismatch} is set.
+ */
+public class OutputManifestTasklet implements Tasklet {
+
+    private static final Logger log = LoggerFactory.getLogger(OutputManifestTasklet.class);
+
+    private final OutputManifest manifest;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean failOnMismatch;
+
+    /**
+     * @param jdbcTemplate source database to reconcile against, or {@code null} to skip reconciliation
+     */
+    public OutputManifestTasklet(OutputManifest manifest, JdbcTemplate jdbcTemplate, boolean failOnMismatch) {
+        this.manifest = manifest;
+        this.jdbcTemplate = jdbcTemplate;
+        this.failOnMismatch = failOnMismatch;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        int mismatches = jdbcTemplate != null ? reconcile(chunkContext.getStepContext().getStepExecution()) : 0;
+
+        int files = manifest.write();
+        log.info("Wrote manifest of {} files to {}", files, manifest.getManifestFile().getAbsolutePath());
+
+        if (mismatches > 0) {
+            String message = mismatches + " partitions do not match the source, see "
+                    + manifest.getPartitionsFile().getAbsolutePath();
+            if (failOnMismatch) {
+                throw new IllegalStateException(message);
+            }
+            log.warn(message);
+        }
+        return RepeatStatus.FINISHED;
+    }
+
+    private int reconcile(StepExecution current) {
+        int partitions = 0;
+        int mismatches = 0;
+        for (StepExecution execution : current.getJobExecution().getStepExecutions()) {
+            ExecutionContext context = execution.getExecutionContext();
+            // Only partition steps carry a range
+            if (execution.getStatus() != BatchStatus.COMPLETED || !context.containsKey("minValue")) {
+                continue;
+            }
+            int minId = context.getInt("minValue");
+            int maxId = context.getInt("maxValue");
+            long users = context.getLong(OutputManifest.WRITTEN_USERS_KEY, 0L);
+            Long sourceUsers = jdbcTemplate.queryForObject(
+                    "SELECT COUNT(*) FROM users WHERE ret_unique_id BETWEEN ? AND ?", Long.class, minId, maxId);
+            OutputManifest.Partition partition = new OutputManifest.Partition(execution.getStepName(), minId, maxId,
+                    execution.getWriteCount(), users, sourceUsers != null ? sourceUsers : 0);
+            manifest.addPartition(partition);
+            partitions++;
+            if (!partition.isReconciled()) {
+                mismatches++;
+                log.warn("Partition {} wrote {} users, source has {}", partition.getName(), partition.getUsers(),
+                        partition.getSourceUsers());
+            }
+        }
+        log.info("Reconciled {} partitions against the source, {} mismatches", partitions, mismatches);
+        return mismatches;
+    }
+}
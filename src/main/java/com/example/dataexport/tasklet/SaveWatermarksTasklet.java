@@ -0,0 +1,31 @@
+package com.example.dataexport.tasklet;
+
+import com.example.dataexport.delta.WatermarkStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+
+/**
+ * Commits the watermarks staged by the {@link DeltaScanTasklet} as the last step of the job, so
+ * the next delta run starts where this one's output ends.
+ */
+public class SaveWatermarksTasklet implements Tasklet {
+
+    private static final Logger log = LoggerFactory.getLogger(SaveWatermarksTasklet.class);
+
+    private final WatermarkStore watermarks;
+
+    public SaveWatermarksTasklet(WatermarkStore watermarks) {
+        this.watermarks = watermarks;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        watermarks.commit();
+        log.info("Saved watermarks to {}", watermarks.getFile().getAbsolutePath());
+        return RepeatStatus.FINISHED;
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.dataexport.tasklet;
+
+import com.example.dataexport.util.Crc32Combine;
+import com.example.dataexport.writer.OutputCodec;
+import com.example.dataexport.writer.OutputManifest;
+import com.example.dataexport.writer.OutputSegments;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Concatenates the header line and all partition segments, in id order, into the final output
+ * file. Segments are copied with {@link FileChannel#transferTo}, which lets the kernel move the
+ * bytes between files without copying them through the JVM heap. Gzip segments are
+ * self-contained members, so concatenating them behind a compressed header yields a valid
+ * multi-member gzip file without recompressing anything.
+ * <p>
+ * Partitions cover disjoint id ranges and every reader emits its range in {@code ret_unique_id}
+ * order, so concatenating the segments in name order yields output sorted by id.
+ * <p>
+ * With an {@link OutputManifest}, the output file is recorded in it as well. Its CRC-32 is
+ * combined from the header's and the checksums the writers recorded for the segments, so
+ * concatenation never reads the segments back. Segments that are deleted afterwards are taken out
+ * of the manifest, which then only lists files that exist.
+ */
+public class SegmentAssemblyTasklet implements Tasklet {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentAssemblyTasklet.class);
+
+    private final File outputFile;
+    private final OutputSegments segments;
+    private final String header;
+    private final boolean keepSegments;
+    private final OutputCodec codec;
+
+    private OutputManifest manifest;
+    private long outputCrc32;
+
+    public SegmentAssemblyTasklet(File outputFile, OutputSegments segments, String header, boolean keepSegments,
+                                  OutputCodec codec) {
+        this.outputFile = outputFile;
+        this.segments = segments;
+        this.header = header;
+        this.keepSegments = keepSegments;
+        this.codec = codec;
+    }
+
+    /** Records the output file, and takes the segment checksums from, {@code manifest}. */
+    public void setManifest(OutputManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        List<File> parts = segments.list();
+        long bytes = concatenate(parts);
+        log.info("Assembled {} segments ({} bytes) into {}", parts.size(), bytes, outputFile.getAbsolutePath());
+        if (manifest != null) {
+            recordOutput();
+        }
+
+        if (!keepSegments) {
+            segments.delete();
+            if (manifest != null) {
+                for (File part : parts) {
+                    manifest.remove(part.getName());
+                }
+            }
+        }
+        return RepeatStatus.FINISHED;
+    }
+
+    private long concatenate(List<File> parts) throws IOException {
+        try (FileChannel out = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            byte[] encodedHeader = encodedHeader();
+            ByteBuffer headerLine = ByteBuffer.wrap(encodedHeader);
+            while (headerLine.hasRemaining()) {
+                out.write(headerLine);
+            }
+            CRC32 headerCrc32 = new CRC32();
+            headerCrc32.update(encodedHeader);
+            long crc32 = headerCrc32.getValue();
+            for (File part : parts) {
+                transfer(part, out);
+                if (manifest != null) {
+                    crc32 = Crc32Combine.combine(crc32, segmentCrc32(part), part.length());
+                }
+            }
+            outputCrc32 = crc32;
+            return out.size();
+        }
+    }
+
+    /** The header line, compressed on its own when the segments are. */
+    private byte[] encodedHeader() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = codec.encode(bytes)) {
+            out.write((header + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    /** The checksum the writer recorded, or, for a segment written without one, a fresh one. */
+    private long segmentCrc32(File part) throws IOException {
+        OutputManifest.Entry entry = manifest.find(part.getName());
+        if (entry != null) {
+            return entry.getCrc32();
+        }
+        CRC32 crc32 = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        try (FileInputStream in = new FileInputStream(part)) {
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                crc32.update(buffer, 0, n);
+            }
+        }
+        return crc32.getValue();
+    }
+
+    /** Adds the output file, spanning the ids and rows of all segments, to the manifest. */
+    private void recordOutput() {
+        Integer minId = null;
+        Integer maxId = null;
+        long rows = 0;
+        for (OutputManifest.Entry entry : manifest.entries()) {
+            if (entry.getMinId() != null && (minId == null || entry.getMinId() < minId)) {
+                minId = entry.getMinId();
+            }
+            if (entry.getMaxId() != null && (maxId == null || entry.getMaxId() > maxId)) {
+                maxId = entry.getMaxId();
+            }
+            rows += entry.getRows();
+        }
+        manifest.add(new OutputManifest.Entry(outputFile.getName(), minId, maxId, rows, outputFile.length(),
+                outputCrc32));
+    }
+
+    private static void transfer(File part, FileChannel out) throws IOException {
+        try (FileChannel in = FileChannel.open(part.toPath(), StandardOpenOption.READ)) {
+            long size = in.size();
+            long position = 0;
+            // transferTo may move fewer bytes than asked (e.g. 2 GB per call on Linux)
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+    }
+}
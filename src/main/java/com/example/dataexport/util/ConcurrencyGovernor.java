@@ -0,0 +1,202 @@
+package com.example.dataexport.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Adaptive limit on the number of queries in flight, tuned AIMD-style (additive increase,
+ * multiplicative decrease) from what the queries experience.
+ * <p>
+ * Completed queries are grouped into windows of at least {@code limit} samples and
+ * {@code minWindowMillis}. At the end of a window the limit drops by {@code decreaseFactor} if the
+ * window's mean latency exceeded {@code latencyTolerance} times the baseline, or if threads were
+ * waiting for a pooled connection. Otherwise it grows by one, but only if the window actually
+ * used the whole limit. The baseline tracks the lowest window latency seen, drifting slowly
+ * upwards so that a lasting change in the workload is not taken for congestion forever.
+ * <p>
+ * At most one decrease happens per window, so a single slow episode does not collapse the limit.
+ */
+public class ConcurrencyGovernor {
+
+    /** Weight of a window's latency when the baseline moves up towards it. */
+    private static final double BASELINE_DRIFT = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private final double decreaseFactor;
+    private final long minWindowNanos;
+    private final IntSupplier connectionWaiters;
+    private final LongSupplier nanoClock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitFreed = lock.newCondition();
+
+    // Guarded by lock
+    private int limit;
+    private int inFlight;
+    private long windowStart;
+    private int windowSamples;
+    private long windowLatencyNanos;
+    private int windowPeakInFlight;
+    private boolean windowPoolWait;
+    private double baselineNanos = Double.NaN;
+    private double lastLatencyNanos;
+    private long increases;
+    private long decreases;
+
+    /**
+     * @param connectionWaiters number of threads currently waiting for a pooled connection
+     */
+    public ConcurrencyGovernor(int minLimit, int maxLimit, int initialLimit, double latencyTolerance,
+                               double decreaseFactor, long minWindowMillis, IntSupplier connectionWaiters) {
+        this(minLimit, maxLimit, initialLimit, latencyTolerance, decreaseFactor, minWindowMillis, connectionWaiters,
+                System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock source of {@link System#nanoTime()}-like readings, for both query latency and windows
+     */
+    ConcurrencyGovernor(int minLimit, int maxLimit, int initialLimit, double latencyTolerance, double decreaseFactor,
+                        long minWindowMillis, IntSupplier connectionWaiters, LongSupplier nanoClock) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Need 1 <= minLimit <= maxLimit: " + minLimit + ", " + maxLimit);
+        }
+        if (decreaseFactor <= 0 || decreaseFactor >= 1) {
+            throw new IllegalArgumentException("decreaseFactor must be between 0 and 1: " + decreaseFactor);
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.latencyTolerance = latencyTolerance;
+        this.decreaseFactor = decreaseFactor;
+        this.minWindowNanos = TimeUnit.MILLISECONDS.toNanos(minWindowMillis);
+        this.connectionWaiters = connectionWaiters;
+        this.nanoClock = nanoClock;
+        this.windowStart = nanoClock.getAsLong();
+    }
+
+    /** Runs {@code query} once fewer than {@code limit} queries are in flight, timing it as a sample. */
+    public <T> T call(Supplier<T> query) throws InterruptedException {
+        acquire();
+        long start = nanoClock.getAsLong();
+        try {
+            return query.get();
+        } finally {
+            release(nanoClock.getAsLong() - start);
+        }
+    }
+
+    private void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= limit) {
+                permitFreed.await();
+            }
+            inFlight++;
+            windowPeakInFlight = Math.max(windowPeakInFlight, inFlight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long latencyNanos) {
+        // Sampled before taking the lock, while this query's connection is possibly still wanted
+        boolean poolWait = connectionWaiters.getAsInt() > 0;
+        lock.lock();
+        try {
+            inFlight--;
+            windowSamples++;
+            windowLatencyNanos += latencyNanos;
+            windowPoolWait |= poolWait;
+            long now = nanoClock.getAsLong();
+            if (windowSamples >= limit && now - windowStart >= minWindowNanos) {
+                adjust(now);
+            }
+            permitFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjust(long now) {
+        double latency = (double) windowLatencyNanos / windowSamples;
+        lastLatencyNanos = latency;
+        if (Double.isNaN(baselineNanos) || latency < baselineNanos) {
+            baselineNanos = latency;
+        } else {
+            baselineNanos += (latency - baselineNanos) * BASELINE_DRIFT;
+        }
+
+        if (windowPoolWait || latency > baselineNanos * latencyTolerance) {
+            int decreased = Math.max(minLimit, (int) (limit * decreaseFactor));
+            if (decreased < limit) {
+                limit = decreased;
+                decreases++;
+            }
+        } else if (windowPeakInFlight >= limit && limit < maxLimit) {
+            limit++;
+            increases++;
+        }
+
+        windowStart = now;
+        windowSamples = 0;
+        windowLatencyNanos = 0;
+        windowPeakInFlight = inFlight;
+        windowPoolWait = false;
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Baseline (uncongested) query latency in milliseconds, {@code NaN} before the first window. */
+    public double getBaselineMillis() {
+        lock.lock();
+        try {
+            return baselineNanos / 1_000_000.0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Mean query latency of the last completed window in milliseconds. */
+    public double getLatencyMillis() {
+        lock.lock();
+        try {
+            return lastLatencyNanos / 1_000_000.0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        lock.lock();
+        try {
+            return String.format("limit %d (%d-%d), %d increases, %d decreases, latency %.1f ms, baseline %.1f ms",
+                    limit, minLimit, maxLimit, increases, decreases,
+                    lastLatencyNanos / 1_000_000.0, baselineNanos / 1_000_000.0);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.dataexport.util;
+
+/**
+ * Computes the CRC-32 of a concatenation from the CRC-32s of its parts, as zlib's
+ * {@code crc32_combine} does, so the checksum of a file assembled from checksummed pieces needs
+ * no second pass over its bytes. The cost grows with the logarithm of the second part's length.
+ */
+public final class Crc32Combine {
+
+    /** Reflected CRC-32 polynomial used by {@link java.util.zip.CRC32}. */
+    private static final long POLYNOMIAL = 0xedb88320L;
+
+    private Crc32Combine() {
+    }
+
+    /**
+     * The CRC-32 of {@code A + B}, given {@code crc1} of {@code A}, and {@code crc2} and
+     * {@code length2} of {@code B}.
+     */
+    public static long combine(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+
+        // Operator for one zero bit, then squared into the operators for two and four zero bits
+        long[] odd = new long[32];
+        long[] even = new long[32];
+        odd[0] = POLYNOMIAL;
+        long row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        square(even, odd);
+        square(odd, even);
+
+        // Apply length2 zero bytes to crc1, squaring the operator for each bit of the length
+        do {
+            square(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = times(even, crc1);
+            }
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            square(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = times(odd, crc1);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+
+        return crc1 ^ crc2;
+    }
+
+    private static long times(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void square(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.dataexport.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive {@code int} keys to one or more values, kept in
+ * insertion order per key.
+ * <p>
+ * Values are appended to one flat array and chained per key through a parallel {@code int[]} of
+ * next-indexes, so a key costs three {@code int}s and each value one reference and one
+ * {@code int}, with no per-key list objects. Values of a key are walked with a cursor that
+ * allocates nothing:
+ * <pre>
+ * for (int e = map.first(key); e != IntMultiMap.NONE; e = map.next(e)) {
+ *     V value = map.valueAt(e);
+ * }
+ * </pre>
+ * Not thread-safe.
+ */
+public class IntMultiMap<V> {
+
+    /** Cursor value marking the end of a key's values. */
+    public static final int NONE = -1;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    // Key table: slot -> key, first and last entry of its chain (NONE when the slot is empty)
+    private int[] keys;
+    private int[] heads;
+    private int[] tails;
+    private int mask;
+    private int keyCount;
+    private int resizeThreshold;
+
+    // Entry arrays: entry -> value and next entry of the same key
+    private Object[] entries;
+    private int[] nextEntry;
+    private int entryCount;
+
+    public IntMultiMap() {
+        this(16, 16);
+    }
+
+    public IntMultiMap(int expectedKeys, int expectedValues) {
+        allocateKeys(IntObjectHashMap.capacityFor(expectedKeys));
+        entries = new Object[Math.max(expectedValues, 4)];
+        nextEntry = new int[entries.length];
+    }
+
+    /** Appends {@code value} to the values of {@code key}. */
+    public void put(int key, V value) {
+        if (entryCount == entries.length) {
+            int capacity = entries.length + (entries.length >> 1);
+            entries = Arrays.copyOf(entries, capacity);
+            nextEntry = Arrays.copyOf(nextEntry, capacity);
+        }
+        int entry = entryCount++;
+        entries[entry] = value;
+        nextEntry[entry] = NONE;
+
+        int slot = IntObjectHashMap.mix(key) & mask;
+        while (heads[slot] != NONE) {
+            if (keys[slot] == key) {
+                nextEntry[tails[slot]] = entry;
+                tails[slot] = entry;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        heads[slot] = entry;
+        tails[slot] = entry;
+        if (++keyCount > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /** Cursor to the first value of {@code key}, or {@link #NONE} if it has none. */
+    public int first(int key) {
+        int slot = IntObjectHashMap.mix(key) & mask;
+        int head;
+        while ((head = heads[slot]) != NONE) {
+            if (keys[slot] == key) {
+                return head;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NONE;
+    }
+
+    /** Cursor to the value after {@code entry} for the same key, or {@link #NONE}. */
+    public int next(int entry) {
+        return nextEntry[entry];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V valueAt(int entry) {
+        return (V) entries[entry];
+    }
+
+    /** Total number of values across all keys. */
+    public int size() {
+        return entryCount;
+    }
+
+    public void clear() {
+        Arrays.fill(heads, NONE);
+        Arrays.fill(entries, 0, entryCount, null);
+        keyCount = 0;
+        entryCount = 0;
+    }
+
+    private void allocateKeys(int capacity) {
+        keys = new int[capacity];
+        heads = new int[capacity];
+        tails = new int[capacity];
+        Arrays.fill(heads, NONE);
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        int[] oldHeads = heads;
+        int[] oldTails = tails;
+        allocateKeys(newCapacity);
+        for (int i = 0; i < oldHeads.length; i++) {
+            if (oldHeads[i] != NONE) {
+                int slot = IntObjectHashMap.mix(oldKeys[i]) & mask;
+                while (heads[slot] != NONE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                heads[slot] = oldHeads[i];
+                tails[slot] = oldTails[i];
+            }
+        }
+    }
+}
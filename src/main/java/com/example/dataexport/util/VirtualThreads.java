@@ -0,0 +1,53 @@
+package com.example.dataexport.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Access to Java 21 virtual threads from code that still compiles for Java 8: the factories are
+ * looked up reflectively, and fail fast with a clear message on older runtimes.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /** Whether the running JVM has virtual threads (Java 21 or later). */
+    public static boolean isAvailable() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /** Returns a factory of virtual threads named {@code prefix0}, {@code prefix1}, ... */
+    public static ThreadFactory factory(String prefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw unavailable(e);
+        }
+    }
+
+    /** Returns an executor that starts a new thread from {@code threadFactory} for every task. */
+    public static ExecutorService newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+        try {
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) method.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw unavailable(e);
+        }
+    }
+
+    private static IllegalStateException unavailable(ReflectiveOperationException e) {
+        return new IllegalStateException("Virtual threads need Java 21 or later, running on "
+                + System.getProperty("java.version"), e);
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.dataexport.writer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Output stream that hands written bytes to a dedicated I/O thread through a bounded ring of
+ * reusable buffers, so the writing thread can go back to reading while earlier bytes go to disk.
+ * <p>
+ * The writer fills the buffer at the head of the ring and publishes it when it is full or on
+ * {@link #publish()}; the I/O thread writes published buffers from the tail to the underlying
+ * stream in order and hands them back. When every buffer is waiting to be written the writer
+ * blocks until one is free, so a slow disk slows the writer down instead of growing memory.
+ * A failure on the I/O thread is rethrown from the next write, publish, flush or close; a failure
+ * writing the last buffers therefore only shows when the stream is closed.
+ * <p>
+ * Not thread-safe; one thread writes to each stream.
+ */
+public class AsyncOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final byte[][] ring;
+    private final int[] lengths;
+    private final Thread ioThread;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    // Guarded by lock: buffers tail .. tail + published - 1 wait for the I/O thread
+    private int published;
+    private boolean ending;
+
+    // Writer side: the buffer being filled is ring[head]
+    private int head;
+    private int fillLength;
+    private boolean closed;
+
+    // I/O side
+    private int tail;
+    private volatile Throwable failure;
+
+    /**
+     * @param buffers    number of buffers in the ring, at least two so writing and filling overlap
+     * @param bufferSize bytes per buffer
+     */
+    public AsyncOutputStream(OutputStream out, int buffers, int bufferSize, ThreadFactory threadFactory) {
+        this.out = out;
+        this.ring = new byte[Math.max(2, buffers)][bufferSize];
+        this.lengths = new int[ring.length];
+        this.ioThread = threadFactory.newThread(this::drain);
+        ioThread.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        awaitFreeBuffer();
+        ring[head][fillLength++] = (byte) b;
+        if (fillLength == ring[head].length) {
+            publish();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            awaitFreeBuffer();
+            byte[] buffer = ring[head];
+            int n = Math.min(len, buffer.length - fillLength);
+            System.arraycopy(b, off, buffer, fillLength, n);
+            fillLength += n;
+            off += n;
+            len -= n;
+            if (fillLength == buffer.length) {
+                publish();
+            }
+        }
+    }
+
+    /**
+     * Hands the partly filled buffer to the I/O thread without waiting for it to be written.
+     */
+    public void publish() throws IOException {
+        checkFailure();
+        if (fillLength == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            lengths[head] = fillLength;
+            published++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        head = (head + 1) % ring.length;
+        fillLength = 0;
+    }
+
+    /**
+     * Publishes the partly filled buffer and waits until the I/O thread has written everything,
+     * then flushes the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        publish();
+        lock.lock();
+        try {
+            while (published > 0 && failure == null) {
+                notFull.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for pending writes");
+        } finally {
+            lock.unlock();
+        }
+        checkFailure();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            publish();
+        } finally {
+            lock.lock();
+            try {
+                ending = true;
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+            try {
+                ioThread.join();
+            } catch (InterruptedException e) {
+                ioThread.interrupt();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for pending writes");
+            } finally {
+                out.close();
+            }
+        }
+        checkFailure();
+    }
+
+    /** Waits while every buffer of the ring is published and not yet written. */
+    private void awaitFreeBuffer() throws IOException {
+        checkFailure();
+        if (fillLength > 0) {
+            // Already filling ring[head]
+            return;
+        }
+        lock.lock();
+        try {
+            while (published == ring.length && failure == null) {
+                notFull.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a free buffer");
+        } finally {
+            lock.unlock();
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable cause = failure;
+        if (cause != null) {
+            throw new IOException("Asynchronous write failed", cause);
+        }
+    }
+
+    /** Body of the I/O thread. */
+    private void drain() {
+        try {
+            while (true) {
+                lock.lock();
+                try {
+                    while (published == 0 && !ending) {
+                        notEmpty.await();
+                    }
+                    if (published == 0) {
+                        return;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+
+                out.write(ring[tail], 0, lengths[tail]);
+                tail = (tail + 1) % ring.length;
+
+                lock.lock();
+                try {
+                    published--;
+                    notFull.signal();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (Throwable e) {
+            failure = e;
+            lock.lock();
+            try {
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.dataexport.writer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One output file shared by all partition writers, which write it in parallel through memory
+ * mappings instead of appending to files of their own.
+ * <p>
+ * The file starts with the header line. After it, a writer encodes a whole chunk first and then
+ * reserves exactly its length by bumping an atomic offset, so chunks follow each other without
+ * gaps, never overlap, and no lock is held while rows are written. The file is mapped
+ * {@code READ_WRITE} in regions of a fixed size, each mapped once on first use and shared by all
+ * writers; mapping a region grows the file to cover it, and a chunk may span two regions.
+ * {@link #trim()} finally forces the regions to disk and cuts off the unused end of the last one.
+ * <p>
+ * Rows appear in the order chunks were reserved, so partitions interleave chunk by chunk.
+ */
+public class MappedOutputFile {
+
+    private final File file;
+    private final int regionSize;
+
+    private final AtomicLong nextOffset = new AtomicLong();
+    private final ConcurrentMap<Long, MappedByteBuffer> regions = new ConcurrentHashMap<>();
+    private FileChannel channel;
+
+    /**
+     * @param regionSize bytes of the file mapped at a time
+     */
+    public MappedOutputFile(File file, int regionSize) {
+        this.file = file;
+        this.regionSize = regionSize;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getRegionSize() {
+        return regionSize;
+    }
+
+    /**
+     * Replaces any existing file with one holding just {@code header} and resets the reservations.
+     */
+    public synchronized void open(byte[] header) throws IOException {
+        close();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer headerLine = ByteBuffer.wrap(header);
+        while (headerLine.hasRemaining()) {
+            channel.write(headerLine);
+        }
+        nextOffset.set(header.length);
+    }
+
+    /** Reserves the next {@code length} bytes and returns their file offset. */
+    public long reserve(int length) {
+        return nextOffset.getAndAdd(length);
+    }
+
+    /** Copies the remaining bytes of {@code src} into the file at {@code offset}, which was reserved for them. */
+    public void write(long offset, ByteBuffer src) throws IOException {
+        long position = offset;
+        while (src.hasRemaining()) {
+            ByteBuffer target = region(position / regionSize).duplicate();
+            target.position((int) (position % regionSize));
+            int length = Math.min(src.remaining(), target.remaining());
+            ByteBuffer part = src.duplicate();
+            part.limit(part.position() + length);
+            target.put(part);
+            src.position(src.position() + length);
+            position += length;
+        }
+    }
+
+    private MappedByteBuffer region(long index) throws IOException {
+        MappedByteBuffer region = regions.get(index);
+        if (region != null) {
+            return region;
+        }
+        try {
+            return regions.computeIfAbsent(index, i -> {
+                try {
+                    return channel.map(FileChannel.MapMode.READ_WRITE, i * regionSize, regionSize);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Forces the written regions to disk and truncates the file to the reserved length, which is
+     * returned. Must only run after every writer has written its last chunk.
+     */
+    public synchronized long trim() throws IOException {
+        for (MappedByteBuffer region : regions.values()) {
+            region.force();
+        }
+        regions.clear();
+        long end = nextOffset.get();
+        channel.truncate(end);
+        channel.force(true);
+        return end;
+    }
+
+    public synchronized void close() throws IOException {
+        regions.clear();
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.dataexport.writer;
+
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Applies the configured {@link OutputCompression} to output streams.
+ */
+public class OutputCodec {
+
+    private final OutputCompression compression;
+    private final ExecutorService executor;
+    private final int blockSize;
+    private final int level;
+    private final int maxInFlight;
+
+    /**
+     * @param executor    compresses gzip blocks; shared by all partitions
+     * @param blockSize   uncompressed bytes per gzip member
+     * @param maxInFlight pending blocks per stream before its writer waits
+     */
+    public OutputCodec(OutputCompression compression, ExecutorService executor, int blockSize, int level,
+                       int maxInFlight) {
+        this.compression = compression;
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.level = level;
+        this.maxInFlight = maxInFlight;
+    }
+
+    public OutputCompression getCompression() {
+        return compression;
+    }
+
+    public OutputStream encode(OutputStream out) {
+        if (compression == OutputCompression.GZIP) {
+            return new ParallelGzipOutputStream(out, executor, blockSize, level, maxInFlight);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.dataexport.writer;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Completes the output of a partition's writer when its step ends, so that a failure to finish
+ * it fails the step.
+ * <p>
+ * Spring Batch saves a step as {@code COMPLETED} before it closes the step's streams, and an
+ * exception from {@code ItemStream#close()} is only logged. A writer whose last bytes are still
+ * on their way at the last commit (the partial block of a gzip stream, buffers queued for an I/O
+ * thread) registers the rest of its work here when it opens; it runs in {@link #afterStep}, while
+ * the step can still be marked {@code FAILED}. The writer's own close then has nothing left to do.
+ * One instance serves every partition of the step, keyed by step execution.
+ */
+public class OutputCompletionListener implements StepExecutionListener {
+
+    /** Writes out whatever a writer still holds and closes its output. */
+    public interface Completion {
+        void complete() throws IOException;
+    }
+
+    private final Map<Long, Completion> completions = new ConcurrentHashMap<>();
+
+    /**
+     * Registers the output of the step running on the calling thread. Outside a step nothing is
+     * registered, and the writer completes its output when it is closed.
+     */
+    public void register(Completion completion) {
+        StepContext context = StepSynchronizationManager.getContext();
+        if (context != null) {
+            completions.put(context.getStepExecution().getId(), completion);
+        }
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+        Completion completion = completions.remove(stepExecution.getId());
+        // A step that failed already is left to close its streams as usual
+        if (completion == null || stepExecution.getStatus() != BatchStatus.COMPLETED) {
+            return null;
+        }
+        try {
+            completion.complete();
+            return null;
+        } catch (Exception e) {
+            stepExecution.setStatus(BatchStatus.FAILED);
+            stepExecution.addFailureException(e);
+            return ExitStatus.FAILED.addExitDescription(e);
+        }
+    }
+}
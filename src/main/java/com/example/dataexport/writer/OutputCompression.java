@@ -0,0 +1,22 @@
+package com.example.dataexport.writer;
+
+/**
+ * Compression applied to segments and the assembled output file.
+ */
+public enum OutputCompression {
+    /** Plain CSV. */
+    NONE(".csv"),
+    /** Multi-member gzip, compressed block by block in parallel. */
+    GZIP(".csv.gz");
+
+    private final String suffix;
+
+    OutputCompression(String suffix) {
+        this.suffix = suffix;
+    }
+
+    /** File name suffix of segments written with this compression. */
+    public String getSuffix() {
+        return suffix;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.dataexport.writer;
+
+/**
+ * File format of the export.
+ */
+public enum OutputFormat {
+    /** CSV segments, optionally compressed and assembled into one file. */
+    CSV,
+    /** One Parquet file per partition with typed columns; the files are the output. */
+    PARQUET
+}
@@ -0,0 +1,223 @@
+package com.example.dataexport.writer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lists the files of an export with the id range, row count, size and CRC-32 of each, so
+ * downstream loaders can pick and fan out over the files without opening them, and can verify
+ * them without a separate checksum pass. Writers add an entry as they finish each file, and the
+ * assembly step adds one for the assembled output file, removing those of the segments it deletes.
+ * <p>
+ * A second file lists every partition with the rows and distinct users it wrote next to the
+ * number of users in its id range at the source, so lost or duplicated users show up as a
+ * mismatch.
+ */
+public class OutputManifest {
+
+    /** Step execution context key under which writers keep the number of distinct users written. */
+    public static final String WRITTEN_USERS_KEY = "writtenUsers";
+
+    public static final String HEADER = "file,min_id,max_id,rows,bytes,crc32";
+
+    public static final String PARTITIONS_HEADER = "partition,min_id,max_id,rows,users,source_users,status";
+
+    /** One finished output file. */
+    public static final class Entry {
+        private final String file;
+        private final Integer minId;
+        private final Integer maxId;
+        private final long rows;
+        private final long bytes;
+        private final long crc32;
+
+        /**
+         * @param minId id of the first row, or {@code null} if the file has no rows
+         * @param maxId id of the last row, or {@code null} if the file has no rows
+         */
+        public Entry(String file, Integer minId, Integer maxId, long rows, long bytes, long crc32) {
+            this.file = file;
+            this.minId = minId;
+            this.maxId = maxId;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.crc32 = crc32;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public Integer getMinId() {
+            return minId;
+        }
+
+        public Integer getMaxId() {
+            return maxId;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getCrc32() {
+            return crc32;
+        }
+    }
+
+    /** Rows and users one partition wrote, against the users in its range at the source. */
+    public static final class Partition {
+        private final String name;
+        private final int minId;
+        private final int maxId;
+        private final long rows;
+        private final long users;
+        private final long sourceUsers;
+
+        public Partition(String name, int minId, int maxId, long rows, long users, long sourceUsers) {
+            this.name = name;
+            this.minId = minId;
+            this.maxId = maxId;
+            this.rows = rows;
+            this.users = users;
+            this.sourceUsers = sourceUsers;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getUsers() {
+            return users;
+        }
+
+        public long getSourceUsers() {
+            return sourceUsers;
+        }
+
+        public boolean isReconciled() {
+            return users == sourceUsers;
+        }
+    }
+
+    private final File manifestFile;
+    private final File partitionsFile;
+    private final List<Entry> entries = new ArrayList<>();
+    private final List<Partition> partitions = new ArrayList<>();
+
+    public OutputManifest(File manifestFile, File partitionsFile) {
+        this.manifestFile = manifestFile;
+        this.partitionsFile = partitionsFile;
+    }
+
+    public File getManifestFile() {
+        return manifestFile;
+    }
+
+    public File getPartitionsFile() {
+        return partitionsFile;
+    }
+
+    public synchronized void add(Entry entry) {
+        entries.add(entry);
+    }
+
+    /** Forgets the entry recorded for the file named {@code file}, if any. */
+    public synchronized void remove(String file) {
+        entries.removeIf(entry -> entry.getFile().equals(file));
+    }
+
+    /** The entry recorded for the file named {@code file}, or {@code null}. */
+    public synchronized Entry find(String file) {
+        for (Entry entry : entries) {
+            if (entry.getFile().equals(file)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /** A copy of the entries recorded so far, in file name order. */
+    public synchronized List<Entry> entries() {
+        List<Entry> copy = new ArrayList<>(entries);
+        copy.sort((a, b) -> a.getFile().compareTo(b.getFile()));
+        return copy;
+    }
+
+    public synchronized void addPartition(Partition partition) {
+        partitions.add(partition);
+    }
+
+    /** A copy of the partitions recorded so far, in id order. */
+    public synchronized List<Partition> partitions() {
+        List<Partition> copy = new ArrayList<>(partitions);
+        copy.sort((a, b) -> Integer.compare(a.minId, b.minId));
+        return copy;
+    }
+
+    /** Forgets everything recorded and deletes the manifest files of an earlier run. */
+    public synchronized void clear() throws IOException {
+        entries.clear();
+        partitions.clear();
+        Files.deleteIfExists(manifestFile.toPath());
+        Files.deleteIfExists(partitionsFile.toPath());
+    }
+
+    /**
+     * Writes the manifest, and the partition list if any partitions were recorded, each through a
+     * temporary file that is then renamed, so readers never see a partial manifest. Returns the
+     * number of files listed.
+     */
+    public int write() throws IOException {
+        List<Entry> sortedEntries = entries();
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        for (Entry entry : sortedEntries) {
+            // File names need no CSV escaping
+            lines.add(entry.getFile() + "," + blankIfNull(entry.getMinId()) + "," + blankIfNull(entry.getMaxId()) + ","
+                    + entry.getRows() + "," + entry.getBytes() + "," + String.format("%08x", entry.getCrc32()));
+        }
+        writeAtomically(manifestFile, lines);
+
+        List<Partition> sortedPartitions = partitions();
+        if (!sortedPartitions.isEmpty()) {
+            lines.clear();
+            lines.add(PARTITIONS_HEADER);
+            for (Partition partition : sortedPartitions) {
+                lines.add(partition.name + "," + partition.minId + "," + partition.maxId + "," + partition.rows + ","
+                        + partition.users + "," + partition.sourceUsers + ","
+                        + (partition.isReconciled() ? "OK" : "MISMATCH"));
+            }
+            writeAtomically(partitionsFile, lines);
+        }
+        return sortedEntries.size();
+    }
+
+    private static String blankIfNull(Integer value) {
+        return value != null ? value.toString() : "";
+    }
+
+    private static void writeAtomically(File file, List<String> lines) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(temp.toPath()),
+                StandardCharsets.UTF_8))) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write(System.lineSeparator());
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.dataexport.writer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The directory of per-partition output segments. Each partition writes its own file, named
+ * after the lowest {@code ret_unique_id} of its range (see {@link #sortKey}) so that listing the
+ * segments by name yields them in id order.
+ */
+public class OutputSegments {
+
+    private static final String PREFIX = "segment-";
+    private final File directory;
+    private final String suffix;
+
+    /**
+     * @param suffix file name suffix of the segments, such as {@code .csv}
+     */
+    public OutputSegments(File directory, String suffix) {
+        this.directory = directory;
+        this.suffix = suffix;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * The segment file of the partition whose range starts at {@code minValue}, or, for partitions
+     * that roll their output over several files, the file whose first row has that id.
+     */
+    public File segmentFor(int minValue) {
+        return new File(directory, PREFIX + sortKey(minValue) + suffix);
+    }
+
+    /** All segment files currently in the directory, in id order. */
+    public List<File> list() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(suffix));
+        if (files == null) {
+            return Collections.emptyList();
+        }
+        List<File> segments = new ArrayList<>(Arrays.asList(files));
+        segments.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return segments;
+    }
+
+    /** Creates the directory if needed and removes segments left over from a previous run. */
+    public void clear() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create segment directory " + directory.getAbsolutePath());
+        }
+        deleteSegments();
+    }
+
+    /** Deletes every segment, and the directory itself if nothing else is left in it. */
+    public void delete() throws IOException {
+        deleteSegments();
+        String[] remaining = directory.list();
+        if (remaining != null && remaining.length == 0) {
+            directory.delete();
+        }
+    }
+
+    private void deleteSegments() throws IOException {
+        for (File segment : list()) {
+            if (!segment.delete()) {
+                throw new IOException("Cannot delete segment " + segment.getAbsolutePath());
+            }
+        }
+    }
+
+    /**
+     * {@code id} zero-padded to ten digits, such as {@code 0000000098}, so name order is numeric
+     * order. A negative id is {@code -} followed by the ten-digit distance from
+     * {@link Integer#MIN_VALUE}, which sorts before every non-negative id and in order among
+     * negative ones.
+     */
+    static String sortKey(int id) {
+        return id >= 0 ? String.format("%010d", id) : "-" + String.format("%010d", (long) id - Integer.MIN_VALUE);
+    }
+}
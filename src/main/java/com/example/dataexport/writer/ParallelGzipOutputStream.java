@@ -0,0 +1,154 @@
+package com.example.dataexport.writer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip output stream that compresses fixed-size blocks in parallel, pigz-style.
+ * <p>
+ * Written bytes are cut into blocks of {@code blockSize}; each block is compressed into a
+ * complete gzip member on the shared executor, and members are written to the underlying
+ * stream in block order. Concatenated members form a valid multi-member gzip file that
+ * standard {@code gunzip} and {@link java.util.zip.GZIPInputStream} read as one stream. At most
+ * {@code maxInFlight} blocks are pending per stream; a writer that gets further ahead waits for
+ * the oldest block, which keeps memory bounded when compression falls behind. Compression
+ * failures are rethrown from the next write, flush or close.
+ * <p>
+ * {@link #flush()} writes the members of every complete block and leaves the partial block
+ * buffered, like a {@link GZIPOutputStream} without sync flush, so flushing at every chunk commit
+ * neither shrinks the members nor waits for more than the blocks already submitted. The partial
+ * block is compressed by {@link #close()}.
+ * <p>
+ * Not thread-safe; one thread writes to each stream.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int blockSize;
+    private final int level;
+    private final int maxInFlight;
+
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] block;
+    private int blockLength;
+    private boolean closed;
+
+    public ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int blockSize, int level,
+                                    int maxInFlight) {
+        this.out = out;
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.level = level;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (blockLength == blockSize) {
+            submitBlock();
+        }
+        block[blockLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (blockLength == blockSize) {
+                submitBlock();
+            }
+            int n = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes the member of every submitted block, waiting for the ones still being compressed,
+     * and rethrows any compression failure. The partial block stays buffered.
+     */
+    @Override
+    public void flush() throws IOException {
+        writePending();
+        out.flush();
+    }
+
+    /** Compresses the partial block and writes every member, then closes the underlying stream. */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submitBlock();
+            writePending();
+            out.flush();
+        } finally {
+            for (Future<byte[]> member : pending) {
+                member.cancel(false);
+            }
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        if (blockLength == 0) {
+            return;
+        }
+        while (pending.size() >= maxInFlight) {
+            writeOldest();
+        }
+        byte[] data = block;
+        int length = blockLength;
+        pending.add(executor.submit(() -> compress(data, length, level)));
+        // The submitted block now belongs to its task
+        block = new byte[blockSize];
+        blockLength = 0;
+    }
+
+    private void writePending() throws IOException {
+        while (!pending.isEmpty()) {
+            writeOldest();
+        }
+    }
+
+    private void writeOldest() throws IOException {
+        Future<byte[]> oldest = pending.peek();
+        byte[] member;
+        try {
+            member = oldest.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a compressed block");
+        } catch (ExecutionException e) {
+            throw new IOException("Block compression failed", e.getCause());
+        }
+        pending.poll();
+        out.write(member);
+    }
+
+    /** Compresses {@code length} bytes of {@code data} into one self-contained gzip member. */
+    static byte[] compress(byte[] data, int length, int level) throws IOException {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(Math.max(64, length / 3));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(member, 64 * 1024) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            gzip.write(data, 0, length);
+        }
+        return member.toByteArray();
+    }
+}
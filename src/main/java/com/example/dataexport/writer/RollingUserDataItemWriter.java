@@ -0,0 +1,187 @@
+package com.example.dataexport.writer;
+
+import com.example.dataexport.metrics.ExportMetrics;
+import com.example.dataexport.model.UserData;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes one partition's rows over a series of complete CSV files, each starting with the header,
+ * rolling to the next file once the current one holds {@code maxRows} rows or {@code maxBytes}
+ * bytes. Files only roll between users, so the rows of one user (several of them in fan-out mode)
+ * never span two files, and a file may pass either limit by the rest of its last user's rows.
+ * Sizes are counted before compression. A file is only created once it has a row to hold, so an
+ * empty partition leaves no file. Each file is named after the id of its first row, through
+ * {@link OutputSegments#segmentFor(int)}, so the files of all partitions sort by name in id order.
+ * <p>
+ * Every finished file is recorded in the {@link OutputManifest} with the ids of its first and last
+ * row (rows arrive in id order), its row count, its size on disk and the CRC-32 of its bytes,
+ * computed as they are written. Encoding, compression, the optional asynchronous stage, flushing
+ * before every commit, completion through an {@link OutputCompletionListener} and the count of
+ * distinct users in the step's execution context work as in {@link UserDataCsvItemWriter}.
+ */
+public class RollingUserDataItemWriter implements ItemStreamWriter<UserData> {
+
+    private final OutputSegments segments;
+    private final UserDataCsvEncoder encoder;
+    private final OutputCodec codec;
+    private final long maxRows;
+    private final long maxBytes;
+    private final OutputManifest manifest;
+
+    private int asyncBuffers;
+    private int asyncBufferSize;
+    private ThreadFactory asyncThreadFactory;
+    private OutputCompletionListener completionListener;
+
+    private File file;
+    private OutputStream out;
+    private AsyncOutputStream asyncOut;
+    private CRC32 crc32;
+    private long users;
+    private long rows;
+    private long bytes;
+    private int firstId;
+    private int lastId;
+    private long outputNanos;
+
+    /**
+     * @param maxRows  rows per file, or {@code 0} for no limit
+     * @param maxBytes uncompressed bytes per file, or {@code 0} for no limit
+     */
+    public RollingUserDataItemWriter(OutputSegments segments, UserDataCsvEncoder encoder, OutputCodec codec,
+                                     long maxRows, long maxBytes, OutputManifest manifest) {
+        this.segments = segments;
+        this.encoder = encoder;
+        this.codec = codec;
+        this.maxRows = maxRows;
+        this.maxBytes = maxBytes;
+        this.manifest = manifest;
+    }
+
+    /** See {@link UserDataCsvItemWriter#setAsyncOutput}. */
+    public void setAsyncOutput(int buffers, int bufferSize, ThreadFactory threadFactory) {
+        this.asyncBuffers = buffers;
+        this.asyncBufferSize = bufferSize;
+        this.asyncThreadFactory = threadFactory;
+    }
+
+    /** See {@link UserDataCsvItemWriter#setCompletionListener}. */
+    public void setCompletionListener(OutputCompletionListener completionListener) {
+        this.completionListener = completionListener;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        users = 0;
+        if (completionListener != null) {
+            completionListener.register(this::complete);
+        }
+    }
+
+    @Override
+    public void write(List<? extends UserData> items) throws Exception {
+        long start = System.nanoTime();
+        long chunkBytes = 0;
+        outputNanos = 0;
+        for (UserData item : items) {
+            if (out != null && item.getRetUniqueId() != lastId
+                    && ((maxRows > 0 && rows >= maxRows) || (maxBytes > 0 && bytes >= maxBytes))) {
+                finishFile();
+            }
+            if (out == null) {
+                startFile(item.getRetUniqueId());
+            }
+            int before = encoder.size();
+            encoder.encode(item);
+            bytes += encoder.size() - before;
+            chunkBytes += encoder.size() - before;
+            if (users == 0 || item.getRetUniqueId() != lastId) {
+                users++;
+            }
+            rows++;
+            lastId = item.getRetUniqueId();
+            if (encoder.size() >= UserDataCsvItemWriter.FLUSH_THRESHOLD) {
+                writeEncoded();
+            }
+        }
+        if (out != null) {
+            writeEncoded();
+            if (asyncOut != null) {
+                asyncOut.publish();
+            }
+        }
+        ExportMetrics.recordChunkOutput(System.nanoTime() - start, outputNanos, chunkBytes);
+    }
+
+    private void writeEncoded() throws IOException {
+        long start = System.nanoTime();
+        encoder.writeTo(out);
+        outputNanos += System.nanoTime() - start;
+    }
+
+    private void startFile(int retUniqueId) throws IOException {
+        file = segments.segmentFor(retUniqueId);
+        // Checksums the bytes as stored, after compression
+        crc32 = new CRC32();
+        out = codec.encode(new CheckedOutputStream(new FileOutputStream(file), crc32));
+        if (asyncThreadFactory != null) {
+            asyncOut = new AsyncOutputStream(out, asyncBuffers, asyncBufferSize, asyncThreadFactory);
+            out = asyncOut;
+        }
+        encoder.encodeHeader();
+        bytes = encoder.size();
+        rows = 0;
+        firstId = retUniqueId;
+    }
+
+    private void finishFile() throws IOException {
+        try {
+            writeEncoded();
+            out.close();
+        } finally {
+            out = null;
+            asyncOut = null;
+        }
+        manifest.add(new OutputManifest.Entry(file.getName(), firstId, lastId, rows, file.length(),
+                crc32.getValue()));
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        executionContext.putLong(OutputManifest.WRITTEN_USERS_KEY, users);
+        if (out != null && asyncOut == null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                throw new ItemStreamException("Failed to flush " + file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        try {
+            complete();
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to close " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /** Finishes the current file, if any; see {@link UserDataCsvItemWriter#setCompletionListener}. */
+    private void complete() throws IOException {
+        if (out != null) {
+            finishFile();
+        }
+    }
+}
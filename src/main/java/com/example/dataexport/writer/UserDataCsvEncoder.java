@@ -0,0 +1,327 @@
+package com.example.dataexport.writer;
+
+import com.example.dataexport.model.UserData;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+
+/**
+ * Encodes {@link UserData} rows as CSV lines directly into a reusable byte array, producing
+ * exactly the bytes {@link UserDataLineAggregator} plus a UTF-8 writer would.
+ * <p>
+ * Text columns are UTF-8 encoded and escaped in one pass: characters are copied with quotes
+ * doubled while the delimiter, newline and quote are watched for, and only a field that turns
+ * out to need quoting is shifted one byte to make room for its opening quote. Integers, dates
+ * and plain-notation decimals are rendered digit by digit, so a row allocates nothing beyond the
+ * unscaled {@link BigInteger} of its amount; rare values outside those fast paths (years beyond
+ * 9999, scientific-notation decimals) fall back to the standard formatting.
+ * <p>
+ * Not thread-safe; use one encoder per writer.
+ */
+public class UserDataCsvEncoder {
+
+    private static final byte DELIMITER = ',';
+    private static final byte QUOTE = '"';
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NULL_LITERAL = {'n', 'u', 'l', 'l'};
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    private final boolean aggregated;
+    private byte[] buf;
+    private int count;
+
+    /**
+     * @param aggregated encode the per-user aggregate columns of
+     *                   {@link UserDataLineAggregator#AGGREGATE_HEADER}
+     */
+    public UserDataCsvEncoder(boolean aggregated) {
+        this(aggregated, 64 * 1024);
+    }
+
+    public UserDataCsvEncoder(boolean aggregated, int initialCapacity) {
+        this.aggregated = aggregated;
+        this.buf = new byte[Math.max(initialCapacity, 256)];
+    }
+
+    public String getHeader() {
+        return aggregated ? UserDataLineAggregator.AGGREGATE_HEADER : UserDataLineAggregator.HEADER;
+    }
+
+    /** Appends the header line. */
+    public void encodeHeader() {
+        appendText(getHeader(), false);
+        appendBytes(LINE_SEPARATOR);
+    }
+
+    /** Appends one row, terminated by the platform line separator. */
+    public void encode(UserData userData) {
+        // User data
+        appendInt(userData.getRetUniqueId());
+        appendByte(DELIMITER);
+        appendText(userData.getUsername(), true);
+        appendByte(DELIMITER);
+        appendText(userData.getEmail(), true);
+        appendByte(DELIMITER);
+
+        if (aggregated) {
+            // Order aggregates
+            appendIntOrNullLiteral(userData.getOrderCount());
+            appendByte(DELIMITER);
+            appendDate(userData.getOrderDate());
+            appendByte(DELIMITER);
+            appendDecimalOrNullLiteral(userData.getAmount());
+            appendByte(DELIMITER);
+
+            // Address aggregates
+            appendIntOrNullLiteral(userData.getAddressCount());
+        } else {
+            // Order data
+            appendInt(userData.getOrderId());
+            appendByte(DELIMITER);
+            appendDate(userData.getOrderDate());
+            appendByte(DELIMITER);
+            appendDecimal(userData.getAmount());
+            appendByte(DELIMITER);
+
+            // Address data
+            appendInt(userData.getAddressId());
+        }
+        appendByte(DELIMITER);
+        appendText(userData.getCity(), true);
+        appendByte(DELIMITER);
+        appendText(userData.getStreet(), true);
+
+        appendBytes(LINE_SEPARATOR);
+    }
+
+    /** Number of encoded bytes not yet written out. */
+    public int size() {
+        return count;
+    }
+
+    /** Writes the encoded bytes to {@code out} and empties the buffer for reuse. */
+    public void writeTo(OutputStream out) throws IOException {
+        if (count > 0) {
+            out.write(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    /**
+     * The encoded bytes as a buffer over the internal array, valid until the next call that
+     * changes the encoder; {@link #clear()} empties it once the bytes are copied out.
+     */
+    public ByteBuffer encoded() {
+        return ByteBuffer.wrap(buf, 0, count);
+    }
+
+    /** Empties the buffer for reuse. */
+    public void clear() {
+        count = 0;
+    }
+
+    private void appendInt(Integer value) {
+        if (value != null) {
+            appendLong(value);
+        }
+    }
+
+    // Mirrors StringBuilder.append(Object), which renders null as "null"
+    private void appendIntOrNullLiteral(Integer value) {
+        if (value == null) {
+            appendBytes(NULL_LITERAL);
+        } else {
+            appendLong(value);
+        }
+    }
+
+    private void appendDecimalOrNullLiteral(BigDecimal value) {
+        if (value == null) {
+            appendBytes(NULL_LITERAL);
+        } else {
+            appendDecimal(value);
+        }
+    }
+
+    private void appendLong(long value) {
+        ensureCapacity(20);
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                appendText(Long.toString(value), false);
+                return;
+            }
+            buf[count++] = '-';
+            value = -value;
+        }
+        appendDigits(value, digitCount(value));
+    }
+
+    /** Writes the last {@code digits} decimal digits of non-negative {@code value}, zero padded. */
+    private void appendDigits(long value, int digits) {
+        ensureCapacity(digits);
+        int end = count + digits;
+        for (int i = end - 1; i >= count; i--) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        count = end;
+    }
+
+    private static int digitCount(long value) {
+        int digits = 1;
+        while (value >= 10) {
+            value /= 10;
+            digits++;
+        }
+        return digits;
+    }
+
+    /** {@code yyyy-MM-dd}, as {@link DateTimeFormatter} prints it for years 1 to 9999. */
+    private void appendDate(LocalDate date) {
+        if (date == null) {
+            return;
+        }
+        int year = date.getYear();
+        if (year < 1 || year > 9999) {
+            appendText(date.format(DATE_FORMATTER), false);
+            return;
+        }
+        ensureCapacity(10);
+        appendDigits(year, 4);
+        buf[count++] = '-';
+        appendDigits(date.getMonthValue(), 2);
+        buf[count++] = '-';
+        appendDigits(date.getDayOfMonth(), 2);
+    }
+
+    /**
+     * Same text as {@link BigDecimal#toString()} for values whose unscaled value fits in a
+     * {@code long} and that print in plain notation: a non-negative scale and an adjusted
+     * exponent of at least -6.
+     */
+    private void appendDecimal(BigDecimal value) {
+        if (value == null) {
+            return;
+        }
+        int scale = value.scale();
+        BigInteger unscaledValue = value.unscaledValue();
+        if (scale < 0 || unscaledValue.bitLength() > 62) {
+            appendText(value.toString(), false);
+            return;
+        }
+        long unscaled = unscaledValue.longValue();
+        long magnitude = Math.abs(unscaled);
+        int digits = digitCount(magnitude);
+        if (digits - 1 - scale < -6) {
+            appendText(value.toString(), false);
+            return;
+        }
+
+        ensureCapacity(digits + scale + 3);
+        if (unscaled < 0) {
+            buf[count++] = '-';
+        }
+        if (scale == 0) {
+            appendDigits(magnitude, digits);
+        } else if (digits > scale) {
+            long divisor = pow10(scale);
+            appendDigits(magnitude / divisor, digits - scale);
+            buf[count++] = '.';
+            appendDigits(magnitude % divisor, scale);
+        } else {
+            buf[count++] = '0';
+            buf[count++] = '.';
+            appendDigits(magnitude, scale);
+        }
+    }
+
+    private static long pow10(int exponent) {
+        long result = 1;
+        for (int i = 0; i < exponent; i++) {
+            result *= 10;
+        }
+        return result;
+    }
+
+    /**
+     * UTF-8 encodes {@code text}; with {@code escape}, quotes are doubled and the field is
+     * wrapped in quotes if it contains the delimiter, a newline or a quote. Unpaired surrogates
+     * become {@code '?'}, as with the JDK's UTF-8 encoder.
+     */
+    private void appendText(String text, boolean escape) {
+        if (text == null) {
+            return;
+        }
+        int length = text.length();
+        // Worst case: every char takes 3 bytes, plus the enclosing quotes
+        ensureCapacity(length * 3 + 2);
+        byte[] b = buf;
+        int start = count;
+        int pos = start;
+        boolean quote = false;
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                if (escape && (c == ',' || c == '\n' || c == '"')) {
+                    quote = true;
+                    if (c == '"') {
+                        b[pos++] = QUOTE;
+                    }
+                }
+                b[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                b[pos++] = (byte) (0xC0 | (c >> 6));
+                b[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                char low = i + 1 < length ? text.charAt(i + 1) : 0;
+                if (Character.isHighSurrogate(c) && Character.isLowSurrogate(low)) {
+                    int codePoint = Character.toCodePoint(c, low);
+                    b[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                    b[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    b[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    b[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+                    i++;
+                } else {
+                    b[pos++] = '?';
+                }
+            } else {
+                b[pos++] = (byte) (0xE0 | (c >> 12));
+                b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        if (quote) {
+            System.arraycopy(b, start, b, start + 1, pos - start);
+            b[start] = QUOTE;
+            pos++;
+            b[pos++] = QUOTE;
+        }
+        count = pos;
+    }
+
+    private void appendByte(byte value) {
+        ensureCapacity(1);
+        buf[count++] = value;
+    }
+
+    private void appendBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buf, count, bytes.length);
+        count += bytes.length;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (count + additional > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + additional));
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.dataexport.writer;
+
+import com.example.dataexport.metrics.ExportMetrics;
+import com.example.dataexport.model.UserData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamWriter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes {@link UserData} rows to a file through a {@link UserDataCsvEncoder}, so rows go from
+ * objects to UTF-8 bytes without intermediate strings, optionally compressed by an
+ * {@link OutputCodec}. The encoded bytes are written out
+ * whenever the buffer passes {@link #FLUSH_THRESHOLD} and at the end of every chunk, and the
+ * stream is flushed before every commit, so a committed chunk is in the file and a failed write
+ * or compression fails the chunk. Only a gzip stream's partial block is held back until the
+ * output is completed.
+ * <p>
+ * With {@link #setCompletionListener}, the output is completed when the step ends rather than
+ * when the writer is closed, so that a failure there fails the step (see
+ * {@link OutputCompletionListener}).
+ * <p>
+ * With {@link #setAsyncOutput}, the file is written through an {@link AsyncOutputStream}: each
+ * chunk's bytes are handed to an I/O thread of its own and the partition thread returns to
+ * reading at once. A committed chunk is then only certain to be in the file once the output is
+ * completed, and a failed write fails the next chunk or, when it only surfaces as the output is
+ * completed, the step through the completion listener.
+ * <p>
+ * The number of distinct users written is kept in the step's execution context under
+ * {@link OutputManifest#WRITTEN_USERS_KEY}. With {@link #setManifest}, the CRC-32 of the bytes
+ * reaching the file is computed as they are written, and the file is recorded in the manifest
+ * when the writer is closed.
+ * <p>
+ * With {@link #setSaveState}, every chunk commit also saves the file offset at which the rows of
+ * the last user written begin. A restarted writer truncates the file to that offset and appends
+ * from there, as the reader resumes at that same user (see
+ * {@link com.example.dataexport.reader.ResumableUserDataReader}). The offset is only meaningful in
+ * the file itself, so this needs uncompressed output written synchronously.
+ * <p>
+ * Each chunk is recorded in {@link ExportMetrics}: the time spent handing bytes to the stream,
+ * the rest of the chunk's time as encoding, and the encoded byte count.
+ */
+public class UserDataCsvItemWriter implements ItemStreamWriter<UserData> {
+
+    private static final Logger log = LoggerFactory.getLogger(UserDataCsvItemWriter.class);
+
+    static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    /** Step execution context key of the restart offset. */
+    public static final String POSITION_KEY = "writer.position";
+
+    private final File file;
+    private final UserDataCsvEncoder encoder;
+    private final boolean writeHeader;
+    private final OutputCodec codec;
+
+    private int asyncBuffers;
+    private int asyncBufferSize;
+    private ThreadFactory asyncThreadFactory;
+
+    private OutputManifest manifest;
+    private boolean saveState;
+    private OutputCompletionListener completionListener;
+
+    private OutputStream out;
+    private AsyncOutputStream asyncOut;
+    private CRC32 crc32;
+    private long rows;
+    private long users;
+    private int firstId;
+    private int lastId;
+    // Bytes handed to the stream, and the offset at which the last user's rows begin
+    private long written;
+    private long userStart = -1;
+    private long outputNanos;
+
+    /**
+     * @param writeHeader start the file with the encoder's header line
+     */
+    public UserDataCsvItemWriter(File file, UserDataCsvEncoder encoder, boolean writeHeader, OutputCodec codec) {
+        this.file = file;
+        this.encoder = encoder;
+        this.writeHeader = writeHeader;
+        this.codec = codec;
+    }
+
+    /**
+     * Writes through a ring of {@code buffers} buffers of {@code bufferSize} bytes drained by a
+     * thread from {@code threadFactory}.
+     */
+    public void setAsyncOutput(int buffers, int bufferSize, ThreadFactory threadFactory) {
+        this.asyncBuffers = buffers;
+        this.asyncBufferSize = bufferSize;
+        this.asyncThreadFactory = threadFactory;
+    }
+
+    /** Checksums the file and records it in {@code manifest}. */
+    public void setManifest(OutputManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    /** Completes the output through {@code completionListener} when the step ends. */
+    public void setCompletionListener(OutputCompletionListener completionListener) {
+        this.completionListener = completionListener;
+    }
+
+    /** Saves the restart offset at every commit and resumes from it when restarted. */
+    public void setSaveState(boolean saveState) {
+        this.saveState = saveState;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        try {
+            rows = 0;
+            users = 0;
+            written = 0;
+            userStart = -1;
+            boolean restarted = saveState && executionContext.containsKey(POSITION_KEY);
+            OutputStream fileOut = restarted ? reopen(executionContext) : new FileOutputStream(file);
+            if (manifest != null) {
+                // Checksums the bytes as stored, after compression
+                crc32 = new CRC32();
+                fileOut = new CheckedOutputStream(fileOut, crc32);
+            }
+            out = codec.encode(fileOut);
+            if (asyncThreadFactory != null) {
+                asyncOut = new AsyncOutputStream(out, asyncBuffers, asyncBufferSize, asyncThreadFactory);
+                out = asyncOut;
+            }
+            if (writeHeader && !restarted) {
+                encoder.encodeHeader();
+                writeEncoded();
+            }
+            if (completionListener != null) {
+                completionListener.register(this::complete);
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to open " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /** Truncates the file left by an interrupted run to the saved offset and appends from there. */
+    private FileOutputStream reopen(ExecutionContext executionContext) throws IOException {
+        long position = executionContext.getLong(POSITION_KEY);
+        FileOutputStream fileOut = new FileOutputStream(file, true);
+        long size = fileOut.getChannel().size();
+        if (size < position) {
+            fileOut.close();
+            throw new IOException("Has " + size + " bytes, fewer than the committed " + position);
+        }
+        fileOut.getChannel().truncate(position);
+        written = position;
+        userStart = position;
+        // The user at the restart offset is written again and counted then
+        users = Math.max(0, executionContext.getLong(OutputManifest.WRITTEN_USERS_KEY, 1L) - 1);
+        log.info("Resuming {} at byte {}", file.getName(), position);
+        return fileOut;
+    }
+
+    @Override
+    public void write(List<? extends UserData> items) throws Exception {
+        long start = System.nanoTime();
+        long writtenBefore = written;
+        outputNanos = 0;
+        for (UserData item : items) {
+            long rowStart = written + encoder.size();
+            encoder.encode(item);
+            countRow(item.getRetUniqueId(), rowStart);
+            if (encoder.size() >= FLUSH_THRESHOLD) {
+                writeEncoded();
+            }
+        }
+        writeEncoded();
+        if (asyncOut != null) {
+            // Send the chunk's tail to disk now instead of with the next chunk
+            asyncOut.publish();
+        }
+        ExportMetrics.recordChunkOutput(System.nanoTime() - start, outputNanos, written - writtenBefore);
+    }
+
+    private void writeEncoded() throws IOException {
+        long start = System.nanoTime();
+        written += encoder.size();
+        encoder.writeTo(out);
+        outputNanos += System.nanoTime() - start;
+    }
+
+    private void countRow(int retUniqueId, long rowStart) {
+        // Rows arrive in id order, so a user's rows are adjacent
+        if (rows == 0) {
+            firstId = retUniqueId;
+            users++;
+            userStart = rowStart;
+        } else if (retUniqueId != lastId) {
+            users++;
+            userStart = rowStart;
+        }
+        lastId = retUniqueId;
+        rows++;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        executionContext.putLong(OutputManifest.WRITTEN_USERS_KEY, users);
+        if (out != null && asyncOut == null) {
+            try {
+                // The chunk, and with it the saved offset, must be in the file when the chunk commits
+                out.flush();
+            } catch (IOException e) {
+                throw new ItemStreamException("Failed to flush " + file.getAbsolutePath(), e);
+            }
+        }
+        if (saveState && userStart >= 0) {
+            executionContext.putLong(POSITION_KEY, userStart);
+        }
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+        try {
+            complete();
+        } catch (IOException e) {
+            throw new ItemStreamException("Failed to close " + file.getAbsolutePath(), e);
+        }
+    }
+
+    /** Writes out the rest of the output and closes it; does nothing once it is closed. */
+    private void complete() throws IOException {
+        if (out == null) {
+            return;
+        }
+        try {
+            writeEncoded();
+            out.close();
+            if (manifest != null) {
+                manifest.add(new OutputManifest.Entry(file.getName(), rows > 0 ? firstId : null,
+                        rows > 0 ? lastId : null, rows, file.length(), crc32.getValue()));
+            }
+        } finally {
+            out = null;
+            asyncOut = null;
+        }
+    }
+}
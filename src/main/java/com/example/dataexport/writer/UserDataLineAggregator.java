@@ -7,12 +7,37 @@ import java.time.format.DateTimeFormatter;
 
 public class UserDataLineAggregator implements LineAggregator<UserData> {
 
+    public static final String HEADER = "ret_unique_id,username,email,order_id,order_date,amount,address_id,city,street";
+    public static final String AGGREGATE_HEADER =
+            "ret_unique_id,username,email,order_count,last_order_date,total_amount,address_count,city,street";
+
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final String DELIMITER = ",";
     private static final String NULL_VALUE = "";
 
+    private final boolean aggregated;
+
+    public UserDataLineAggregator() {
+        this(false);
+    }
+
+    /**
+     * @param aggregated write the per-user aggregate columns of {@link #AGGREGATE_HEADER} instead
+     *                   of one order and one address
+     */
+    public UserDataLineAggregator(boolean aggregated) {
+        this.aggregated = aggregated;
+    }
+
+    public String getHeader() {
+        return aggregated ? AGGREGATE_HEADER : HEADER;
+    }
+
     @Override
     public String aggregate(UserData userData) {
+        if (aggregated) {
+            return aggregateSummary(userData);
+        }
         StringBuilder sb = new StringBuilder();
         
         // User data
@@ -33,6 +58,27 @@ public class UserDataLineAggregator implements LineAggregator<UserData> {
         return sb.toString();
     }
     
+    private String aggregateSummary(UserData userData) {
+        StringBuilder sb = new StringBuilder();
+        
+        // User data
+        sb.append(userData.getRetUniqueId()).append(DELIMITER)
+          .append(escapeField(userData.getUsername())).append(DELIMITER)
+          .append(escapeField(userData.getEmail())).append(DELIMITER);
+        
+        // Order aggregates
+        sb.append(userData.getOrderCount()).append(DELIMITER)
+          .append(userData.getOrderDate() != null ? userData.getOrderDate().format(DATE_FORMATTER) : NULL_VALUE).append(DELIMITER)
+          .append(userData.getAmount()).append(DELIMITER);
+        
+        // Address aggregates
+        sb.append(userData.getAddressCount()).append(DELIMITER)
+          .append(escapeField(userData.getCity())).append(DELIMITER)
+          .append(escapeField(userData.getStreet()));
+        
+        return sb.toString();
+    }
+    
     private String escapeField(String field) {
         if (field == null) {
             return NULL_VALUE;
@@ -0,0 +1,134 @@
+package com.example.dataexport.writer;
+
+import com.example.dataexport.model.UserData;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.conf.ParquetConfiguration;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Types;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Collections;
+
+/**
+ * Writes {@link UserData} rows as Parquet records with typed columns: {@code INT32} ids and
+ * counts, {@code DATE} order dates, {@code DECIMAL} amounts stored as {@code INT64}, and UTF-8
+ * strings. Column names match the CSV header of the same merge mode.
+ */
+public class UserDataWriteSupport extends WriteSupport<UserData> {
+
+    private final boolean aggregated;
+    private final int decimalScale;
+    private final MessageType schema;
+    private RecordConsumer recordConsumer;
+
+    /**
+     * @param decimalPrecision precision of the amount column, at most 18 so it fits an {@code INT64}
+     * @param decimalScale     scale of the amount column; amounts with more decimals are rejected
+     */
+    public UserDataWriteSupport(boolean aggregated, int decimalPrecision, int decimalScale) {
+        if (decimalPrecision < 1 || decimalPrecision > 18) {
+            throw new IllegalArgumentException("Decimal precision must be between 1 and 18: " + decimalPrecision);
+        }
+        this.aggregated = aggregated;
+        this.decimalScale = decimalScale;
+        this.schema = schema(aggregated, decimalPrecision, decimalScale);
+    }
+
+    static MessageType schema(boolean aggregated, int decimalPrecision, int decimalScale) {
+        LogicalTypeAnnotation string = LogicalTypeAnnotation.stringType();
+        LogicalTypeAnnotation date = LogicalTypeAnnotation.dateType();
+        LogicalTypeAnnotation decimal = LogicalTypeAnnotation.decimalType(decimalScale, decimalPrecision);
+        return Types.buildMessage()
+                .required(PrimitiveTypeName.INT32).named("ret_unique_id")
+                .optional(PrimitiveTypeName.BINARY).as(string).named("username")
+                .optional(PrimitiveTypeName.BINARY).as(string).named("email")
+                .optional(PrimitiveTypeName.INT32).named(aggregated ? "order_count" : "order_id")
+                .optional(PrimitiveTypeName.INT32).as(date).named(aggregated ? "last_order_date" : "order_date")
+                .optional(PrimitiveTypeName.INT64).as(decimal).named(aggregated ? "total_amount" : "amount")
+                .optional(PrimitiveTypeName.INT32).named(aggregated ? "address_count" : "address_id")
+                .optional(PrimitiveTypeName.BINARY).as(string).named("city")
+                .optional(PrimitiveTypeName.BINARY).as(string).named("street")
+                .named("user_data");
+    }
+
+    public MessageType getSchema() {
+        return schema;
+    }
+
+    // Still abstract in parquet-mr 1.14, though deprecated for init(ParquetConfiguration) below
+    @SuppressWarnings("deprecation")
+    @Override
+    public WriteContext init(Configuration configuration) {
+        return new WriteContext(schema, Collections.<String, String>emptyMap());
+    }
+
+    @Override
+    public WriteContext init(ParquetConfiguration configuration) {
+        return new WriteContext(schema, Collections.<String, String>emptyMap());
+    }
+
+    @Override
+    public void prepareForWrite(RecordConsumer recordConsumer) {
+        this.recordConsumer = recordConsumer;
+    }
+
+    @Override
+    public void write(UserData userData) {
+        recordConsumer.startMessage();
+        writeInt(0, userData.getRetUniqueId());
+        writeString(1, userData.getUsername());
+        writeString(2, userData.getEmail());
+        writeInt(3, aggregated ? userData.getOrderCount() : userData.getOrderId());
+        writeDate(4, userData.getOrderDate());
+        writeDecimal(5, userData.getAmount());
+        writeInt(6, aggregated ? userData.getAddressCount() : userData.getAddressId());
+        writeString(7, userData.getCity());
+        writeString(8, userData.getStreet());
+        recordConsumer.endMessage();
+    }
+
+    private void writeInt(int index, Integer value) {
+        if (value != null) {
+            String field = schema.getFieldName(index);
+            recordConsumer.startField(field, index);
+            recordConsumer.addInteger(value);
+            recordConsumer.endField(field, index);
+        }
+    }
+
+    private void writeString(int index, String value) {
+        if (value != null) {
+            String field = schema.getFieldName(index);
+            recordConsumer.startField(field, index);
+            recordConsumer.addBinary(Binary.fromString(value));
+            recordConsumer.endField(field, index);
+        }
+    }
+
+    private void writeDate(int index, LocalDate value) {
+        if (value != null) {
+            String field = schema.getFieldName(index);
+            recordConsumer.startField(field, index);
+            // DATE is days since the Unix epoch
+            recordConsumer.addInteger((int) value.toEpochDay());
+            recordConsumer.endField(field, index);
+        }
+    }
+
+    private void writeDecimal(int index, BigDecimal value) {
+        if (value != null) {
+            String field = schema.getFieldName(index);
+            recordConsumer.startField(field, index);
+            // Throws rather than rounding if the source has more decimals than the column
+            recordConsumer.addLong(value.setScale(decimalScale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact());
+            recordConsumer.endField(field, index);
+        }
+    }
+}
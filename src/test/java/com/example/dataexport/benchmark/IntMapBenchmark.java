@@ -0,0 +1,192 @@
+package com.example.dataexport.benchmark;
+
+import com.example.dataexport.model.Order;
+import com.example.dataexport.util.IntMultiMap;
+import com.example.dataexport.util.IntObjectHashMap;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the id index used by the reader merge, {@link IntObjectHashMap}, against
+ * {@code HashMap<Integer, Order>}, and {@link IntMultiMap} against
+ * {@code HashMap<Integer, List<Order>>}, for build time, probe time and retained heap.
+ * <p>
+ * Kept with the tests so it is not shipped in the jar. Run it from the test classpath with a fixed
+ * heap so the GC does not resize mid-run:
+ * <pre>
+ * mvn test-compile
+ * java -Xms4g -Xmx4g -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *     com.example.dataexport.benchmark.IntMapBenchmark 1000000 10000000
+ * </pre>
+ * Heap figures are the used-heap difference around building the index after full GCs, so they
+ * exclude the {@link Order} rows themselves, which both sides share. Every probe result is summed
+ * into {@code sink}, a volatile field printed at the end, so the JIT cannot drop the probes or
+ * the maps they read.
+ */
+public class IntMapBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length > 0 ? new int[args.length] : new int[]{1_000_000, 10_000_000};
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        for (int size : sizes) {
+            run(size);
+        }
+        System.out.println("Probe checksum: " + sink);
+    }
+
+    private static void run(int rows) {
+        // Ids are a shuffled, gappy range like ret_unique_id; one order per id for the single-value
+        // maps, and two per key (id / 6) for the multi-value maps
+        Random random = new Random(42);
+        Order[] orders = new Order[rows];
+        for (int i = 0; i < rows; i++) {
+            Order order = new Order();
+            order.setOrderId(i);
+            order.setRetUniqueId(1_000_000 + i * 3);
+            order.setAmount(BigDecimal.ONE);
+            orders[i] = order;
+        }
+        for (int i = rows - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Order swap = orders[i];
+            orders[i] = orders[j];
+            orders[j] = swap;
+        }
+        int[] probes = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            probes[i] = orders[random.nextInt(rows)].getRetUniqueId();
+        }
+
+        System.out.println("Rows: " + rows);
+        report("HashMap<Integer, Order>", measure(() -> {
+            Map<Integer, Order> map = new HashMap<>();
+            for (Order order : orders) {
+                map.put(order.getRetUniqueId(), order);
+            }
+            return map;
+        }, map -> {
+            long hits = 0;
+            for (int id : probes) {
+                if (map.get(id) != null) {
+                    hits++;
+                }
+            }
+            return hits;
+        }));
+        report("IntObjectHashMap<Order>", measure(() -> {
+            IntObjectHashMap<Order> map = new IntObjectHashMap<>();
+            for (Order order : orders) {
+                map.put(order.getRetUniqueId(), order);
+            }
+            return map;
+        }, map -> {
+            long hits = 0;
+            for (int id : probes) {
+                if (map.get(id) != null) {
+                    hits++;
+                }
+            }
+            return hits;
+        }));
+        report("HashMap<Integer, List<Order>>", measure(() -> {
+            Map<Integer, List<Order>> map = new HashMap<>();
+            for (Order order : orders) {
+                map.computeIfAbsent(order.getRetUniqueId() / 6, id -> new ArrayList<>()).add(order);
+            }
+            return map;
+        }, map -> {
+            long hits = 0;
+            for (int id : probes) {
+                List<Order> values = map.get(id / 6);
+                if (values != null) {
+                    hits += values.size();
+                }
+            }
+            return hits;
+        }));
+        report("IntMultiMap<Order>", measure(() -> {
+            IntMultiMap<Order> map = new IntMultiMap<>();
+            for (Order order : orders) {
+                map.put(order.getRetUniqueId() / 6, order);
+            }
+            return map;
+        }, map -> {
+            long hits = 0;
+            for (int id : probes) {
+                for (int e = map.first(id / 6); e != IntMultiMap.NONE; e = map.next(e)) {
+                    hits++;
+                }
+            }
+            return hits;
+        }));
+        System.out.println();
+    }
+
+    private interface Builder<M> {
+        M build();
+    }
+
+    private interface Prober<M> {
+        long probe(M map);
+    }
+
+    private static final class Result {
+        final long buildNanos;
+        final long probeNanos;
+        final long retainedBytes;
+
+        Result(long buildNanos, long probeNanos, long retainedBytes) {
+            this.buildNanos = buildNanos;
+            this.probeNanos = probeNanos;
+            this.retainedBytes = retainedBytes;
+        }
+    }
+
+    /** Best-of-N build and probe times after warm-up, plus the heap retained by one built index. */
+    private static <M> Result measure(Builder<M> builder, Prober<M> prober) {
+        long bestBuild = Long.MAX_VALUE;
+        long bestProbe = Long.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            M map = builder.build();
+            long built = System.nanoTime();
+            sink += prober.probe(map);
+            long probed = System.nanoTime();
+            if (round >= WARMUP_ROUNDS) {
+                bestBuild = Math.min(bestBuild, built - start);
+                bestProbe = Math.min(bestProbe, probed - built);
+            }
+        }
+
+        long before = usedHeap();
+        M retained = builder.build();
+        long after = usedHeap();
+        sink += prober.probe(retained);
+        return new Result(bestBuild, bestProbe, after - before);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String name, Result result) {
+        System.out.printf("  %-32s build %7.1f ms   probe %7.1f ms   heap %8.1f MB%n",
+                name, result.buildNanos / 1e6, result.probeNanos / 1e6, result.retainedBytes / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.dataexport.benchmark;
+
+import com.example.dataexport.util.ConcurrencyGovernor;
+import com.example.dataexport.util.VirtualThreads;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the platform-thread execution path with {@code app.virtual-threads.enabled} on a
+ * simulated export: every partition walks its windows, each costing one blocking users query on
+ * the partition thread and an orders and an addresses lookup on the fetch executor. Every query
+ * is a real JDBC round trip through a HikariCP pool of {@code dbLimit} connections that makes the
+ * server wait for a fixed latency, so the driver's locking is part of what is measured.
+ * <p>
+ * Against MySQL the query is {@code SELECT SLEEP(latency)}; this is the measurement that counts,
+ * since it shows whether the driver pins virtual threads to their carriers. Without a JDBC URL it
+ * falls back to an in-memory H2 database whose sleep runs inside the embedded engine, which is
+ * useful to check the harness but synchronizes on the session like an old driver would.
+ * <p>
+ * Both paths run partitions on a {@link SimpleAsyncTaskExecutor} limited to the same partition
+ * concurrency, as {@code BatchConfig} does. The platform path fetches on a fixed pool of
+ * {@code dbLimit} threads; the virtual path starts a virtual thread per lookup and caps the
+ * queries with a fixed {@link ConcurrencyGovernor} of {@code dbLimit} permits. Peak threads are
+ * platform threads as reported by the JVM, which do not include virtual threads.
+ * <p>
+ * Kept with the tests so it is not shipped in the jar:
+ * <pre>
+ * mvn test-compile
+ * java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *     com.example.dataexport.benchmark.ThreadModeBenchmark 2000 256,2000 20 5 64 \
+ *     'jdbc:mysql://localhost:3306/test?useSSL=false&allowPublicKeyRetrieval=true' user password
+ * </pre>
+ * Arguments: partitions, comma-separated partition concurrencies, windows per partition, query
+ * latency in milliseconds, {@code dbLimit}, and optionally the JDBC URL, user and password. The
+ * virtual path needs Java 21 and is skipped on older runtimes.
+ */
+public class ThreadModeBenchmark {
+
+    private static final int WARMUP_ROUNDS = 1;
+    private static final int MEASURED_ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int partitions = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        String[] concurrencies = (args.length > 1 ? args[1] : "256,2000").split(",");
+        int windows = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        long latencyMillis = args.length > 3 ? Long.parseLong(args[3]) : 5;
+        int dbLimit = args.length > 4 ? Integer.parseInt(args[4]) : 64;
+        String url = args.length > 5 ? args[5] : "jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1";
+        String user = args.length > 6 ? args[6] : "sa";
+        String password = args.length > 7 ? args[7] : "";
+        // Without the application's logging setup the executor's throttle logs every task at DEBUG
+        LoggingSystem.get(ThreadModeBenchmark.class.getClassLoader())
+                .setLogLevel(LoggingSystem.ROOT_LOGGER_NAME, LogLevel.INFO);
+
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setUsername(user);
+        config.setPassword(password);
+        config.setMaximumPoolSize(dbLimit);
+        config.setMinimumIdle(dbLimit);
+        config.setConnectionTimeout(600_000);
+        try (HikariDataSource dataSource = new HikariDataSource(config)) {
+            RoundTrip roundTrip = new RoundTrip(dataSource, latencyMillis);
+            System.out.println("Partitions: " + partitions + ", windows: " + windows + ", latency: " + latencyMillis
+                    + " ms, db limit: " + dbLimit + ", Java " + System.getProperty("java.version") + ", "
+                    + roundTrip.describe());
+            for (String concurrency : concurrencies) {
+                int partitionConcurrency = Integer.parseInt(concurrency.trim());
+                System.out.println("Partition concurrency: " + partitionConcurrency);
+                report("platform threads", measure(false, partitions, partitionConcurrency, windows, roundTrip, dbLimit));
+                if (VirtualThreads.isAvailable()) {
+                    report("virtual threads", measure(true, partitions, partitionConcurrency, windows, roundTrip, dbLimit));
+                } else {
+                    System.out.println("  virtual threads                  skipped, needs Java 21");
+                }
+            }
+        }
+    }
+
+    /** One blocking query that keeps its connection busy for the latency on the server. */
+    private static final class RoundTrip {
+        private final DataSource dataSource;
+        private final String sql;
+        private final Object argument;
+
+        RoundTrip(DataSource dataSource, long latencyMillis) throws SQLException {
+            this.dataSource = dataSource;
+            try (Connection connection = dataSource.getConnection()) {
+                String product = connection.getMetaData().getDatabaseProductName();
+                if (product.startsWith("MySQL")) {
+                    sql = "SELECT SLEEP(?)";
+                    argument = latencyMillis / 1000.0;
+                } else if (product.equals("H2")) {
+                    try (Statement statement = connection.createStatement()) {
+                        statement.execute("CREATE ALIAS IF NOT EXISTS BENCH_SLEEP FOR \"java.lang.Thread.sleep(long)\"");
+                    }
+                    sql = "SELECT BENCH_SLEEP(?)";
+                    argument = latencyMillis;
+                } else {
+                    throw new SQLException("No sleep query for " + product);
+                }
+            }
+        }
+
+        void run() throws SQLException {
+            try (Connection connection = dataSource.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setObject(1, argument);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        // Drain the single row like a real lookup would
+                    }
+                }
+            }
+        }
+
+        String describe() throws SQLException {
+            try (Connection connection = dataSource.getConnection()) {
+                return connection.getMetaData().getDatabaseProductName() + " via "
+                        + connection.getMetaData().getDriverName() + " " + connection.getMetaData().getDriverVersion();
+            }
+        }
+    }
+
+    private static final class Result {
+        final long nanos;
+        final long queries;
+        final int peakThreads;
+
+        Result(long nanos, long queries, int peakThreads) {
+            this.nanos = nanos;
+            this.queries = queries;
+            this.peakThreads = peakThreads;
+        }
+    }
+
+    /** Best-of-N wall time after warm-up, with the peak platform thread count of that round. */
+    private static Result measure(boolean virtual, int partitions, int partitionConcurrency, int windows,
+                                  RoundTrip roundTrip, int dbLimit) throws Exception {
+        Result best = null;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            Result result = runOnce(virtual, partitions, partitionConcurrency, windows, roundTrip, dbLimit);
+            if (round >= WARMUP_ROUNDS && (best == null || result.nanos < best.nanos)) {
+                best = result;
+            }
+        }
+        return best;
+    }
+
+    private static Result runOnce(boolean virtual, int partitions, int partitionConcurrency, int windows,
+                                  RoundTrip roundTrip, int dbLimit) throws Exception {
+        SimpleAsyncTaskExecutor partitionExecutor = new SimpleAsyncTaskExecutor("spring_batch");
+        partitionExecutor.setConcurrencyLimit(partitionConcurrency);
+        ExecutorService fetchExecutor;
+        ConcurrencyGovernor governor = null;
+        if (virtual) {
+            partitionExecutor.setThreadFactory(VirtualThreads.factory("spring_batch"));
+            fetchExecutor = VirtualThreads.newThreadPerTaskExecutor(VirtualThreads.factory("child_fetch"));
+            governor = new ConcurrencyGovernor(dbLimit, dbLimit, dbLimit, 2.0, 0.75, 0, () -> 0);
+        } else {
+            fetchExecutor = Executors.newFixedThreadPool(dbLimit, new CustomizableThreadFactory("child_fetch"));
+        }
+        ConcurrencyGovernor fetchGovernor = governor;
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        AtomicLong queries = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(partitions);
+        long start = System.nanoTime();
+        try {
+            for (int p = 0; p < partitions; p++) {
+                partitionExecutor.execute(() -> {
+                    try {
+                        for (int w = 0; w < windows; w++) {
+                            query(roundTrip, queries);
+                            CompletableFuture<Void> orders = CompletableFuture.runAsync(
+                                    () -> lookup(fetchGovernor, roundTrip, queries), fetchExecutor);
+                            CompletableFuture<Void> addresses = CompletableFuture.runAsync(
+                                    () -> lookup(fetchGovernor, roundTrip, queries), fetchExecutor);
+                            orders.join();
+                            addresses.join();
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+            return new Result(System.nanoTime() - start, queries.get(), threads.getPeakThreadCount());
+        } finally {
+            fetchExecutor.shutdown();
+        }
+    }
+
+    private static void lookup(ConcurrencyGovernor governor, RoundTrip roundTrip, AtomicLong queries) {
+        if (governor == null) {
+            query(roundTrip, queries);
+            return;
+        }
+        try {
+            governor.call(() -> {
+                query(roundTrip, queries);
+                return null;
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void query(RoundTrip roundTrip, AtomicLong queries) {
+        try {
+            roundTrip.run();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Benchmark query failed", e);
+        }
+        queries.incrementAndGet();
+    }
+
+    private static void report(String name, Result result) {
+        System.out.printf("  %-32s wall %8.1f ms   %9.0f queries/s   peak threads %5d%n",
+                name, result.nanos / 1e6, result.queries / (result.nanos / 1e9), result.peakThreads);
+    }
+}
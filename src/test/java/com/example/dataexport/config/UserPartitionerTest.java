@@ -0,0 +1,177 @@
+package com.example.dataexport.config;
+
+import com.example.dataexport.delta.ChangedUserIds;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserPartitionerTest {
+
+    private static final int[] GRID_SIZES = {1, 3, 8, 64};
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private final ChangedUserIds changedUserIds = new ChangedUserIds();
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder().generateUniqueName(true).setType(EmbeddedDatabaseType.H2)
+                .addScript("classpath:export-test-data.sql").build();
+        jdbcTemplate = new JdbcTemplate(database);
+        // Skew: 500 users spread over 3..1500, 3000 packed right above them, two far out at the
+        // top of the id space, and one user with most of the orders
+        jdbcTemplate.update("INSERT INTO users (ret_unique_id, username, email)"
+                + " SELECT 10000 + X, 'dense' || X, 'd' || X || '@example.com' FROM SYSTEM_RANGE(1, 3000)");
+        jdbcTemplate.update("INSERT INTO users (ret_unique_id, username, email) VALUES"
+                + " (1000000000, 'far', 'far@example.com'), (2147483647, 'last', 'last@example.com')");
+        jdbcTemplate.update("INSERT INTO orders (order_id, ret_unique_id, order_date, amount)"
+                + " SELECT 1000 + X, 3, DATE '2024-06-01', 1.00 FROM SYSTEM_RANGE(1, 5000)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void rangePartitionsCoverTheIdSpace() {
+        for (int gridSize : GRID_SIZES) {
+            assertCoversAllIds(partitioner(UserPartitioner.Strategy.RANGE, UserIdHistogram.Source.NTILE, false)
+                    .partition(gridSize));
+        }
+    }
+
+    @Test
+    void ntileHistogramPartitionsCoverTheIdSpace() {
+        for (int gridSize : GRID_SIZES) {
+            assertCoversAllIds(partitioner(UserPartitioner.Strategy.HISTOGRAM, UserIdHistogram.Source.NTILE, false)
+                    .partition(gridSize));
+            assertCoversAllIds(partitioner(UserPartitioner.Strategy.HISTOGRAM, UserIdHistogram.Source.NTILE, true)
+                    .partition(gridSize));
+        }
+    }
+
+    @Test
+    void sampledHistogramPartitionsCoverTheIdSpace() {
+        for (int gridSize : GRID_SIZES) {
+            assertCoversAllIds(partitioner(UserPartitioner.Strategy.HISTOGRAM, UserIdHistogram.Source.SAMPLE, false)
+                    .partition(gridSize));
+            assertCoversAllIds(partitioner(UserPartitioner.Strategy.HISTOGRAM, UserIdHistogram.Source.SAMPLE, true)
+                    .partition(gridSize));
+        }
+    }
+
+    @Test
+    void ntileHistogramBalancesUsersOverSkewedIds() {
+        Map<String, ExecutionContext> partitions =
+                partitioner(UserPartitioner.Strategy.HISTOGRAM, UserIdHistogram.Source.NTILE, false).partition(4);
+
+        int users = countUsers(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        assertThat(partitions).hasSize(4);
+        // Boundaries fall on buckets of users / 64 rows
+        for (ExecutionContext context : partitions.values()) {
+            assertThat(countUsers(context.getInt("minValue"), context.getInt("maxValue")))
+                    .isBetween(users / 4 - users / 64, users / 4 + users / 64);
+        }
+    }
+
+    @Test
+    void childRowWeightsGiveTheHeavyUserAPartitionOfItsOwn() {
+        Map<String, ExecutionContext> partitions =
+                partitioner(UserPartitioner.Strategy.HISTOGRAM, UserIdHistogram.Source.NTILE, true).partition(4);
+
+        ExecutionContext first = sorted(partitions).get(0);
+        assertThat(first.getInt("minValue")).isEqualTo(3);
+        // User 3's 5000 orders outweigh a quarter of all users, orders and addresses
+        assertThat(countUsers(first.getInt("minValue"), first.getInt("maxValue"))).isLessThan(100);
+    }
+
+    @Test
+    void moreGridSlotsThanUsersStillCoverEveryId() {
+        jdbcTemplate.update("DELETE FROM users WHERE ret_unique_id NOT IN (3, 6, 2147483647)");
+
+        for (UserIdHistogram.Source source : UserIdHistogram.Source.values()) {
+            Map<String, ExecutionContext> partitions =
+                    partitioner(UserPartitioner.Strategy.HISTOGRAM, source, true).partition(8);
+            assertCoversAllIds(partitions);
+            assertThat(partitions.size()).isLessThanOrEqualTo(3);
+        }
+        assertCoversAllIds(partitioner(UserPartitioner.Strategy.RANGE, UserIdHistogram.Source.NTILE, false)
+                .partition(8));
+    }
+
+    @Test
+    void changedIdsAreEachInExactlyOnePartition() {
+        int[] ids = {3, 4, 10, 11, 12, 500, 10001, 2147483647};
+        changedUserIds.select(ids);
+
+        for (int gridSize : new int[] {1, 3, 8, 64}) {
+            List<ExecutionContext> partitions = sorted(
+                    partitioner(UserPartitioner.Strategy.RANGE, UserIdHistogram.Source.NTILE, false).partition(gridSize));
+
+            assertThat(partitions).hasSize(Math.min(gridSize, ids.length));
+            long weight = 0;
+            for (int i = 0; i < partitions.size(); i++) {
+                ExecutionContext context = partitions.get(i);
+                assertThat(context.getInt("minValue")).isLessThanOrEqualTo(context.getInt("maxValue"));
+                if (i > 0) {
+                    assertThat(context.getInt("minValue")).isGreaterThan(partitions.get(i - 1).getInt("maxValue"));
+                }
+                weight += context.getLong("weight");
+            }
+            assertThat(weight).isEqualTo(ids.length);
+            for (int id : ids) {
+                assertThat(partitions).filteredOn(context -> context.getInt("minValue") <= id
+                        && id <= context.getInt("maxValue")).hasSize(1);
+            }
+        }
+    }
+
+    private UserPartitioner partitioner(UserPartitioner.Strategy strategy, UserIdHistogram.Source source,
+                                        boolean weightChildRows) {
+        return new UserPartitioner(database, changedUserIds, strategy, source, 16, 0.5, weightChildRows);
+    }
+
+    /** Asserts that the ranges are non-empty, contiguous and span exactly MIN..MAX of the users. */
+    private void assertCoversAllIds(Map<String, ExecutionContext> partitions) {
+        List<ExecutionContext> ranges = sorted(partitions);
+        assertThat(ranges).isNotEmpty();
+        assertThat(ranges.get(0).getInt("minValue"))
+                .isEqualTo(jdbcTemplate.queryForObject("SELECT MIN(ret_unique_id) FROM users", Integer.class));
+        assertThat(ranges.get(ranges.size() - 1).getInt("maxValue"))
+                .isEqualTo(jdbcTemplate.queryForObject("SELECT MAX(ret_unique_id) FROM users", Integer.class));
+        int users = 0;
+        for (int i = 0; i < ranges.size(); i++) {
+            ExecutionContext range = ranges.get(i);
+            assertThat(range.getInt("minValue")).isLessThanOrEqualTo(range.getInt("maxValue"));
+            if (i > 0) {
+                assertThat((long) range.getInt("minValue")).isEqualTo(ranges.get(i - 1).getInt("maxValue") + 1L);
+            }
+            users += countUsers(range.getInt("minValue"), range.getInt("maxValue"));
+        }
+        assertThat(users).isEqualTo(countUsers(Integer.MIN_VALUE, Integer.MAX_VALUE));
+    }
+
+    private int countUsers(int minId, int maxId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users WHERE ret_unique_id BETWEEN ? AND ?",
+                Integer.class, minId, maxId);
+    }
+
+    private static List<ExecutionContext> sorted(Map<String, ExecutionContext> partitions) {
+        List<ExecutionContext> ranges = new ArrayList<>(partitions.values());
+        ranges.sort((a, b) -> Integer.compare(a.getInt("minValue"), b.getInt("minValue")));
+        return ranges;
+    }
+}
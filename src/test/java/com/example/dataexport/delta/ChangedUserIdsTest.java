@@ -0,0 +1,39 @@
+package com.example.dataexport.delta;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChangedUserIdsTest {
+
+    private final ChangedUserIds changedUserIds = new ChangedUserIds();
+
+    @Test
+    void betweenIncludesBothBounds() {
+        changedUserIds.select(new int[]{3, 6, 9, 12});
+
+        assertThat(changedUserIds.between(6, 9)).containsExactly(6, 9);
+        assertThat(changedUserIds.between(4, 11)).containsExactly(6, 9);
+        assertThat(changedUserIds.between(7, 8)).isEmpty();
+        assertThat(changedUserIds.between(13, 20)).isEmpty();
+    }
+
+    @Test
+    void betweenUpToIntegerMaxValueDoesNotOverflow() {
+        changedUserIds.select(new int[]{Integer.MIN_VALUE, -1, 0, 5, Integer.MAX_VALUE});
+
+        assertThat(changedUserIds.between(0, Integer.MAX_VALUE)).containsExactly(0, 5, Integer.MAX_VALUE);
+        assertThat(changedUserIds.between(Integer.MIN_VALUE, Integer.MAX_VALUE)).hasSize(5);
+        assertThat(changedUserIds.between(Integer.MAX_VALUE, Integer.MAX_VALUE)).containsExactly(Integer.MAX_VALUE);
+    }
+
+    @Test
+    void clearEndsTheSelection() {
+        changedUserIds.select(new int[0]);
+        assertThat(changedUserIds.isSelected()).isTrue();
+        assertThat(changedUserIds.between(0, Integer.MAX_VALUE)).isEmpty();
+
+        changedUserIds.clear();
+        assertThat(changedUserIds.isSelected()).isFalse();
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.dataexport.partition;
+
+import com.example.dataexport.runner.JobRunner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the whole job with {@code app.partitioning.mode=remote}, a manager that is its own worker
+ * and the in-process queue, against an in-memory H2 database in MySQL mode.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:remote-source;MODE=MySQL;DB_CLOSE_DELAY=-1;"
+                + "INIT=RUNSCRIPT FROM 'classpath:export-test-data.sql'",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.batch.datasource.url=jdbc:h2:mem:remote-batch;DB_CLOSE_DELAY=-1",
+        "app.partitioning.mode=remote",
+        "app.partitioning.remote.role=both",
+        "app.partitioning.remote.transport=in-process",
+        "app.partitioning.remote.partitions=8",
+        "app.partitioning.remote.poll-interval-millis=100",
+        "app.partitioning.remote.timeout-millis=60000",
+        "app.chunk-size=50"
+})
+class RemotePartitioningInProcessTest {
+
+    @TempDir
+    static File outputDir;
+
+    /** Keeps the command line runner from launching the job and exiting the JVM. */
+    @MockBean
+    private JobRunner jobRunner;
+
+    @Autowired
+    private JobLauncher jobLauncher;
+
+    @Autowired
+    private Job exportUserDataJob;
+
+    @Autowired
+    private JobExplorer jobExplorer;
+
+    @DynamicPropertySource
+    static void outputFile(DynamicPropertyRegistry registry) {
+        registry.add("app.output.file", () -> new File(outputDir, "users_data.csv").getAbsolutePath());
+    }
+
+    @Test
+    void managerRunsEveryPartitionThroughTheQueue() throws Exception {
+        JobExecution jobExecution = jobLauncher.run(exportUserDataJob,
+                new JobParametersBuilder().addDate("startTime", new Date()).toJobParameters());
+
+        assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        // The workers' results, as the manager read them back from the job repository
+        List<StepExecution> partitions = jobExplorer.getJobExecution(jobExecution.getId()).getStepExecutions().stream()
+                .filter(step -> step.getStepName().startsWith("slaveStep:"))
+                .collect(Collectors.toList());
+        assertThat(partitions).hasSizeGreaterThanOrEqualTo(8)
+                .allSatisfy(step -> assertThat(step.getStatus()).isEqualTo(BatchStatus.COMPLETED));
+
+        List<String> lines = Files.readAllLines(new File(outputDir, "users_data.csv").toPath(), StandardCharsets.UTF_8);
+        assertThat(lines.get(0)).startsWith("ret_unique_id,");
+        List<Integer> ids = lines.subList(1, lines.size()).stream()
+                .map(line -> Integer.parseInt(line.substring(0, line.indexOf(','))))
+                .collect(Collectors.toList());
+        // Every user, in id order across the assembled segments
+        assertThat(ids).isSorted();
+        assertThat(ids.stream().distinct().count()).isEqualTo(500);
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.dataexport.partition;
+
+import com.example.dataexport.reader.ResumableUserDataReader;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInterruptedException;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.explore.support.JobExplorerFactoryBean;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class WorkStealingPartitionHandlerTest {
+
+    private static final String STEP_NAME = "slaveStep";
+    private static final String VICTIM = STEP_NAME + ":partition0";
+
+    private EmbeddedDatabase database;
+    private JobRepository jobRepository;
+    private JobExplorer jobExplorer;
+    private final PartitionRangeRegistry rangeRegistry = new PartitionRangeRegistry();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        database = new EmbeddedDatabaseBuilder().generateUniqueName(true).setType(EmbeddedDatabaseType.H2)
+                .addScript("/org/springframework/batch/core/schema-h2.sql").build();
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(database);
+        JobRepositoryFactoryBean repositoryFactory = new JobRepositoryFactoryBean();
+        repositoryFactory.setDataSource(database);
+        repositoryFactory.setTransactionManager(transactionManager);
+        repositoryFactory.afterPropertiesSet();
+        jobRepository = repositoryFactory.getObject();
+        JobExplorerFactoryBean explorerFactory = new JobExplorerFactoryBean();
+        explorerFactory.setDataSource(database);
+        explorerFactory.afterPropertiesSet();
+        jobExplorer = explorerFactory.getObject();
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void crashBeforeTheSplitIsAddedRecreatesItOnRestart() throws Exception {
+        // The run dies after the victim's narrowed bound is saved but before the split exists
+        JobRepository crashingRepository = (JobRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{JobRepository.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("add") && ((StepExecution) args[0]).getStepName().contains("-s")) {
+                        throw new IllegalStateException("Simulated crash");
+                    }
+                    try {
+                        return method.invoke(jobRepository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        JobExecution firstRun = jobRepository.createJobExecution("exportUserDataJob", new JobParameters());
+        assertThatThrownBy(() -> runFirstPartition(firstRun, crashingRepository)).hasRootCauseMessage("Simulated crash");
+        endRun(firstRun);
+
+        Map<String, int[]> resumed = restart();
+        assertThat(resumed).containsOnlyKeys(VICTIM, VICTIM + "-s" + firstRun.getId() + ".1");
+        assertContiguous(resumed);
+    }
+
+    @Test
+    void crashAfterTheSplitIsAddedResumesEachRangeOnce() throws Exception {
+        JobExecution firstRun = jobRepository.createJobExecution("exportUserDataJob", new JobParameters());
+        runFirstPartition(firstRun, jobRepository);
+        endRun(firstRun);
+
+        // The split may have been split again while the victim stalled
+        Map<String, int[]> resumed = restart();
+        assertThat(resumed).containsKeys(VICTIM, VICTIM + "-s" + firstRun.getId() + ".1");
+        assertContiguous(resumed);
+    }
+
+    @Test
+    void splitBeforeTheFirstClaimOfARestartedReaderKeepsTheResumedIds() throws Exception {
+        // The first run read up to user 600 and died
+        JobExecution firstRun = jobRepository.createJobExecution("exportUserDataJob", new JobParameters());
+        Step interrupted = new StubStep() {
+            @Override
+            public void execute(StepExecution stepExecution) {
+                stepExecution.getExecutionContext().putInt(ResumableUserDataReader.RESUME_ID_KEY, 600);
+                jobRepository.updateExecutionContext(stepExecution);
+                stepExecution.setStatus(BatchStatus.FAILED);
+                stepExecution.setEndTime(new Date());
+                jobRepository.update(stepExecution);
+            }
+        };
+        new WorkStealingPartitionHandler(interrupted, new SimpleAsyncTaskExecutor(), jobRepository, rangeRegistry, 1, 10)
+                .handle(new RestartableStepExecutionSplitter(jobRepository, jobExplorer, STEP_NAME, onePartition()),
+                        managerStep(firstRun));
+        endRun(firstRun);
+
+        // On the restart the victim is split before its reader, resuming at 600, claims anything
+        Map<String, int[]> ranges = new ConcurrentHashMap<>();
+        Step resumed = new StubStep() {
+            @Override
+            public void execute(StepExecution stepExecution) {
+                PartitionRange range = rangeRegistry.get(stepExecution.getStepName());
+                if (stepExecution.getStepName().equals(VICTIM)) {
+                    range.enableSplitting();
+                    long deadline = System.currentTimeMillis() + 5000;
+                    while (range.getMaxValue() == 1000 && System.currentTimeMillis() < deadline) {
+                        Thread.yield();
+                    }
+                }
+                ranges.put(stepExecution.getStepName(), new int[]{range.getMinValue(), range.getMaxValue()});
+                stepExecution.setStatus(BatchStatus.COMPLETED);
+                stepExecution.setEndTime(new Date());
+                jobRepository.update(stepExecution);
+            }
+        };
+        JobExecution secondRun = jobRepository.createJobExecution("exportUserDataJob", new JobParameters());
+        new WorkStealingPartitionHandler(resumed, new SimpleAsyncTaskExecutor(), jobRepository, rangeRegistry, 2, 10)
+                .handle(new RestartableStepExecutionSplitter(jobRepository, jobExplorer, STEP_NAME, onePartition()),
+                        managerStep(secondRun));
+
+        // The first split takes half of the ids after the checkpoint; later ones, taken while the
+        // victim still stalled, split what it had left
+        String split = VICTIM + "-s" + secondRun.getId() + ".1";
+        assertThat(ranges).containsKeys(VICTIM, split);
+        assertThat(ranges.get(split)).containsExactly(800, 1000);
+        assertContiguous(ranges);
+        // None of them holds ids the victim's output already has
+        assertThat(ranges.get(VICTIM)[1]).isGreaterThanOrEqualTo(600);
+    }
+
+    /**
+     * Runs one partition over ids 1..1000 whose reader claims the first 100 ids and then stalls
+     * until the other worker has split it. Every partition step then fails, as a killed run would
+     * leave it, without committing again.
+     */
+    private void runFirstPartition(JobExecution jobExecution, JobRepository handlerRepository) throws Exception {
+        Step step = new StubStep() {
+            @Override
+            public void execute(StepExecution stepExecution) throws JobInterruptedException {
+                PartitionRange range = rangeRegistry.get(stepExecution.getStepName());
+                if (stepExecution.getStepName().equals(VICTIM)) {
+                    range.enableSplitting();
+                    for (int id = 1; id <= 100; id++) {
+                        range.claim(id);
+                    }
+                    long deadline = System.currentTimeMillis() + 5000;
+                    while (range.getMaxValue() == 1000 && System.currentTimeMillis() < deadline) {
+                        Thread.yield();
+                    }
+                }
+                stepExecution.setStatus(BatchStatus.FAILED);
+                stepExecution.setEndTime(new Date());
+                jobRepository.update(stepExecution);
+            }
+        };
+        WorkStealingPartitionHandler handler = new WorkStealingPartitionHandler(step, new SimpleAsyncTaskExecutor(),
+                handlerRepository, rangeRegistry, 2, 10);
+        StepExecution manager = managerStep(jobExecution);
+        handler.handle(new RestartableStepExecutionSplitter(jobRepository, jobExplorer, STEP_NAME, onePartition()),
+                manager);
+    }
+
+    /** Fails the run so the job instance can be restarted. */
+    private void endRun(JobExecution jobExecution) {
+        jobExecution.setStatus(BatchStatus.FAILED);
+        jobExecution.setEndTime(new Date());
+        jobRepository.update(jobExecution);
+    }
+
+    /** The id ranges the restarted run gives its partitions, by step name. */
+    private Map<String, int[]> restart() throws Exception {
+        JobExecution secondRun = jobRepository.createJobExecution("exportUserDataJob", new JobParameters());
+        Set<StepExecution> partitions = new RestartableStepExecutionSplitter(jobRepository, jobExplorer, STEP_NAME,
+                onePartition()).split(managerStep(secondRun), 1);
+        Map<String, int[]> ranges = new TreeMap<>();
+        for (StepExecution partition : partitions) {
+            ExecutionContext context = partition.getExecutionContext();
+            ranges.put(partition.getStepName(), new int[]{context.getInt("minValue"), context.getInt("maxValue")});
+        }
+        return ranges;
+    }
+
+    /** The ranges cover ids 1..1000 exactly once, with the victim keeping the ids it claimed. */
+    private static void assertContiguous(Map<String, int[]> ranges) {
+        assertThat(ranges.get(VICTIM)[0]).isEqualTo(1);
+        assertThat(ranges.get(VICTIM)[1]).isBetween(100, 999);
+        List<int[]> byMin = new ArrayList<>(ranges.values());
+        byMin.sort(Comparator.comparingInt(range -> range[0]));
+        int next = 1;
+        for (int[] range : byMin) {
+            assertThat(range[0]).isEqualTo(next);
+            next = range[1] + 1;
+        }
+        assertThat(next).isEqualTo(1001);
+    }
+
+    private StepExecution managerStep(JobExecution jobExecution) {
+        StepExecution manager = jobExecution.createStepExecution(STEP_NAME + ".manager");
+        jobRepository.add(manager);
+        return manager;
+    }
+
+    private static Partitioner onePartition() {
+        return gridSize -> {
+            ExecutionContext context = new ExecutionContext();
+            context.putInt("minValue", 1);
+            context.putInt("maxValue", 1000);
+            return Collections.singletonMap("partition0", context);
+        };
+    }
+
+    private abstract static class StubStep implements Step {
+        @Override
+        public String getName() {
+            return STEP_NAME;
+        }
+
+        @Override
+        public boolean isAllowStartIfComplete() {
+            return false;
+        }
+
+        @Override
+        public int getStartLimit() {
+            return Integer.MAX_VALUE;
+        }
+    }
+}
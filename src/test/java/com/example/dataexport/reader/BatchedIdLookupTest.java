@@ -0,0 +1,106 @@
+package com.example.dataexport.reader;
+
+import com.example.dataexport.mapper.OrderRowMapper;
+import com.example.dataexport.model.Order;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchedIdLookupTest {
+
+    private static final int THRESHOLD = 2048;
+    private static final String ORDER_BY = "ret_unique_id, order_id";
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder().generateUniqueName(true).setType(EmbeddedDatabaseType.H2)
+                .addScript("classpath:export-test-data.sql").build();
+        jdbcTemplate = new JdbcTemplate(database);
+        // One more order for every id up to 3 * THRESHOLD, so every id looked up has rows and any
+        // misplaced padding id shows up as extra or missing rows
+        jdbcTemplate.update("INSERT INTO orders (order_id, ret_unique_id, order_date, amount)"
+                + " SELECT 1000 + X, X * 3, DATE '2024-06-01', X * 0.5 FROM SYSTEM_RANGE(1, " + THRESHOLD + ")");
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        database.shutdown();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 17, 18, 1025, THRESHOLD - 1})
+    void batchedAndTempTableLookupsReturnTheSameRowsInOrder(int count) {
+        int[] ids = userIds(count);
+
+        List<Order> batched = lookup(THRESHOLD).findByIds(ids, executor).join();
+        List<Order> joined = lookup(1).findByIds(ids, executor).join();
+
+        assertThat(batched).isNotEmpty().isEqualTo(expectedOrders(count));
+        assertThat(joined).isEqualTo(batched);
+    }
+
+    @Test
+    void idSetsFromTheThresholdUseTheTempTable() {
+        int[] ids = userIds(THRESHOLD);
+
+        List<Order> rows = lookup(THRESHOLD).findByIds(ids, executor).join();
+
+        assertThat(rows).isEqualTo(expectedOrders(THRESHOLD));
+        // The table is dropped again, so the same pooled session can run the next lookup
+        assertThat(lookup(THRESHOLD).findByIds(ids, executor).join()).isEqualTo(rows);
+    }
+
+    @Test
+    void duplicateIdsInAPaddedBatchReturnEachRowOnce() {
+        // One batch, padded from 5 to 16 placeholders with its last id, 9
+        int[] ids = {3, 3, 6, 6, 9};
+
+        List<Order> rows = lookup(0).findByIds(ids, executor).join();
+
+        assertThat(rows).extracting(Order::getOrderId).doesNotHaveDuplicates();
+        assertThat(rows).extracting(Order::getRetUniqueId).containsOnly(3, 6, 9);
+        assertThat(rows).hasSize(jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM orders WHERE ret_unique_id IN (3, 6, 9)", Integer.class));
+    }
+
+    @Test
+    void noIdsQueryNothing() {
+        assertThat(lookup(1).findByIds(new int[0], executor).join()).isEmpty();
+    }
+
+    private BatchedIdLookup<Order> lookup(int tempTableThreshold) {
+        return new BatchedIdLookup<>(jdbcTemplate, "orders", OrderRowMapper.SELECT_LIST, ORDER_BY,
+                OrderRowMapper::new, tempTableThreshold);
+    }
+
+    /** The first {@code count} ids, ascending, so batch results concatenate in {@code ORDER_BY} order. */
+    private static int[] userIds(int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = (i + 1) * 3;
+        }
+        return ids;
+    }
+
+    private List<Order> expectedOrders(int count) {
+        return jdbcTemplate.query("SELECT " + OrderRowMapper.SELECT_LIST + " FROM orders"
+                + " WHERE ret_unique_id BETWEEN 3 AND ? ORDER BY " + ORDER_BY, new OrderRowMapper(), count * 3);
+    }
+}
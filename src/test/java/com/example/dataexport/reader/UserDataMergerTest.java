@@ -0,0 +1,100 @@
+package com.example.dataexport.reader;
+
+import com.example.dataexport.model.UserData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserDataMergerTest {
+
+    private EmbeddedDatabase database;
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder().generateUniqueName(true).setType(EmbeddedDatabaseType.H2)
+                .addScript("classpath:export-test-data.sql").build();
+        // User 6 has orders 1 and 501 and address 143, and gets one more order, inserted last
+        new JdbcTemplate(database).update(
+                "INSERT INTO orders (order_id, ret_unique_id, order_date, amount) VALUES (0, 6, DATE '2024-06-01', 1.00)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        database.shutdown();
+    }
+
+    @ParameterizedTest
+    @EnumSource(MergeMode.class)
+    void hashAndSortMergeReadersProduceTheSameRows(MergeMode mergeMode) throws Exception {
+        List<UserData> hashRows = readAll(new KeysetUserDataReader(database,
+                new UserDataMerger(database, executor, 0, mergeMode), 1, 1500, 64));
+        List<UserData> sortMergeRows = readAll(new SortMergeUserDataReader(database, 1, 1500, 100, mergeMode));
+
+        assertThat(hashRows).isNotEmpty().isEqualTo(sortMergeRows);
+    }
+
+    @Test
+    void fanOutWritesOrderRowsThenAddressRowsInKeyOrder() throws Exception {
+        List<UserData> rows = readAll(new KeysetUserDataReader(database,
+                new UserDataMerger(database, executor, 0, MergeMode.FAN_OUT), 6, 6, 64));
+
+        assertThat(rows).extracting(UserData::getOrderId).containsExactly(0, 1, 501, null);
+        assertThat(rows).extracting(UserData::getAddressId).containsExactly(null, null, null, 143);
+    }
+
+    @Test
+    void fanOutWritesOneRowPerChild() throws Exception {
+        List<UserData> rows = readAll(new KeysetUserDataReader(database,
+                new UserDataMerger(database, executor, 0, MergeMode.FAN_OUT), 1, 1500, 64));
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        int childless = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users u"
+                + " WHERE NOT EXISTS (SELECT 1 FROM orders o WHERE o.ret_unique_id = u.ret_unique_id)"
+                + " AND NOT EXISTS (SELECT 1 FROM addresses a WHERE a.ret_unique_id = u.ret_unique_id)", Integer.class);
+        assertThat(rows.stream().filter(row -> row.getOrderId() != null).count()).isEqualTo(801);
+        assertThat(rows.stream().filter(row -> row.getAddressId() != null).count()).isEqualTo(400);
+        assertThat(rows.stream().filter(row -> row.getOrderId() != null && row.getAddressId() != null)).isEmpty();
+        assertThat(rows).hasSize(801 + 400 + childless);
+    }
+
+    @Test
+    void lastKeepsTheHighestChildIds() throws Exception {
+        List<UserData> rows = readAll(new KeysetUserDataReader(database,
+                new UserDataMerger(database, executor, 0, MergeMode.LAST), 6, 6, 64));
+
+        assertThat(rows).singleElement().satisfies(row -> {
+            assertThat(row.getOrderId()).isEqualTo(501);
+            assertThat(row.getAddressId()).isEqualTo(143);
+        });
+    }
+
+    private static List<UserData> readAll(ItemStreamReader<UserData> reader) throws Exception {
+        List<UserData> rows = new ArrayList<>();
+        reader.open(new ExecutionContext());
+        try {
+            for (UserData row; (row = reader.read()) != null; ) {
+                rows.add(row);
+            }
+        } finally {
+            reader.close();
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.dataexport.tasklet;
+
+import com.example.dataexport.delta.ChangedUserIds;
+import com.example.dataexport.delta.WatermarkStore;
+import com.example.dataexport.delta.WatermarkType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.io.File;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeltaScanTaskletTest {
+
+    private static final String BASE_TIME = "2024-01-01 00:00:00.0";
+    private static final long ONE_MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    @TempDir
+    File dir;
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+    private WatermarkStore watermarks;
+    private final ChangedUserIds changedUserIds = new ChangedUserIds();
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder().generateUniqueName(true).setType(EmbeddedDatabaseType.H2)
+                .addScript("classpath:export-test-data.sql").build();
+        jdbcTemplate = new JdbcTemplate(database);
+        // Every row last changed at the same, long past, time
+        for (String table : new String[]{"users", "orders", "addresses"}) {
+            jdbcTemplate.update("UPDATE " + table + " SET updated_at = ?", Timestamp.valueOf(BASE_TIME));
+        }
+        watermarks = new WatermarkStore(new File(dir, "watermarks.properties"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void firstRunIsAFullExportThatStagesEveryWatermark() throws Exception {
+        scan(WatermarkType.TIMESTAMP, ONE_MINUTE);
+
+        assertThat(changedUserIds.isSelected()).isFalse();
+        watermarks.commit();
+        watermarks.load();
+        assertThat(watermarks.get("users")).isEqualTo(BASE_TIME);
+        assertThat(watermarks.get("orders")).isEqualTo(BASE_TIME);
+        assertThat(watermarks.get("addresses")).isEqualTo(BASE_TIME);
+    }
+
+    @Test
+    void missingWatermarkOfOneTableFallsBackToAFullExport() throws Exception {
+        commitWatermarks("users", BASE_TIME, "orders", BASE_TIME);
+        jdbcTemplate.update("UPDATE orders SET updated_at = TIMESTAMP '2024-02-01 00:00:00' WHERE order_id = 1");
+
+        scan(WatermarkType.TIMESTAMP, ONE_MINUTE);
+
+        assertThat(changedUserIds.isSelected()).isFalse();
+    }
+
+    @Test
+    void scanAfterAnUpdateFindsTheUsersOfTheChangedRows() throws Exception {
+        commitWatermarks("users", BASE_TIME, "orders", BASE_TIME, "addresses", BASE_TIME);
+        // Order 1 belongs to user 6, address 1 to user 24
+        jdbcTemplate.update("UPDATE orders SET updated_at = TIMESTAMP '2024-02-01 00:00:00' WHERE order_id = 1");
+        jdbcTemplate.update("UPDATE addresses SET updated_at = TIMESTAMP '2024-03-01 00:00:00' WHERE address_id = 1");
+        jdbcTemplate.update("UPDATE users SET updated_at = TIMESTAMP '2024-02-01 00:00:00' WHERE ret_unique_id = 1500");
+
+        scan(WatermarkType.TIMESTAMP, ONE_MINUTE);
+
+        assertThat(changedUserIds.get()).containsExactly(6, 24, 1500);
+        watermarks.commit();
+        watermarks.load();
+        assertThat(watermarks.get("orders")).isEqualTo("2024-02-01 00:00:00.0");
+        assertThat(watermarks.get("addresses")).isEqualTo("2024-03-01 00:00:00.0");
+
+        // Nothing changed since
+        scan(WatermarkType.TIMESTAMP, ONE_MINUTE);
+        assertThat(changedUserIds.isSelected()).isTrue();
+        assertThat(changedUserIds.get()).isEmpty();
+    }
+
+    @Test
+    void changeWithinTheSafetyLagWaitsForALaterRun() throws Exception {
+        Timestamp now = jdbcTemplate.queryForObject("SELECT LOCALTIMESTAMP", Timestamp.class);
+        String tenMinutesAgo = new Timestamp(now.getTime() - TimeUnit.MINUTES.toMillis(10)).toString();
+        commitWatermarks("users", tenMinutesAgo, "orders", tenMinutesAgo, "addresses", tenMinutesAgo);
+        jdbcTemplate.update("UPDATE orders SET updated_at = ? WHERE order_id = 1", now);
+
+        // The cutoff an hour back lies below the last watermark, which is kept rather than moved back
+        scan(WatermarkType.TIMESTAMP, TimeUnit.HOURS.toMillis(1));
+        assertThat(changedUserIds.get()).isEmpty();
+        watermarks.commit();
+        watermarks.load();
+        assertThat(watermarks.get("orders")).isEqualTo(tenMinutesAgo);
+
+        scan(WatermarkType.TIMESTAMP, 0);
+        assertThat(changedUserIds.get()).containsExactly(6);
+    }
+
+    @Test
+    void idScanRescansTheLagBelowTheLastWatermark() throws Exception {
+        // Nothing inserted since: users up to 1500, orders up to 800, addresses up to 400
+        commitWatermarks("users", "1500", "orders", "800", "addresses", "400");
+        scan(WatermarkType.ID, 0);
+        assertThat(changedUserIds.get()).isEmpty();
+
+        scan(WatermarkType.ID, 2);
+        // Users 1497 and 1500, the users of orders 799 and 800 and of addresses 399 and 400
+        List<Integer> expected = jdbcTemplate.queryForList("SELECT ret_unique_id FROM users WHERE ret_unique_id > 1498"
+                + " UNION SELECT ret_unique_id FROM orders WHERE order_id > 798"
+                + " UNION SELECT ret_unique_id FROM addresses WHERE address_id > 398 ORDER BY ret_unique_id", Integer.class);
+        assertThat(changedUserIds.get()).containsExactly(expected.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    @Test
+    void idScanFindsInsertsUpToTheCurrentMaximum() throws Exception {
+        commitWatermarks("users", "1500", "orders", "800", "addresses", "400");
+        jdbcTemplate.update("INSERT INTO orders (order_id, ret_unique_id, order_date, amount) VALUES (801, 3, DATE '2024-06-01', 1.00)");
+        jdbcTemplate.update("INSERT INTO orders (order_id, ret_unique_id, order_date, amount) VALUES (802, 9, DATE '2024-06-01', 1.00)");
+
+        scan(WatermarkType.ID, 0);
+
+        assertThat(changedUserIds.get()).containsExactly(3, 9);
+        watermarks.commit();
+        watermarks.load();
+        assertThat(watermarks.get("orders")).isEqualTo("802");
+    }
+
+    private void scan(WatermarkType type, long safetyLag) throws Exception {
+        Map<String, String> columnsByTable = new LinkedHashMap<>();
+        for (String table : new String[]{"users", "orders", "addresses"}) {
+            columnsByTable.put(table, type.defaultColumn(table));
+        }
+        new DeltaScanTasklet(jdbcTemplate, watermarks, type, columnsByTable, safetyLag, changedUserIds)
+                .execute(null, null);
+    }
+
+    private void commitWatermarks(String... tablesAndValues) throws Exception {
+        watermarks.load();
+        for (int i = 0; i < tablesAndValues.length; i += 2) {
+            watermarks.stage(tablesAndValues[i], tablesAndValues[i + 1]);
+        }
+        watermarks.commit();
+    }
+}
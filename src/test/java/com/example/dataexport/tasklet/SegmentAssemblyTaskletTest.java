@@ -0,0 +1,116 @@
+package com.example.dataexport.tasklet;
+
+import com.example.dataexport.writer.OutputCodec;
+import com.example.dataexport.writer.OutputCompression;
+import com.example.dataexport.writer.OutputManifest;
+import com.example.dataexport.writer.OutputSegments;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentAssemblyTaskletTest {
+
+    private static final String HEADER = "ret_unique_id,username";
+
+    @TempDir
+    File dir;
+
+    private File outputFile;
+    private OutputSegments segments;
+    private OutputManifest manifest;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        outputFile = new File(dir, "out.csv");
+        segments = new OutputSegments(new File(dir, "out.csv.parts"), OutputCompression.NONE.getSuffix());
+        segments.clear();
+        manifest = new OutputManifest(new File(dir, "out.csv.manifest.csv"), new File(dir, "out.csv.partitions.csv"));
+        // Written out of name order, as partitions finish in any order; 1000 sorts after 98 only when padded
+        writeSegment(1000, "1000,c\n1001,c\n", true);
+        writeSegment(3, "3,a\n", true);
+        writeSegment(98, "98,b\n99,b\n120,b\n", true);
+    }
+
+    @Test
+    void concatenatesHeaderAndSegmentsInIdOrder() throws Exception {
+        assemble(true);
+
+        byte[] expected = (HEADER + System.lineSeparator() + "3,a\n" + "98,b\n99,b\n120,b\n" + "1000,c\n1001,c\n")
+                .getBytes(StandardCharsets.UTF_8);
+        assertThat(Files.readAllBytes(outputFile.toPath())).isEqualTo(expected);
+        assertThat(segments.list()).hasSize(3);
+    }
+
+    @Test
+    void recordsTheOutputWithTheCombinedChecksum() throws Exception {
+        assemble(true);
+
+        OutputManifest.Entry output = manifest.find(outputFile.getName());
+        assertThat(output).isNotNull();
+        assertThat(output.getCrc32()).isEqualTo(crc32(Files.readAllBytes(outputFile.toPath())));
+        assertThat(output.getBytes()).isEqualTo(outputFile.length());
+        assertThat(output.getMinId()).isEqualTo(3);
+        assertThat(output.getMaxId()).isEqualTo(1001);
+        assertThat(output.getRows()).isEqualTo(6);
+        // Kept segments stay listed next to the output
+        assertThat(manifest.entries()).hasSize(4);
+    }
+
+    @Test
+    void deletesSegmentsAndTheirManifestEntries() throws Exception {
+        assemble(false);
+
+        assertThat(segments.getDirectory()).doesNotExist();
+        assertThat(manifest.entries()).extracting(OutputManifest.Entry::getFile).containsExactly(outputFile.getName());
+        assertThat(manifest.find(outputFile.getName()).getCrc32())
+                .isEqualTo(crc32(Files.readAllBytes(outputFile.toPath())));
+    }
+
+    @Test
+    void checksumsSegmentsTheWritersDidNotRecord() throws Exception {
+        writeSegment(2000, "2000,d\n", false);
+
+        assemble(true);
+
+        assertThat(Files.readAllLines(outputFile.toPath())).endsWith("2000,d");
+        assertThat(manifest.find(outputFile.getName()).getCrc32())
+                .isEqualTo(crc32(Files.readAllBytes(outputFile.toPath())));
+    }
+
+    private void assemble(boolean keepSegments) throws Exception {
+        SegmentAssemblyTasklet tasklet = new SegmentAssemblyTasklet(outputFile, segments, HEADER, keepSegments,
+                new OutputCodec(OutputCompression.NONE, null, 0, 0, 0));
+        tasklet.setManifest(manifest);
+        tasklet.execute(null, null);
+    }
+
+    /** Writes a segment and, if {@code recorded}, its manifest entry as the writer would. */
+    private void writeSegment(int minValue, String rows, boolean recorded) throws IOException {
+        File segment = segments.segmentFor(minValue);
+        byte[] bytes = rows.getBytes(StandardCharsets.UTF_8);
+        Files.write(segment.toPath(), bytes);
+        String[] lines = rows.split("\n");
+        if (recorded) {
+            manifest.add(new OutputManifest.Entry(segment.getName(), firstId(lines[0]), firstId(lines[lines.length - 1]),
+                    lines.length, bytes.length, crc32(bytes)));
+        }
+    }
+
+    private static int firstId(String line) {
+        return Integer.parseInt(line.substring(0, line.indexOf(',')));
+    }
+
+    private static long crc32(byte[] bytes) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes);
+        return crc32.getValue();
+    }
+}
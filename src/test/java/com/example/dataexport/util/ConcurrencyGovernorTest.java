@@ -0,0 +1,181 @@
+package com.example.dataexport.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConcurrencyGovernorTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger connectionWaiters = new AtomicInteger();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void growsByOneWhileTheWholeLimitIsUsedAtSteadyLatency() throws Exception {
+        ConcurrencyGovernor governor = governor(1, 8, 2, 2.0, 0.5, 0);
+
+        inFlight(governor, 2, 10);
+        assertThat(governor.getLimit()).isEqualTo(3);
+        inFlight(governor, 3, 10);
+        assertThat(governor.getLimit()).isEqualTo(4);
+        assertThat(governor.getBaselineMillis()).isEqualTo(10.0);
+    }
+
+    @Test
+    void doesNotGrowWhenTheLimitIsNotUsed() throws Exception {
+        ConcurrencyGovernor governor = governor(1, 8, 4, 2.0, 0.5, 0);
+
+        for (int i = 0; i < 4; i++) {
+            inFlight(governor, 1, 10);
+        }
+        assertThat(governor.getLatencyMillis()).isEqualTo(10.0);
+        assertThat(governor.getLimit()).isEqualTo(4);
+    }
+
+    @Test
+    void stopsGrowingAtTheMaximum() throws Exception {
+        ConcurrencyGovernor governor = governor(1, 3, 2, 2.0, 0.5, 0);
+
+        for (int i = 0; i < 5; i++) {
+            inFlight(governor, governor.getLimit(), 10);
+        }
+        assertThat(governor.getLimit()).isEqualTo(3);
+    }
+
+    @Test
+    void shrinksByTheFactorDownToTheMinimumWhenLatencyExceedsTheTolerance() throws Exception {
+        ConcurrencyGovernor governor = governor(2, 8, 8, 2.0, 0.5, 0);
+        inFlight(governor, 8, 10);
+        assertThat(governor.getLimit()).isEqualTo(8);
+
+        inFlight(governor, 8, 30);
+        assertThat(governor.getLimit()).isEqualTo(4);
+        inFlight(governor, 4, 30);
+        assertThat(governor.getLimit()).isEqualTo(2);
+        inFlight(governor, 2, 30);
+        assertThat(governor.getLimit()).isEqualTo(2);
+        assertThat(governor.toString()).contains("0 increases, 2 decreases");
+    }
+
+    @Test
+    void shrinksWhenThreadsWaitForAPooledConnection() throws Exception {
+        ConcurrencyGovernor governor = governor(1, 8, 4, 2.0, 0.5, 0);
+        connectionWaiters.set(1);
+
+        inFlight(governor, 4, 10);
+        assertThat(governor.getLimit()).isEqualTo(2);
+
+        connectionWaiters.set(0);
+        inFlight(governor, 2, 10);
+        assertThat(governor.getLimit()).isEqualTo(3);
+    }
+
+    @Test
+    void baselineDriftsUpToALastingLatencyChange() throws Exception {
+        ConcurrencyGovernor governor = governor(1, 4, 4, 1.2, 0.5, 0);
+        inFlight(governor, 4, 10);
+
+        // 15 ms is congestion against a 10 ms baseline until the baseline has crept past 12.5 ms
+        inFlight(governor, 4, 15);
+        assertThat(governor.getLimit()).isEqualTo(2);
+        for (int i = 0; i < 30; i++) {
+            inFlight(governor, governor.getLimit(), 15);
+        }
+        assertThat(governor.getBaselineMillis()).isBetween(12.5, 15.0);
+        assertThat(governor.getLimit()).isEqualTo(4);
+    }
+
+    @Test
+    void adjustsOnlyOnceTheWindowHasLastedLongEnough() throws Exception {
+        ConcurrencyGovernor governor = governor(1, 8, 2, 2.0, 0.5, 100);
+
+        inFlight(governor, 2, 10);
+        assertThat(governor.getLimit()).isEqualTo(2);
+        inFlight(governor, 2, 100);
+        assertThat(governor.getLimit()).isEqualTo(3);
+        // The window closed with the first sample after 100 ms, its third
+        assertThat(governor.getLatencyMillis()).isEqualTo(40.0);
+    }
+
+    @Test
+    void releasesThePermitWhenTheQueryFails() throws Exception {
+        ConcurrencyGovernor governor = governor(1, 1, 1, 2.0, 0.5, 0);
+
+        assertThatThrownBy(() -> governor.call(() -> {
+            throw new IllegalStateException("Query failed");
+        })).hasMessage("Query failed");
+        assertThat(governor.getInFlight()).isZero();
+        assertThat(governor.call(() -> "next")).isEqualTo("next");
+    }
+
+    @Test
+    void waitsForAPermitBeyondTheLimit() throws Exception {
+        ConcurrencyGovernor governor = governor(1, 1, 1, 2.0, 0.5, 0);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Future<Object> first = executor.submit(() -> governor.call(() -> {
+            running.countDown();
+            await(finish);
+            return null;
+        }));
+        running.await();
+
+        Future<String> second = executor.submit(() -> governor.call(() -> "second"));
+        Thread.sleep(100);
+        assertThat(second).isNotDone();
+        assertThat(governor.getInFlight()).isEqualTo(1);
+
+        finish.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("second");
+        assertThat(governor.getInFlight()).isZero();
+    }
+
+    private ConcurrencyGovernor governor(int minLimit, int maxLimit, int initialLimit, double latencyTolerance,
+                                         double decreaseFactor, long minWindowMillis) {
+        return new ConcurrencyGovernor(minLimit, maxLimit, initialLimit, latencyTolerance, decreaseFactor,
+                minWindowMillis, connectionWaiters::get, clock::get);
+    }
+
+    /**
+     * Runs {@code queries} queries nested in one another, so all of them are in flight at once,
+     * and each is timed at {@code latencyMillis}: only the innermost advances the clock.
+     */
+    private void inFlight(ConcurrencyGovernor governor, int queries, long latencyMillis) throws InterruptedException {
+        if (queries == 0) {
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+            return;
+        }
+        governor.call(() -> {
+            try {
+                inFlight(governor, queries - 1, latencyMillis);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return null;
+        });
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.dataexport.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Crc32CombineTest {
+
+    @Test
+    void matchesCrc32OfTheConcatenationAtEverySplit() {
+        byte[] data = new byte[300];
+        new Random(3).nextBytes(data);
+        long whole = crc32(data, 0, data.length);
+        for (int split = 0; split <= data.length; split++) {
+            long combined = Crc32Combine.combine(crc32(data, 0, split), crc32(data, split, data.length - split),
+                    data.length - split);
+            assertThat(combined).as("split at %d", split).isEqualTo(whole);
+        }
+    }
+
+    @Test
+    void foldsManyPartsOfRandomLengths() {
+        Random random = new Random(11);
+        byte[] data = new byte[5_000_000];
+        random.nextBytes(data);
+        long combined = 0;
+        int offset = 0;
+        while (offset < data.length) {
+            int length = Math.min(data.length - offset, random.nextInt(4) == 0 ? 0 : random.nextInt(1_500_000));
+            combined = Crc32Combine.combine(combined, crc32(data, offset, length), length);
+            offset += length;
+        }
+        assertThat(combined).isEqualTo(crc32(data, 0, data.length));
+    }
+
+    @Test
+    void emptySecondPartLeavesTheFirstCrc() {
+        assertThat(Crc32Combine.combine(0x12345678L, 0, 0)).isEqualTo(0x12345678L);
+    }
+
+    @Test
+    void handlesLengthsBeyondIntRange() {
+        // A long run of zeros, checksummed incrementally, against the combined CRC of its halves
+        long half = (1L << 31) + 12345;
+        CRC32 first = new CRC32();
+        byte[] zeros = new byte[1 << 20];
+        updateZeros(first, zeros, half);
+        CRC32 whole = new CRC32();
+        updateZeros(whole, zeros, 2 * half);
+        assertThat(Crc32Combine.combine(first.getValue(), first.getValue(), half)).isEqualTo(whole.getValue());
+    }
+
+    private static void updateZeros(CRC32 crc32, byte[] zeros, long length) {
+        for (long remaining = length; remaining > 0; remaining -= zeros.length) {
+            crc32.update(zeros, 0, (int) Math.min(zeros.length, remaining));
+        }
+    }
+
+    private static long crc32(byte[] data, int offset, int length) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, offset, length);
+        return crc32.getValue();
+    }
+}
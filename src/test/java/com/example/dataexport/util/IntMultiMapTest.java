@@ -0,0 +1,72 @@
+package com.example.dataexport.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IntMultiMapTest {
+
+    @Test
+    void keepsValuesInInsertionOrderPerKey() {
+        IntMultiMap<String> map = new IntMultiMap<>();
+        map.put(3, "a");
+        map.put(0, "b");
+        map.put(3, "c");
+        map.put(-3, "d");
+        map.put(3, "e");
+
+        assertThat(values(map, 3)).containsExactly("a", "c", "e");
+        assertThat(values(map, 0)).containsExactly("b");
+        assertThat(values(map, -3)).containsExactly("d");
+        assertThat(map.first(4)).isEqualTo(IntMultiMap.NONE);
+        assertThat(map.size()).isEqualTo(5);
+    }
+
+    @Test
+    void keepsEveryChainAcrossRehashesAndEntryGrowth() {
+        // Both the key table and the entry arrays start at their smallest and grow many times
+        IntMultiMap<Integer> map = new IntMultiMap<>(1, 1);
+        Map<Integer, List<Integer>> expected = new HashMap<>();
+        Random random = new Random(9);
+        for (int i = 0; i < 20_000; i++) {
+            int key = random.nextInt(3000) - 1500;
+            map.put(key, i);
+            expected.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+
+        assertThat(map.size()).isEqualTo(20_000);
+        expected.forEach((key, values) -> assertThat(values(map, key)).isEqualTo(values));
+        assertThat(map.first(1500)).isEqualTo(IntMultiMap.NONE);
+    }
+
+    @Test
+    void isReusableAfterClear() {
+        IntMultiMap<String> map = new IntMultiMap<>(2, 2);
+        for (int i = 0; i < 100; i++) {
+            map.put(i % 10, "first" + i);
+        }
+        map.clear();
+
+        assertThat(map.size()).isZero();
+        assertThat(map.first(5)).isEqualTo(IntMultiMap.NONE);
+        map.put(5, "x");
+        map.put(5, "y");
+        assertThat(values(map, 5)).containsExactly("x", "y");
+        assertThat(map.first(6)).isEqualTo(IntMultiMap.NONE);
+        assertThat(map.size()).isEqualTo(2);
+    }
+
+    private static <V> List<V> values(IntMultiMap<V> map, int key) {
+        List<V> values = new ArrayList<>();
+        for (int e = map.first(key); e != IntMultiMap.NONE; e = map.next(e)) {
+            values.add(map.valueAt(e));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.dataexport.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IntObjectHashMapTest {
+
+    @Test
+    void zeroAndNegativeKeysAreOrdinaryKeys() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        map.put(0, "zero");
+        map.put(-1, "minus one");
+        map.put(Integer.MIN_VALUE, "min");
+        map.put(Integer.MAX_VALUE, "max");
+
+        assertThat(map.get(0)).isEqualTo("zero");
+        assertThat(map.get(-1)).isEqualTo("minus one");
+        assertThat(map.get(Integer.MIN_VALUE)).isEqualTo("min");
+        assertThat(map.get(Integer.MAX_VALUE)).isEqualTo("max");
+        assertThat(map.get(1)).isNull();
+        assertThat(map.size()).isEqualTo(4);
+    }
+
+    @Test
+    void putReplacesAndReturnsThePreviousValue() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        assertThat(map.put(7, "a")).isNull();
+        assertThat(map.put(7, "b")).isEqualTo("a");
+
+        assertThat(map.get(7)).isEqualTo("b");
+        assertThat(map.size()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsEveryEntryAcrossRehashes() {
+        // Starts at the smallest table and grows many times, with clustered and scattered keys
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<>(1);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 20_000; i++) {
+            int key = i % 2 == 0 ? i / 2 : random.nextInt();
+            map.put(key, i);
+            expected.put(key, i);
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        expected.forEach((key, value) -> assertThat(map.get(key)).isEqualTo(value));
+        assertThat(map.get(-20_000)).isNull();
+    }
+
+    @Test
+    void isReusableAfterClear() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>(4);
+        for (int i = 0; i < 100; i++) {
+            map.put(i, "first" + i);
+        }
+        map.clear();
+
+        assertThat(map.size()).isZero();
+        assertThat(map.get(5)).isNull();
+        map.put(5, "second");
+        assertThat(map.get(5)).isEqualTo("second");
+        assertThat(map.get(6)).isNull();
+        assertThat(map.size()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsNullValues() {
+        assertThatThrownBy(() -> new IntObjectHashMap<String>().put(1, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
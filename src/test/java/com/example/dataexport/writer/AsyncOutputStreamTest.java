@@ -0,0 +1,104 @@
+package com.example.dataexport.writer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AsyncOutputStreamTest {
+
+    @Test
+    void writesEverythingInOrder() throws IOException {
+        byte[] data = ParallelGzipOutputStreamTest.csvLikeData(10_000);
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        try (AsyncOutputStream out = new AsyncOutputStream(target, 3, 256, Thread::new)) {
+            for (int off = 0; off < data.length; off += 700) {
+                out.write(data, off, Math.min(700, data.length - off));
+                out.publish();
+            }
+            out.write('\n');
+        }
+        byte[] expected = new byte[data.length + 1];
+        System.arraycopy(data, 0, expected, 0, data.length);
+        expected[data.length] = '\n';
+        assertThat(target.toByteArray()).isEqualTo(expected);
+    }
+
+    @Test
+    void flushWritesEverythingPublishedSoFar() throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        AsyncOutputStream out = new AsyncOutputStream(target, 2, 64, Thread::new);
+        out.write(ParallelGzipOutputStreamTest.csvLikeData(100));
+        out.flush();
+        assertThat(target.size()).isEqualTo(100);
+        out.close();
+    }
+
+    @Test
+    void writeFailureIsRethrownFromFlush() throws IOException {
+        AsyncOutputStream out = new AsyncOutputStream(new FailingOutputStream(new ByteArrayOutputStream(), 50),
+                2, 64, Thread::new);
+        out.write(ParallelGzipOutputStreamTest.csvLikeData(100));
+        assertThatThrownBy(out::flush).isInstanceOf(IOException.class)
+                .hasMessage("Asynchronous write failed").hasRootCauseMessage("Disk full");
+        assertThatThrownBy(out::close).isInstanceOf(IOException.class).hasRootCauseMessage("Disk full");
+    }
+
+    @Test
+    void writeFailureIsRethrownFromLaterWrites() throws IOException {
+        AsyncOutputStream out = new AsyncOutputStream(new FailingOutputStream(new ByteArrayOutputStream(), 0),
+                2, 64, Thread::new);
+        // Once both buffers are taken, writes wait for the I/O thread, which fails on the first
+        assertThatThrownBy(() -> out.write(ParallelGzipOutputStreamTest.csvLikeData(1000)))
+                .isInstanceOf(IOException.class).hasRootCauseMessage("Disk full");
+        assertThatThrownBy(out::close).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void failureWritingTheLastBufferIsRethrownFromClose() throws IOException {
+        FailingOutputStream target = new FailingOutputStream(new ByteArrayOutputStream(), 50);
+        AsyncOutputStream out = new AsyncOutputStream(target, 2, 64, Thread::new);
+        // Fits in one buffer, so the write itself never waits for the I/O thread
+        out.write(ParallelGzipOutputStreamTest.csvLikeData(60));
+        out.publish();
+        assertThatThrownBy(out::close).isInstanceOf(IOException.class).hasRootCauseMessage("Disk full");
+        assertThat(target.closed).isTrue();
+    }
+
+    /** Fails every write that would take the stream past {@code limit} bytes. */
+    static class FailingOutputStream extends FilterOutputStream {
+        private final long limit;
+        private long count;
+        boolean closed;
+
+        FailingOutputStream(OutputStream out, long limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (count + len > limit) {
+                throw new IOException("Disk full");
+            }
+            count += len;
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            closed = true;
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.dataexport.writer;
+
+import com.example.dataexport.model.UserData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedUserDataItemWriterTest {
+
+    private static final int WRITERS = 4;
+    private static final int CHUNKS = 25;
+    private static final int CHUNK_SIZE = 7;
+
+    @TempDir
+    File dir;
+
+    @Test
+    void parallelWritersLeaveNoGapsAfterTheTrim() throws Exception {
+        // Regions far smaller than a chunk, so most chunks span two or more of them
+        MappedOutputFile output = new MappedOutputFile(new File(dir, "users_data.csv"), 256);
+        byte[] header = UserDataCsvItemWriterTest.encoded(new ArrayList<>(), true);
+        output.open(header);
+
+        List<List<UserData>> chunks = new ArrayList<>();
+        for (int i = 0; i < WRITERS * CHUNKS; i++) {
+            chunks.add(UserDataCsvItemWriterTest.rows(1 + i * CHUNK_SIZE, CHUNK_SIZE));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                int first = w;
+                writers.add(executor.submit(() -> {
+                    MappedUserDataItemWriter writer = new MappedUserDataItemWriter(output, new UserDataCsvEncoder(false));
+                    ExecutionContext executionContext = new ExecutionContext();
+                    writer.open(executionContext);
+                    for (int i = first; i < chunks.size(); i += WRITERS) {
+                        writer.write(chunks.get(i));
+                        writer.update(executionContext);
+                    }
+                    writer.close();
+                    return null;
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long expectedLength = header.length;
+        for (List<UserData> chunk : chunks) {
+            expectedLength += UserDataCsvItemWriterTest.encoded(chunk, false).length;
+        }
+        assertThat(output.trim()).isEqualTo(expectedLength);
+        output.close();
+
+        byte[] written = Files.readAllBytes(output.getFile().toPath());
+        assertThat(written).hasSize((int) expectedLength);
+        String content = new String(written, StandardCharsets.UTF_8);
+        assertThat(content).startsWith(new String(header, StandardCharsets.UTF_8)).doesNotContain("\0");
+        // Each chunk is written in one piece, in some order
+        for (List<UserData> chunk : chunks) {
+            assertThat(content).contains(new String(UserDataCsvItemWriterTest.encoded(chunk, false), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void trimCutsOffTheUnusedEndOfTheLastRegion() throws Exception {
+        MappedOutputFile output = new MappedOutputFile(new File(dir, "users_data.csv"), 64 * 1024);
+        byte[] header = UserDataCsvItemWriterTest.encoded(new ArrayList<>(), true);
+        output.open(header);
+        List<UserData> rows = UserDataCsvItemWriterTest.rows(1, 3);
+        MappedUserDataItemWriter writer = new MappedUserDataItemWriter(output, new UserDataCsvEncoder(false));
+        writer.open(new ExecutionContext());
+        writer.write(rows);
+        writer.close();
+
+        // Mapping the region grew the file to its full size
+        assertThat(output.getFile().length()).isEqualTo(64 * 1024);
+        output.trim();
+        output.close();
+
+        assertThat(Files.readAllBytes(output.getFile().toPath()))
+                .isEqualTo(UserDataCsvItemWriterTest.encoded(rows, true));
+    }
+}
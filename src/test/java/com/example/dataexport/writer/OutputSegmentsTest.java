@@ -0,0 +1,41 @@
+package com.example.dataexport.writer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OutputSegmentsTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void namesSegmentsAfterTheirPaddedFirstId() {
+        OutputSegments segments = new OutputSegments(dir, ".csv");
+
+        assertThat(segments.segmentFor(98).getName()).isEqualTo("segment-0000000098.csv");
+        assertThat(segments.segmentFor(Integer.MAX_VALUE).getName()).isEqualTo("segment-2147483647.csv");
+    }
+
+    @Test
+    void listsSegmentsInIdOrderAcrossTheSign() throws IOException {
+        OutputSegments segments = new OutputSegments(dir, ".csv");
+        int[] ids = {Integer.MAX_VALUE, 1000, 98, 0, -1, -1000, Integer.MIN_VALUE};
+        for (int id : ids) {
+            assertThat(segments.segmentFor(id).createNewFile()).isTrue();
+        }
+
+        assertThat(segments.list()).extracting(File::getName).containsExactly(
+                segments.segmentFor(Integer.MIN_VALUE).getName(),
+                segments.segmentFor(-1000).getName(),
+                segments.segmentFor(-1).getName(),
+                "segment-0000000000.csv",
+                "segment-0000000098.csv",
+                "segment-0000001000.csv",
+                "segment-2147483647.csv");
+    }
+}
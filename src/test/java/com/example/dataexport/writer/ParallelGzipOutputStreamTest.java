@@ -0,0 +1,134 @@
+package com.example.dataexport.writer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ParallelGzipOutputStreamTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(3);
+
+    @AfterEach
+    void shutDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void roundTripsThroughGunzipAsOneStream() throws Exception {
+        byte[] data = csvLikeData(5 * 4096 + 1234);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, executor, 4096, 6, 2)) {
+            // Uneven writes so pieces straddle block boundaries
+            Random random = new Random(1);
+            for (int off = 0; off < data.length; ) {
+                int len = Math.min(data.length - off, 1 + random.nextInt(3000));
+                out.write(data, off, len);
+                off += len;
+            }
+            out.write('\n');
+        }
+
+        byte[] expected = new byte[data.length + 1];
+        System.arraycopy(data, 0, expected, 0, data.length);
+        expected[data.length] = '\n';
+        assertThat(gunzip(compressed.toByteArray())).isEqualTo(expected);
+        assertThat(memberCount(compressed.toByteArray())).isEqualTo(6);
+    }
+
+    @Test
+    void emptyStreamWritesNothing() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(compressed, executor, 4096, 6, 2).close();
+        assertThat(compressed.size()).isZero();
+    }
+
+    @Test
+    void flushWritesCompleteBlocksAndKeepsThePartialOne() throws Exception {
+        byte[] data = csvLikeData(4096 + 100);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, executor, 4096, 6, 4);
+        out.write(data);
+        out.flush();
+
+        byte[] firstBlock = new byte[4096];
+        System.arraycopy(data, 0, firstBlock, 0, 4096);
+        assertThat(gunzip(compressed.toByteArray())).isEqualTo(firstBlock);
+
+        out.close();
+        assertThat(gunzip(compressed.toByteArray())).isEqualTo(data);
+        assertThat(memberCount(compressed.toByteArray())).isEqualTo(2);
+    }
+
+    @Test
+    void compressionFailureIsRethrownFromFlush() throws IOException {
+        // An invalid level makes every block's compression fail on the pool
+        ParallelGzipOutputStream out = new ParallelGzipOutputStream(new ByteArrayOutputStream(), executor, 1024, 42, 4);
+        out.write(csvLikeData(2048));
+        assertThatThrownBy(out::flush).isInstanceOf(IOException.class).hasMessageContaining("Block compression failed");
+    }
+
+    @Test
+    void compressionFailureOfThePartialBlockIsRethrownFromClose() throws IOException {
+        ParallelGzipOutputStream out = new ParallelGzipOutputStream(new ByteArrayOutputStream(), executor, 1024, 42, 4);
+        out.write(csvLikeData(100));
+        out.flush();
+        assertThatThrownBy(out::close).isInstanceOf(IOException.class).hasMessageContaining("Block compression failed");
+    }
+
+    static byte[] csvLikeData(int length) {
+        StringBuilder sb = new StringBuilder(length + 64);
+        Random random = new Random(length);
+        while (sb.length() < length) {
+            sb.append(random.nextInt(1_000_000)).append(",user").append(random.nextInt(1000))
+                    .append(",user@example.com,").append(random.nextInt(100)).append(".50\n");
+        }
+        return sb.substring(0, length).getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** Counts the members by inflating them one at a time. */
+    private static int memberCount(byte[] compressed) throws DataFormatException {
+        int members = 0;
+        int offset = 0;
+        byte[] sink = new byte[8192];
+        while (offset < compressed.length) {
+            // GZIPOutputStream writes a bare 10-byte header and an 8-byte trailer
+            assertThat(compressed[offset] & 0xff).isEqualTo(0x1f);
+            assertThat(compressed[offset + 1] & 0xff).isEqualTo(0x8b);
+            Inflater inflater = new Inflater(true);
+            inflater.setInput(compressed, offset + 10, compressed.length - offset - 10);
+            while (!inflater.finished()) {
+                assertThat(inflater.needsInput()).isFalse();
+                inflater.inflate(sink);
+            }
+            offset = compressed.length - inflater.getRemaining() + 8;
+            inflater.end();
+            members++;
+        }
+        return members;
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.dataexport.writer;
+
+import com.example.dataexport.model.UserData;
+import org.apache.parquet.conf.PlainParquetConfiguration;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.api.ReadSupport;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.LocalInputFile;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ParquetUserDataItemWriterTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void roundTripsTypedRowsWithNullChildren() throws Exception {
+        UserData full = row(3, "user1", "u1@example.com");
+        full.setOrderId(501);
+        full.setOrderDate(LocalDate.of(2024, 2, 29));
+        full.setAmount(new BigDecimal("12.34"));
+        full.setAddressId(143);
+        full.setCity("City7");
+        full.setStreet("7 Main St");
+        UserData orderOnly = row(6, "user2", null);
+        orderOnly.setOrderId(2);
+        orderOnly.setOrderDate(LocalDate.of(1970, 1, 1));
+        // Fewer decimals than the column
+        orderOnly.setAmount(new BigDecimal("1.5"));
+        UserData largest = row(9, "user3", "u3@example.com");
+        // The most negative value DECIMAL(18, 2) holds
+        largest.setAmount(new BigDecimal("-9999999999999999.99"));
+        UserData childless = row(12, "user4", "u4@example.com");
+
+        File file = write(new UserDataWriteSupport(false, 18, 2), Arrays.asList(full, orderOnly, largest, childless));
+        MessageType schema = readSchema(file);
+        List<Group> groups = read(file);
+
+        assertThat(schema.getType("ret_unique_id").asPrimitiveType().getPrimitiveTypeName())
+                .isEqualTo(PrimitiveTypeName.INT32);
+        assertThat(schema.getType("order_date").getLogicalTypeAnnotation()).isEqualTo(LogicalTypeAnnotation.dateType());
+        assertThat(schema.getType("amount").asPrimitiveType().getPrimitiveTypeName()).isEqualTo(PrimitiveTypeName.INT64);
+        assertThat(schema.getType("amount").getLogicalTypeAnnotation())
+                .isEqualTo(LogicalTypeAnnotation.decimalType(2, 18));
+        assertThat(schema.getType("city").getLogicalTypeAnnotation()).isEqualTo(LogicalTypeAnnotation.stringType());
+
+        assertThat(groups).hasSize(4);
+        Group first = groups.get(0);
+        assertThat(first.getInteger("ret_unique_id", 0)).isEqualTo(3);
+        assertThat(first.getString("username", 0)).isEqualTo("user1");
+        assertThat(first.getString("email", 0)).isEqualTo("u1@example.com");
+        assertThat(first.getInteger("order_id", 0)).isEqualTo(501);
+        assertThat(LocalDate.ofEpochDay(first.getInteger("order_date", 0))).isEqualTo(LocalDate.of(2024, 2, 29));
+        assertThat(decimal(first, "amount", 2)).isEqualTo(new BigDecimal("12.34"));
+        assertThat(first.getInteger("address_id", 0)).isEqualTo(143);
+        assertThat(first.getString("city", 0)).isEqualTo("City7");
+        assertThat(first.getString("street", 0)).isEqualTo("7 Main St");
+
+        Group second = groups.get(1);
+        assertThat(second.getFieldRepetitionCount("email")).isZero();
+        assertThat(second.getInteger("order_date", 0)).isZero();
+        assertThat(decimal(second, "amount", 2)).isEqualTo(new BigDecimal("1.50"));
+        assertThat(second.getFieldRepetitionCount("address_id")).isZero();
+        assertThat(second.getFieldRepetitionCount("city")).isZero();
+
+        assertThat(decimal(groups.get(2), "amount", 2)).isEqualTo(new BigDecimal("-9999999999999999.99"));
+
+        Group last = groups.get(3);
+        assertThat(last.getInteger("ret_unique_id", 0)).isEqualTo(12);
+        for (String column : new String[] {"order_id", "order_date", "amount", "address_id", "city", "street"}) {
+            assertThat(last.getFieldRepetitionCount(column)).as(column).isZero();
+        }
+    }
+
+    @Test
+    void aggregateRowsUseTheAggregateColumnsAndConfiguredScale() throws Exception {
+        UserData aggregate = row(3, "user1", "u1@example.com");
+        aggregate.setOrderCount(2);
+        aggregate.setOrderDate(LocalDate.of(2024, 6, 1));
+        aggregate.setAmount(new BigDecimal("1234.5678"));
+        aggregate.setAddressCount(0);
+
+        File file = write(new UserDataWriteSupport(true, 10, 4), Arrays.asList(aggregate));
+        Group group = read(file).get(0);
+
+        assertThat(readSchema(file).getType("total_amount").getLogicalTypeAnnotation())
+                .isEqualTo(LogicalTypeAnnotation.decimalType(4, 10));
+        assertThat(group.getInteger("order_count", 0)).isEqualTo(2);
+        assertThat(LocalDate.ofEpochDay(group.getInteger("last_order_date", 0))).isEqualTo(LocalDate.of(2024, 6, 1));
+        assertThat(decimal(group, "total_amount", 4)).isEqualTo(new BigDecimal("1234.5678"));
+        assertThat(group.getInteger("address_count", 0)).isZero();
+    }
+
+    @Test
+    void rejectsAmountsWithMoreDecimalsThanTheColumn() {
+        UserData row = row(3, "user1", "u1@example.com");
+        row.setAmount(new BigDecimal("0.125"));
+
+        assertThatThrownBy(() -> write(new UserDataWriteSupport(false, 18, 2), Arrays.asList(row)))
+                .isInstanceOf(ArithmeticException.class);
+    }
+
+    @Test
+    void emptyPartitionsGetAValidFileWithoutRows() throws Exception {
+        File file = write(new UserDataWriteSupport(false, 18, 2), new ArrayList<>());
+
+        assertThat(read(file)).isEmpty();
+    }
+
+    private File write(UserDataWriteSupport writeSupport, List<UserData> rows) throws Exception {
+        File file = new File(dir, "segment-0000000003.parquet");
+        ParquetUserDataItemWriter writer = new ParquetUserDataItemWriter(file, writeSupport,
+                CompressionCodecName.UNCOMPRESSED, 2, 1);
+        writer.open(new ExecutionContext());
+        try {
+            // In chunks of two, as the step would write them
+            for (int from = 0; from < rows.size(); from += 2) {
+                writer.write(rows.subList(from, Math.min(rows.size(), from + 2)));
+            }
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static List<Group> read(File file) throws IOException {
+        List<Group> groups = new ArrayList<>();
+        try (ParquetReader<Group> reader = new GroupReaderBuilder(new LocalInputFile(file.toPath())).build()) {
+            for (Group group; (group = reader.read()) != null; ) {
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+
+    private static MessageType readSchema(File file) throws IOException {
+        try (ParquetFileReader reader = ParquetFileReader.open(new LocalInputFile(file.toPath()))) {
+            return reader.getFooter().getFileMetaData().getSchema();
+        }
+    }
+
+    private static BigDecimal decimal(Group group, String column, int scale) {
+        return BigDecimal.valueOf(group.getLong(column, 0), scale);
+    }
+
+    private static UserData row(int id, String username, String email) {
+        UserData row = new UserData();
+        row.setRetUniqueId(id);
+        row.setUsername(username);
+        row.setEmail(email);
+        return row;
+    }
+
+    /** Reads a local file as example {@link Group}s without a Hadoop file system. */
+    private static class GroupReaderBuilder extends ParquetReader.Builder<Group> {
+
+        GroupReaderBuilder(InputFile file) {
+            super(file, new PlainParquetConfiguration());
+        }
+
+        @Override
+        protected ReadSupport<Group> getReadSupport() {
+            return new GroupReadSupport();
+        }
+    }
+}
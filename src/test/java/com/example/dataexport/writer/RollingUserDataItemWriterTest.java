@@ -0,0 +1,47 @@
+package com.example.dataexport.writer;
+
+import com.example.dataexport.model.UserData;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.io.File;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RollingUserDataItemWriterTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void rollsOnlyBetweenUsers() throws Exception {
+        // Five users with three fan-out rows each
+        List<UserData> rows = UserDataCsvItemWriterTest.rows(1, 15);
+        for (int i = 0; i < rows.size(); i++) {
+            rows.get(i).setRetUniqueId(1 + i / 3);
+        }
+        OutputManifest manifest = new OutputManifest(new File(dir, "manifest.csv"), new File(dir, "partitions.csv"));
+        RollingUserDataItemWriter writer = new RollingUserDataItemWriter(
+                new OutputSegments(dir, OutputCompression.NONE.getSuffix()), new UserDataCsvEncoder(false),
+                new OutputCodec(OutputCompression.NONE, null, 0, 0, 0), 4, 0, manifest);
+
+        ExecutionContext executionContext = new ExecutionContext();
+        writer.open(executionContext);
+        // Chunks that end in the middle of a user
+        writer.write(rows.subList(0, 5));
+        writer.update(executionContext);
+        writer.write(rows.subList(5, 15));
+        writer.update(executionContext);
+        writer.close();
+
+        List<OutputManifest.Entry> entries = manifest.entries();
+        assertThat(entries).extracting(OutputManifest.Entry::getFile)
+                .containsExactly("segment-0000000001.csv", "segment-0000000003.csv", "segment-0000000005.csv");
+        assertThat(entries).extracting(OutputManifest.Entry::getMinId).containsExactly(1, 3, 5);
+        assertThat(entries).extracting(OutputManifest.Entry::getMaxId).containsExactly(2, 4, 5);
+        assertThat(entries).extracting(OutputManifest.Entry::getRows).containsExactly(6L, 6L, 3L);
+        assertThat(executionContext.getLong(OutputManifest.WRITTEN_USERS_KEY)).isEqualTo(5);
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.dataexport.writer;
+
+import com.example.dataexport.model.UserData;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserDataCsvEncoderTest {
+
+    private static final String[] TEXTS = {
+            "", "plain", "a,b", "say \"hi\"", "\"", "\"\"", ",", "line\nbreak", "carriage\rreturn", "trailing,",
+            "café", "über,\"straße\"", "東京", "emoji 😀", "😀,😀",
+            "lone high \ud83d", "lone low \ude00 here", "\ud83d", "reversed \ude00\ud83d", "tab\there", "null"
+    };
+
+    private static final BigDecimal[] AMOUNTS = {
+            BigDecimal.ZERO, new BigDecimal("0.00"), new BigDecimal("1"), new BigDecimal("-1.5"),
+            new BigDecimal("123.45"), new BigDecimal("-0.01"), new BigDecimal("0.000001"), new BigDecimal("0.0000001"),
+            new BigDecimal("-0.00000012"), new BigDecimal("1E+3"), new BigDecimal("99999999999999999.99"),
+            new BigDecimal(BigInteger.ONE.shiftLeft(62), 2), new BigDecimal(BigInteger.ONE.shiftLeft(62).negate(), 2),
+            new BigDecimal(BigInteger.ONE.shiftLeft(62).subtract(BigInteger.ONE), 4), new BigDecimal("12345678901234567890.123")
+    };
+
+    private static final LocalDate[] DATES = {
+            LocalDate.of(2024, 1, 5), LocalDate.of(1, 1, 1), LocalDate.of(999, 12, 31), LocalDate.of(9999, 12, 31),
+            LocalDate.of(10000, 1, 1), LocalDate.of(0, 6, 15), LocalDate.of(-42, 2, 28)
+    };
+
+    private static final Integer[] INTS = {0, 7, -7, 10, 1_000_000, Integer.MAX_VALUE, Integer.MIN_VALUE};
+
+    @Test
+    void headerMatchesAggregator() throws IOException {
+        for (boolean aggregated : new boolean[]{false, true}) {
+            UserDataCsvEncoder encoder = new UserDataCsvEncoder(aggregated);
+            encoder.encodeHeader();
+            assertThat(drain(encoder))
+                    .isEqualTo(utf8(new UserDataLineAggregator(aggregated).getHeader() + System.lineSeparator()));
+        }
+    }
+
+    @Test
+    void escapesTextLikeAggregator() throws IOException {
+        for (String text : TEXTS) {
+            UserData row = row(1, text, text, 2, DATES[0], AMOUNTS[4], 3, text, text);
+            assertEncodedLikeAggregator(row, false);
+            assertEncodedLikeAggregator(aggregate(row), true);
+        }
+    }
+
+    @Test
+    void formatsDecimalsLikeAggregator() throws IOException {
+        for (BigDecimal amount : AMOUNTS) {
+            UserData row = row(1, "u", "e", 2, DATES[0], amount, 3, "c", "s");
+            assertEncodedLikeAggregator(row, false);
+            assertEncodedLikeAggregator(aggregate(row), true);
+        }
+    }
+
+    @Test
+    void formatsDatesLikeAggregator() throws IOException {
+        for (LocalDate date : DATES) {
+            UserData row = row(1, "u", "e", 2, date, AMOUNTS[4], 3, "c", "s");
+            assertEncodedLikeAggregator(row, false);
+            assertEncodedLikeAggregator(aggregate(row), true);
+        }
+    }
+
+    @Test
+    void formatsIntegersLikeAggregator() throws IOException {
+        for (Integer value : INTS) {
+            UserData row = row(value, "u", "e", value, DATES[0], AMOUNTS[4], value, "c", "s");
+            assertEncodedLikeAggregator(row, false);
+            UserData aggregate = aggregate(row);
+            aggregate.setOrderCount(value);
+            aggregate.setAddressCount(value);
+            assertEncodedLikeAggregator(aggregate, true);
+        }
+    }
+
+    @Test
+    void writesNullsLikeAggregator() throws IOException {
+        // Plain rows leave missing children empty; aggregate rows print unset counts as "null"
+        UserData row = row(1, null, null, null, null, null, null, null, null);
+        assertEncodedLikeAggregator(row, false);
+        assertEncodedLikeAggregator(row, true);
+    }
+
+    @Test
+    void matchesAggregatorOnRandomRowsAcrossBufferGrowth() throws IOException {
+        Random random = new Random(7);
+        for (boolean aggregated : new boolean[]{false, true}) {
+            // A tiny initial buffer so rows keep forcing it to grow
+            UserDataCsvEncoder encoder = new UserDataCsvEncoder(aggregated, 1);
+            UserDataLineAggregator aggregator = new UserDataLineAggregator(aggregated);
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < 5_000; i++) {
+                UserData row = row(random.nextInt(), randomText(random), randomText(random),
+                        pick(random, INTS), random.nextInt(8) == 0 ? null : pick(random, DATES),
+                        random.nextInt(8) == 0 ? null : pick(random, AMOUNTS), pick(random, INTS),
+                        randomText(random), randomText(random));
+                if (aggregated) {
+                    row.setOrderCount(pick(random, INTS));
+                    row.setAddressCount(pick(random, INTS));
+                }
+                encoder.encode(row);
+                expected.append(aggregator.aggregate(row)).append(System.lineSeparator());
+            }
+            assertThat(drain(encoder)).isEqualTo(utf8(expected.toString()));
+        }
+    }
+
+    @Test
+    void bufferIsReusedAfterWriteTo() throws IOException {
+        UserDataCsvEncoder encoder = new UserDataCsvEncoder(false);
+        UserData row = row(1, "u", "e", 2, DATES[0], AMOUNTS[4], 3, "c", "s");
+        encoder.encode(row);
+        drain(encoder);
+        assertThat(encoder.size()).isZero();
+        encoder.encode(row);
+        assertThat(drain(encoder))
+                .isEqualTo(utf8(new UserDataLineAggregator(false).aggregate(row) + System.lineSeparator()));
+    }
+
+    private static void assertEncodedLikeAggregator(UserData row, boolean aggregated) throws IOException {
+        UserDataCsvEncoder encoder = new UserDataCsvEncoder(aggregated);
+        encoder.encode(row);
+        String expected = new UserDataLineAggregator(aggregated).aggregate(row) + System.lineSeparator();
+        assertThat(drain(encoder)).as("%s", row).isEqualTo(utf8(expected));
+    }
+
+    private static byte[] drain(UserDataCsvEncoder encoder) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.writeTo(out);
+        return out.toByteArray();
+    }
+
+    /** The bytes a UTF-8 writer produces for the aggregator's text, unpaired surrogates included. */
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static UserData row(Integer id, String username, String email, Integer orderId, LocalDate orderDate,
+                                BigDecimal amount, Integer addressId, String city, String street) {
+        UserData row = new UserData();
+        row.setRetUniqueId(id == null ? 0 : id);
+        row.setUsername(username);
+        row.setEmail(email);
+        row.setOrderId(orderId);
+        row.setOrderDate(orderDate);
+        row.setAmount(amount);
+        row.setAddressId(addressId);
+        row.setCity(city);
+        row.setStreet(street);
+        return row;
+    }
+
+    private static UserData aggregate(UserData row) {
+        UserData aggregate = row(row.getRetUniqueId(), row.getUsername(), row.getEmail(), null, row.getOrderDate(),
+                row.getAmount(), null, row.getCity(), row.getStreet());
+        aggregate.setOrderCount(3);
+        aggregate.setAddressCount(2);
+        return aggregate;
+    }
+
+    private static String randomText(Random random) {
+        if (random.nextInt(10) == 0) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        int length = random.nextInt(12);
+        for (int i = 0; i < length; i++) {
+            sb.append(random.nextInt(4) == 0 ? pick(random, TEXTS) : String.valueOf((char) random.nextInt(0x3000)));
+        }
+        return sb.toString();
+    }
+
+    private static <T> T pick(Random random, T[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.dataexport.writer;
+
+import com.example.dataexport.model.UserData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.test.MetaDataInstanceFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserDataCsvItemWriterTest {
+
+    @TempDir
+    File dir;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        StepSynchronizationManager.close();
+    }
+
+    @Test
+    void gzipOutputIsCompletedWhenTheStepEnds() throws Exception {
+        File file = new File(dir, "segment.csv.gz");
+        UserDataCsvItemWriter writer = new UserDataCsvItemWriter(file, new UserDataCsvEncoder(false), true,
+                gzip(1024, 6));
+        OutputCompletionListener completionListener = new OutputCompletionListener();
+        writer.setCompletionListener(completionListener);
+        StepExecution stepExecution = startStep();
+
+        ExecutionContext executionContext = new ExecutionContext();
+        writer.open(executionContext);
+        List<UserData> rows = rows(1, 200);
+        writer.write(rows.subList(0, 120));
+        writer.update(executionContext);
+        writer.write(rows.subList(120, 200));
+        writer.update(executionContext);
+
+        stepExecution.setStatus(BatchStatus.COMPLETED);
+        assertThat(completionListener.afterStep(stepExecution)).isNull();
+        assertThat(stepExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        writer.close();
+
+        assertThat(ParallelGzipOutputStreamTest.gunzip(Files.readAllBytes(file.toPath())))
+                .isEqualTo(encoded(rows, true));
+    }
+
+    @Test
+    void gzipCompressionFailureFailsTheChunk() throws Exception {
+        File file = new File(dir, "segment.csv.gz");
+        // An invalid level makes every block's compression fail
+        UserDataCsvItemWriter writer = new UserDataCsvItemWriter(file, new UserDataCsvEncoder(false), false,
+                gzip(8192, 42));
+        ExecutionContext executionContext = new ExecutionContext();
+        writer.open(executionContext);
+        // One full block, whose compression fails on the pool while the chunk is still written
+        writer.write(rows(1, 200));
+
+        assertThatThrownBy(() -> writer.update(executionContext)).isInstanceOf(ItemStreamException.class)
+                .hasRootCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void gzipFailureOnTheLastPartialBlockFailsTheStep() throws Exception {
+        File file = new File(dir, "segment.csv.gz");
+        UserDataCsvItemWriter writer = new UserDataCsvItemWriter(file, new UserDataCsvEncoder(false), false,
+                gzip(1 << 20, 42));
+        OutputCompletionListener completionListener = new OutputCompletionListener();
+        writer.setCompletionListener(completionListener);
+        StepExecution stepExecution = startStep();
+
+        ExecutionContext executionContext = new ExecutionContext();
+        writer.open(executionContext);
+        // Less than a block, so nothing is compressed before the step ends
+        writer.write(rows(1, 10));
+        writer.update(executionContext);
+
+        stepExecution.setStatus(BatchStatus.COMPLETED);
+        ExitStatus exitStatus = completionListener.afterStep(stepExecution);
+        assertThat(exitStatus.getExitCode()).isEqualTo(ExitStatus.FAILED.getExitCode());
+        assertThat(stepExecution.getStatus()).isEqualTo(BatchStatus.FAILED);
+        assertThat(stepExecution.getFailureExceptions()).hasSize(1);
+        // Nothing is left for close to fail on
+        writer.close();
+    }
+
+    @Test
+    void asyncWriteFailureOnTheLastChunkFailsTheStep() throws Exception {
+        File file = new File(dir, "segment.csv");
+        byte[] firstChunk = encoded(rows(1, 10), true);
+        // The I/O thread can write the header and the first chunk, but not the last one
+        OutputCodec failingCodec = new OutputCodec(OutputCompression.NONE, null, 0, 0, 0) {
+            @Override
+            public OutputStream encode(OutputStream out) {
+                return new AsyncOutputStreamTest.FailingOutputStream(out, firstChunk.length);
+            }
+        };
+        UserDataCsvItemWriter writer = new UserDataCsvItemWriter(file, new UserDataCsvEncoder(false), true,
+                failingCodec);
+        writer.setAsyncOutput(2, 64 * 1024, Thread::new);
+        OutputCompletionListener completionListener = new OutputCompletionListener();
+        writer.setCompletionListener(completionListener);
+        StepExecution stepExecution = startStep();
+
+        ExecutionContext executionContext = new ExecutionContext();
+        writer.open(executionContext);
+        writer.write(rows(1, 10));
+        writer.update(executionContext);
+        // Handed to the I/O thread, so the chunk commits before its write fails
+        writer.write(rows(11, 10));
+        writer.update(executionContext);
+
+        stepExecution.setStatus(BatchStatus.COMPLETED);
+        ExitStatus exitStatus = completionListener.afterStep(stepExecution);
+        assertThat(exitStatus.getExitCode()).isEqualTo(ExitStatus.FAILED.getExitCode());
+        assertThat(stepExecution.getStatus()).isEqualTo(BatchStatus.FAILED);
+        assertThat(stepExecution.getFailureExceptions()).singleElement()
+                .satisfies(e -> assertThat(e).hasRootCauseMessage("Disk full"));
+        writer.close();
+        assertThat(Files.readAllBytes(file.toPath())).isEqualTo(firstChunk);
+    }
+
+    @Test
+    void restartTruncatesToTheLastCommittedUserAndAppends() throws Exception {
+        File file = new File(dir, "segment.csv");
+        OutputCodec none = new OutputCodec(OutputCompression.NONE, null, 0, 0, 0);
+        UserDataCsvItemWriter writer = new UserDataCsvItemWriter(file, new UserDataCsvEncoder(false), true, none);
+        writer.setSaveState(true);
+        ExecutionContext executionContext = new ExecutionContext();
+        writer.open(executionContext);
+        writer.write(rows(1, 10));
+        writer.update(executionContext);
+        // Written but never committed: the run dies before the next update
+        writer.write(rows(11, 10));
+        writer.close();
+        assertThat(file.length()).isEqualTo(encoded(rows(1, 20), true).length);
+
+        // The saved context, as a restarted step reads it back, resumes at the last committed user
+        ExecutionContext savedContext = new ExecutionContext(executionContext);
+        UserDataCsvItemWriter restarted = new UserDataCsvItemWriter(file, new UserDataCsvEncoder(false), true, none);
+        restarted.setSaveState(true);
+        restarted.open(savedContext);
+        assertThat(file.length()).isEqualTo(encoded(rows(1, 9), true).length);
+        restarted.write(rows(10, 11));
+        restarted.update(savedContext);
+        restarted.close();
+
+        assertThat(Files.readAllBytes(file.toPath())).isEqualTo(encoded(rows(1, 20), true));
+        assertThat(savedContext.getLong(OutputManifest.WRITTEN_USERS_KEY)).isEqualTo(20);
+    }
+
+    private OutputCodec gzip(int blockSize, int level) {
+        return new OutputCodec(OutputCompression.GZIP, executor, blockSize, level, 2);
+    }
+
+    /** A step execution registered on this thread, as the writers see it while their step runs. */
+    static StepExecution startStep() {
+        StepExecution stepExecution = MetaDataInstanceFactory.createStepExecution();
+        stepExecution.setStatus(BatchStatus.STARTED);
+        StepSynchronizationManager.register(stepExecution);
+        return stepExecution;
+    }
+
+    static List<UserData> rows(int firstId, int count) {
+        List<UserData> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int id = firstId + i;
+            rows.add(new UserData(id, "user" + id, "user" + id + "@example.com", id * 10,
+                    LocalDate.of(2024, 1, 1).plusDays(id % 365), BigDecimal.valueOf(id, 2), id * 20,
+                    "City " + id % 7, id + " Main Street, Apt \"" + id % 3 + "\"", null, null));
+        }
+        return rows;
+    }
+
+    static byte[] encoded(List<UserData> rows, boolean header) throws IOException {
+        UserDataCsvEncoder encoder = new UserDataCsvEncoder(false);
+        if (header) {
+            encoder.encodeHeader();
+        }
+        rows.forEach(encoder::encode);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.writeTo(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,8 @@
+CREATE TABLE IF NOT EXISTS users (ret_unique_id INT PRIMARY KEY, username VARCHAR(50), email VARCHAR(100), updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP);
+CREATE TABLE IF NOT EXISTS orders (order_id INT PRIMARY KEY, ret_unique_id INT, order_date DATE, amount DECIMAL(12,2), updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP);
+CREATE TABLE IF NOT EXISTS addresses (address_id INT PRIMARY KEY, ret_unique_id INT, city VARCHAR(50), street VARCHAR(100), updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP);
+CREATE INDEX IF NOT EXISTS ix_orders_user ON orders(ret_unique_id);
+CREATE INDEX IF NOT EXISTS ix_addresses_user ON addresses(ret_unique_id);
+INSERT INTO users (ret_unique_id, username, email) SELECT X * 3, 'user' || X, 'u' || X || '@example.com' FROM SYSTEM_RANGE(1, 500) WHERE NOT EXISTS (SELECT 1 FROM users);
+INSERT INTO orders (order_id, ret_unique_id, order_date, amount) SELECT X, MOD(X, 500) * 3 + 3, DATEADD('DAY', MOD(X, 300), DATE '2024-01-01'), X * 1.25 FROM SYSTEM_RANGE(1, 800) WHERE NOT EXISTS (SELECT 1 FROM orders);
+INSERT INTO addresses (address_id, ret_unique_id, city, street) SELECT X, MOD(X * 7, 500) * 3 + 3, 'City' || MOD(X, 20), X || ' Main St' FROM SYSTEM_RANGE(1, 400) WHERE NOT EXISTS (SELECT 1 FROM addresses);